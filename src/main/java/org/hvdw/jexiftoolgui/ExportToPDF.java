@@ -7,7 +7,7 @@ import com.itextpdf.kernel.pdf.PdfWriter;
 import com.itextpdf.layout.Document;
 import com.itextpdf.layout.element.*;
 import org.hvdw.jexiftoolgui.controllers.ImageFunctions;
-import org.hvdw.jexiftoolgui.facades.SystemPropertyFacade;
+import org.hvdw.jexiftoolgui.controllers.JobScheduler;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -17,26 +17,25 @@ import java.io.File;
 import java.io.FileFilter;
 import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.net.MalformedURLException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.ArrayList;
-import java.util.Arrays;
+import java.util.*;
 import java.util.List;
-import java.util.ResourceBundle;
-import java.util.concurrent.Executor;
-import java.util.concurrent.Executors;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
 import java.util.stream.Stream;
 
 import static org.hvdw.jexiftoolgui.Application.OS_NAMES.APPLE;
 import static org.hvdw.jexiftoolgui.Utils.getCurrentOsName;
 import static org.hvdw.jexiftoolgui.Utils.getFileExtension;
-import static org.hvdw.jexiftoolgui.facades.SystemPropertyFacade.SystemPropertyKey.LINE_SEPARATOR;
 
 public class ExportToPDF {
 
     private final static Logger logger = (Logger) LoggerFactory.getLogger(ExportToPDF.class);
+    // Files per exiftool call when reading the metadata
+    private static final int METADATA_CHUNK_SIZE = 10;
     // radiobuttons {A4radioButton, LetterradioButton, ImgSizeLargeradioButton, ImgSizeSmallradioButton,
     // pdfPerImgradioButton, pdfCombinedradioButton, pdfradioButtonExpAll, pdfradioButtonExpCommonTags, pdfradioButtonExpByTagName}
     // comboboxes {pdfcomboBoxExpCommonTags, pdfcomboBoxExpByTagName}
@@ -175,7 +174,21 @@ public class ExportToPDF {
         table.addCell(new Cell().add(new Paragraph(tmpfile.getParent())));
         table.addCell(new Cell().add(new Paragraph(ResourceBundle.getBundle("translations/program_strings").getString("exppdf.image"))));
 
-        String imageFile = GetConvertImage(tmpfile);
+        // Files with the same name (IMG_0001.JPG and IMG_0001.CR2, or the same name in subfolders) share their converted
+        // image in the tmp work folder: convert and read it while no other page uses that name
+        String imageFile;
+        ImageData imageData = null;
+        synchronized (ImageFunctions.tmpPreviewLock(tmpfile)) {
+            imageFile = GetConvertImage(tmpfile);
+            if (!"/cantconvert.png".equals(imageFile)) {
+                try {
+                    imageData = ImageDataFactory.create(Files.readAllBytes(Paths.get(imageFile)));
+                } catch (IOException e) {
+                    logger.error("Can't create image object for PDF {}", e);
+                    imageFile = "/cantconvert.png";
+                }
+            }
+        }
         if ("/cantconvert.png".equals(imageFile)) {
             ImageIcon icon = null;
             try {
@@ -189,50 +202,50 @@ public class ExportToPDF {
                 icon = null;
             }
         } else {
-            try {
-                ImageData data = ImageDataFactory.create(imageFile);
-                Image img = new Image(data);
-                table.addCell(new Cell().add(img.setAutoScale(true)));
-            } catch (MalformedURLException e) {
-                logger.error("Can't create image object for PDF {}", e);
-                e.printStackTrace();
-            }
+            Image img = new Image(imageData);
+            table.addCell(new Cell().add(img.setAutoScale(true)));
         }
 
         return table;
     }
 
     /**
-     * This fillMetadataTable creates the table with the requested metadata based on the info returned from exiftool and returns the table to the document
-     * @param exiftoolInfo
+     * This fillMetadataTables creates the tables with the requested metadata for a chunk of files with one exiftool call.
+     * The cells are added while exiftool is still writing its output, so the complete output is never kept in memory
+     * @param params
+     * @param files
      * @return
      */
-    private static Table fillMetadataTable(String exiftoolInfo) {
-        float[] mdpointColumnWidths = {100f, 260f, 450f};
-        Table table = new Table(mdpointColumnWidths);
-
-        table.setFontSize(10);
-        if (exiftoolInfo.length() > 0) {
-            if (exiftoolInfo.trim().startsWith("Warning")) {
-                table.addCell(new Cell().add(new Paragraph("ExifTool")));
-                table.addCell(new Cell().add(new Paragraph("Warning")));
-                table.addCell(new Cell().add(new Paragraph("Invalid Metadata data")));
-            } else if (exiftoolInfo.trim().startsWith("Error")) {
+    private static Map<File, Table> fillMetadataTables(String[] params, List<File> files) {
+        Map<File, Table> tables = new HashMap<>();
+        try {
+            Utils.getImageInfoFromFiles(params, files, (file, cells) -> {
+                Table table = tables.computeIfAbsent(file, f -> newMetadataTable());
+                table.addCell(new Cell().add(new Paragraph(cells[0])));
+                table.addCell(new Cell().add(new Paragraph(cells[1])));
+                table.addCell(new Cell().add(new Paragraph(cells[2])));
+            });
+        } catch (IOException | InterruptedException ex) {
+            logger.error("Error executing command", ex);
+        }
+        for (File file : files) {
+            if (!tables.containsKey(file)) { // exiftool failed or gave nothing for this file
+                Table table = newMetadataTable();
                 table.addCell(new Cell().add(new Paragraph("ExifTool")));
                 table.addCell(new Cell().add(new Paragraph("Error")));
                 table.addCell(new Cell().add(new Paragraph("Invalid Metadata data")));
-            } else {
-                String[] lines = exiftoolInfo.split(SystemPropertyFacade.getPropertyByKey(LINE_SEPARATOR));
-                for (String line : lines) {
-                    //String[] cells = lines[i].split(":", 2); // Only split on first : as some tags also contain (multiple) :
-                    String[] cells = line.split("\\t", 3);
-                    table.addCell(new Cell().add(new Paragraph(cells[0])));
-                    table.addCell(new Cell().add(new Paragraph(cells[1])));
-                    table.addCell(new Cell().add(new Paragraph(cells[2])));
-                }
+                tables.put(file, table);
             }
         }
 
+        return tables;
+    }
+
+    private static Table newMetadataTable() {
+        float[] mdpointColumnWidths = {100f, 260f, 450f};
+        Table table = new Table(mdpointColumnWidths);
+
+        table.setFontSize(10);
         return table;
     }
 
@@ -268,8 +281,7 @@ public class ExportToPDF {
      */
     public static void CreatePDFs(JPanel rootPanel, JRadioButton[] PDFradiobuttons, JComboBox[] PDFcomboboxes, JProgressBar progressBar, JLabel outputLabel, String ExpImgFoldertextField, boolean includeSubFolders) {
         String pdfdocs = "";
-        Executor executor = Executors.newSingleThreadExecutor();
-        executor.execute(new Runnable() {
+        JobScheduler.submit(ResourceBundle.getBundle("translations/program_strings").getString("jobs.exportpdf"), JobScheduler.Priority.BULK, new Runnable() {
             @Override
             public void run() {
                 try {
@@ -371,7 +383,8 @@ public class ExportToPDF {
         String[] params = GetDesiredParams(PDFradiobuttons, PDFcomboboxes);
         cmdparams.add(Utils.platformExiftool());
 
-        if (PDFradiobuttons[5].isSelected()) { // one combined document
+        boolean combined = PDFradiobuttons[5].isSelected();
+        if (combined) { // one combined document
             try {
                 tmpfile = files[0];
                 pdfnamepath = tmpfile.getParent() + File.separator + "Combined.pdf";
@@ -381,54 +394,133 @@ public class ExportToPDF {
             } catch (FileNotFoundException e) {
                 logger.error("pdf file not found error {}", e);
                 e.printStackTrace();
-                doc.close();
+                return;
             }
         }
 
+        // The pages are made in a pipeline on all cores: metadata per chunk of files, the images and (for a document
+        // per image) the writing per file. A combined document is written here, in the original order.
+        int threads = Utils.getWorkerThreadCount();
+        ExecutorService workers = JobScheduler.newTaskGroup();
+        // Only the pages that are written soon are kept in memory (a page holds its image)
+        int maxPagesInProgress = Math.max(METADATA_CHUNK_SIZE, threads * 4);
+        Deque<CompletableFuture<PdfPage>> inProgress = new ArrayDeque<>();
+        // The last write of every document name: IMG_0001.JPG and IMG_0001.CR2 both give IMG_0001.pdf
+        Map<String, CompletableFuture<Void>> lastWrites = new HashMap<>();
+        int nextIndex = 0;
+        try {
+            while (!JobScheduler.isCancelled()) {
+                while ((nextIndex < selectedIndices.length) && (inProgress.size() < maxPagesInProgress)) {
+                    int end = Math.min(nextIndex + METADATA_CHUNK_SIZE, selectedIndices.length);
+                    inProgress.addAll(submitChunk(files, Arrays.copyOfRange(selectedIndices, nextIndex, end), params, combined, workers, lastWrites));
+                    nextIndex = end;
+                }
+                CompletableFuture<PdfPage> next = inProgress.poll();
+                if (next == null) {
+                    break;
+                }
+                try {
+                    PdfPage page = next.join();
+                    if (combined) {
+                        addPage(doc, page);
+                        doc.add(new AreaBreak());
+                    } else if (page.pdfnamepath != null) {
+                        producedDocs += page.pdfnamepath + "<br>";
+                    }
+                } catch (CompletionException e) {
+                    logger.error("Error creating the pdf page", e.getCause());
+                }
+            }
+        } finally {
+            workers.shutdownNow();
+            if (combined) {
+                producedDocs = pdfnamepath;
+                doc.close();
+            }
+        }
 
-        for (int index : selectedIndices) {
-            String res = Utils.getImageInfoFromSelectedFile(params, index);
-            filename = files[index].getName();
+        MyVariables.setpdfDocs(producedDocs);
+        logger.debug("producedDocs {}", producedDocs);
 
-            tmpfile = files[index];
+    }
 
-            if (!(PDFradiobuttons[5].isSelected())) { //User wants a document per image
-                pdfnamepath = tmpfile.getParent() + File.separator + Utils.getFileNameWithoutExtension(filename) + ".pdf";
-                logger.debug("pdfnamepath {}", pdfnamepath);
-                try {
-                    PdfWriter writer = new PdfWriter(pdfnamepath);
-                    PdfDocument pdfDoc = new PdfDocument(writer);
-                    doc = new Document(pdfDoc);
-                    // Creating the top table
-                    doc.add(topTable(tmpfile));
-                    Paragraph paragraph1 = new Paragraph("\n\n" + ResourceBundle.getBundle("translations/program_strings").getString("exppdf.metadata") + " " + filename);
-                    doc.add(paragraph1);
-                    // Now writing the metadata table
-                    doc.add(fillMetadataTable(res));
-                    doc.close();
-                    producedDocs += pdfnamepath + "<br>";
-                } catch (FileNotFoundException e) {
-                    logger.error("pdf file not found error {}", e);
-                    e.printStackTrace();
-                    doc.close();
+    /*
+     * Starts the pages of a chunk of files. The metadata of the chunk is read with one exiftool call,
+     * while the images are read (and converted when needed) in parallel per file.
+     * For a document per image, the document is written as soon as both are there, and after the earlier
+     * documents with the same name, so the last one wins (as when they were written one after the other).
+     */
+    private static List<CompletableFuture<PdfPage>> submitChunk(File[] files, int[] indices, String[] params, boolean combined, ExecutorService workers,
+                                                               Map<String, CompletableFuture<Void>> lastWrites) {
+        List<File> chunkFiles = new ArrayList<>();
+        for (int index : indices) {
+            chunkFiles.add(files[index]);
+        }
+        CompletableFuture<Map<File, Table>> metadataTables = CompletableFuture.supplyAsync(() -> fillMetadataTables(params, chunkFiles), workers);
+        List<CompletableFuture<PdfPage>> pages = new ArrayList<>();
+        for (File file : chunkFiles) {
+            CompletableFuture<PdfPage> page = CompletableFuture.supplyAsync(() -> topTable(file), workers)
+                    .thenCombine(metadataTables, (top, tables) -> new PdfPage(file, top, tables.get(file)));
+            if (!combined) {
+                // Lower case: on Windows and macOS IMG_0001.pdf and img_0001.pdf are the same file
+                String documentName = pdfNamePath(file).toLowerCase();
+                CompletableFuture<Void> previousWrite = lastWrites.get(documentName);
+                if (previousWrite != null) {
+                    page = page.thenCombine(previousWrite, (current, previous) -> current);
                 }
-            } else { // So the user wants one big document
-                doc.add(topTable(tmpfile));
-                Paragraph paragraph1 = new Paragraph("\n\n" + ResourceBundle.getBundle("translations/program_strings").getString("exppdf.metadata") + " " + filename);
-                doc.add(paragraph1);
-                // Now writing the metadata table
-                doc.add(fillMetadataTable(res));
-                doc.add(new AreaBreak());
+                page = page.thenApplyAsync(ExportToPDF::writePdfPerImage, workers);
+                // Only whether it is done, not the page itself, which would keep all pages in memory
+                lastWrites.put(documentName, page.handle((written, error) -> null));
             }
+            pages.add(page);
         }
-        if (PDFradiobuttons[5].isSelected()) { // one combined document
-            producedDocs = pdfnamepath;
+        return pages;
+    }
+
+    private static void addPage(Document doc, PdfPage page) {
+        // Creating the top table
+        doc.add(page.topTable);
+        Paragraph paragraph1 = new Paragraph("\n\n" + ResourceBundle.getBundle("translations/program_strings").getString("exppdf.metadata") + " " + page.file.getName());
+        doc.add(paragraph1);
+        // Now writing the metadata table
+        doc.add(page.metadataTable);
+    }
+
+    private static String pdfNamePath(File file) {
+        return file.getParent() + File.separator + Utils.getFileNameWithoutExtension(file.getName()) + ".pdf";
+    }
+
+    private static PdfPage writePdfPerImage(PdfPage page) {
+        String pdfnamepath = pdfNamePath(page.file);
+        logger.debug("pdfnamepath {}", pdfnamepath);
+        try {
+            PdfWriter writer = new PdfWriter(pdfnamepath);
+            PdfDocument pdfDoc = new PdfDocument(writer);
+            Document doc = new Document(pdfDoc);
+            addPage(doc, page);
             doc.close();
+            page.pdfnamepath = pdfnamepath;
+        } catch (FileNotFoundException e) {
+            logger.error("pdf file not found error {}", e);
         }
+        return page;
+    }
 
-        MyVariables.setpdfDocs(producedDocs);
-        logger.debug("producedDocs {}", producedDocs);
-
+    /*
+     * The content of the page(s) of one image
+     */
+    private static class PdfPage {
+        final File file;
+        final Table topTable;
+        final Table metadataTable;
+        // The written document, for a document per image
+        String pdfnamepath;
+
+        PdfPage(File file, Table topTable, Table metadataTable) {
+            this.file = file;
+            this.topTable = topTable;
+            this.metadataTable = metadataTable;
+        }
     }
 
     /**
@@ -4,6 +4,8 @@ import java.awt.Font;
 
 public class MyConstants {
     public static final String MY_DATA_FOLDER = "jexiftoolgui_data";
+    // Max. size of the persistent icon cache in MY_DATA_FOLDER/thumbnails
+    public static final long THUMBNAIL_CACHE_MAX_BYTES = 256L * 1024 * 1024;
     // exiftool image info parameters
     public static final String[] ALL_PARAMS = {"-a", "-G", "-tab"};
     public static final String[] EXIF_PARAMS = {"-a", "-exif:all","-G", "-tab"};
@@ -38,8 +40,8 @@ public class MyConstants {
     public static final String[] SUPPORTED_AUDIOS = {"3gpp","aif","ape","au","flac","m3u","m4a","mid","midi","mp3","oga","ogg","ra","ram","wav","wma"};
     public static final String[] SUPPORTED_FORMATS = {"3fr","3g2","3gp2","3gp","3gpp","acr","afm","acfm","amfm","ai","ait","aiff","aif","aifc","ape","arw","asf","avi","bmp","dib","btf","chm","cos","cr2","crw","ciff","cs1","dcm","dc3","dic","dicm","dcp","dcr","dfont","divx","djvu","djv","dng","doc","dot","docx","docm","dotx","dotm","dylib","dv","dvb","eip","eps","epsf","ps","erf","exe","dll","exif","exr","f4a","f4b","f4p","f4v","fff","fla","flac","flv","fpx","gif","gz","gzip","hdp","wdp","hdr","html","htm","xhtml","icc","icm","idml","iiq","ind","indd","indt","inx","itc","j2c","jpc","jp2","jpf","j2k","jpm","jpx","jpeg","jpg","k25","kdc","key","kth","la","lnk","m2ts","mts","m2t","ts","m4a","m4b","m4p","m4v","mef","mie","miff","mif","mka","mkv","mks","mos","mov","qt","mp3","mp4","mpc","mpeg","mpg","m2v","mpo","mqv","mrw","mxf","nef","nmbtemplate","nrw","numbers","odb","odc","odf","odg","odi","odp","ods","odt","ofr","ogg","ogv","orf","otf","pac","pages","pcd","pdf","pef","pfa","pfb","pfm","pgf","pict","pct","pmp","png","jng","mng","ppm","pbm","pgm","ppt","pps","pot","potx","potm","ppsx","ppsm","pptx","pptm","psd","psb","psp","pspimage","qtif","qti","qif","ra","raf","ram","rpm","rar","raw","raw","riff","rif","rm","rv","rmvb","rsrc","rtf","rw2","rwl","rwz","so","sr2","srf","srw","svg","swf","thm","thmx","tiff","tif","ttf","ttc","vob","vrd","vsd","wav","webm","webp","wma","wmv","wv","x3f","xcf","xls","xlt","xlsx","xlsm","xlsb","xltx","xltm","xmp"};
     // Subsection file extensions
-    public static final String[] BASIC_EXTENSIONS = {"bmp","gif,","jpg", "jpeg", "png", "tif", "tiff"};
-    public static final String[] JAVA_SUP_EXTENSIONS = {"bmp","gif,","jpg", "jpeg", "png", "tif", "tiff", "ppm", "pbm", "pgm"};
+    public static final String[] BASIC_EXTENSIONS = {"bmp","gif","jpg", "jpeg", "png", "tif", "tiff"};
+    public static final String[] JAVA_SUP_EXTENSIONS = {"bmp","gif","jpg", "jpeg", "png", "tif", "tiff", "ppm", "pbm", "pgm"};
 
     // Date_time and Date strings
     public static final String[] DATES_TIMES_STRINGS = {"YYYYMMDDHHMMSS", "YYYYMMDD_HHMMSS", "YYYYMMDD-HHMMSS", "YYYY_MM_DD_HH_MM_SS", "YYYY-MM-DD-HH-MM-SS"};
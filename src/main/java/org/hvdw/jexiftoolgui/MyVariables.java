@@ -1,6 +1,8 @@
 package org.hvdw.jexiftoolgui;
 
 
+import org.hvdw.jexiftoolgui.metadata.MetadataStore;
+
 import java.io.File;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -45,7 +47,7 @@ public class MyVariables {
     private ArrayList<String> category_tag;
     private String Latitude;
     private String Longitude;
-    private HashMap <String, HashMap<String, String> > imagesData;
+    private MetadataStore imagesData;
     private String SearchPhrase;
 
     // The actual getters and setters
@@ -177,8 +179,8 @@ public class MyVariables {
     public static String getLongitude() { return staticInstance.Longitude; }
     public static void setLongitude(String lng) { staticInstance.Longitude = lng; }
 
-    public static HashMap<String, HashMap<String, String>> getimagesData() { return staticInstance.imagesData; }
-    public static void setimagesData(HashMap<String, HashMap<String, String>> imgsData) {staticInstance.imagesData = imgsData; }
+    public static MetadataStore getimagesData() { return staticInstance.imagesData; }
+    public static void setimagesData(MetadataStore imgsData) {staticInstance.imagesData = imgsData; }
 
     public static String getSearchPhrase() { return staticInstance.SearchPhrase; }
     public static void setSearchPhrase(String srchphrs) { staticInstance.SearchPhrase = srchphrs; }
@@ -11,8 +11,13 @@ import org.hvdw.jexiftoolgui.facades.SystemPropertyFacade;
 import org.hvdw.jexiftoolgui.metadata.CreateArgsFile;
 import org.hvdw.jexiftoolgui.metadata.ExportMetadata;
 import org.hvdw.jexiftoolgui.metadata.MetaData;
+import org.hvdw.jexiftoolgui.metadata.MetadataSearchIndex;
+import org.hvdw.jexiftoolgui.metadata.MetadataStore;
 import org.hvdw.jexiftoolgui.metadata.RemoveMetadata;
+import org.hvdw.jexiftoolgui.model.FileTreeModel;
 import org.hvdw.jexiftoolgui.model.GuiConfig;
+import org.hvdw.jexiftoolgui.model.ReverseGeocoder;
+import org.hvdw.jexiftoolgui.model.SQLiteModel;
 import org.hvdw.jexiftoolgui.renaming.RenamePhotos;
 import org.hvdw.jexiftoolgui.view.*;
 
@@ -35,8 +40,10 @@ import java.text.NumberFormat;
 import java.text.ParseException;
 import java.util.*;
 import java.util.List;
-import java.util.concurrent.Executor;
-import java.util.concurrent.Executors;
+import java.util.concurrent.*;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 
@@ -49,6 +56,8 @@ public class Utils {
 
     private final static IPreferencesFacade prefs = IPreferencesFacade.defaultInstance;
     private final static ch.qos.logback.classic.Logger logger = (ch.qos.logback.classic.Logger) getLogger(Utils.class);
+    // Max. number of files in one exiftool call when getting the basic data of loaded files
+    private final static int BASIC_DATA_CHUNK_SIZE = 250;
 
     private Utils() {
         SetLoggingLevel(Utils.class);
@@ -63,14 +72,26 @@ public class Utils {
         Utils.SetLoggingLevel(MenuActionListener.class);
         Utils.SetLoggingLevel(ButtonsActionListener.class);
         Utils.SetLoggingLevel(SQLiteJDBC.class);
+        Utils.SetLoggingLevel(FolderLoader.class);
+        Utils.SetLoggingLevel(FolderWatcher.class);
+        Utils.SetLoggingLevel(FileTreeModel.class);
+        Utils.SetLoggingLevel(ReverseGeocoder.class);
         Utils.SetLoggingLevel(StandardFileIO.class);
         Utils.SetLoggingLevel(CheckPreferences.class);
         Utils.SetLoggingLevel(CommandRunner.class);
+        Utils.SetLoggingLevel(ExifToolPool.class);
+        Utils.SetLoggingLevel(JobScheduler.class);
+        Utils.SetLoggingLevel(CommandBatcher.class);
+        Utils.SetLoggingLevel(ImageInfoCache.class);
+        Utils.SetLoggingLevel(Prefetcher.class);
         Utils.SetLoggingLevel(ExifTool.class);
         Utils.SetLoggingLevel(UpdateActions.class);
         Utils.SetLoggingLevel(ExifToolCommands.class);
         Utils.SetLoggingLevel(CommandLineArguments.class);
         Utils.SetLoggingLevel(ImageFunctions.class);
+        Utils.SetLoggingLevel(ThumbnailCache.class);
+        Utils.SetLoggingLevel(LazyIconLoader.class);
+        Utils.SetLoggingLevel(ExifThumbnailReader.class);
         Utils.SetLoggingLevel(MouseListeners.class);
         Utils.SetLoggingLevel(mainScreen.class);
         Utils.SetLoggingLevel(ExportToPDF.class);
@@ -93,6 +114,8 @@ public class Utils {
         Utils.SetLoggingLevel(EditXmpdata.class);
 
         Utils.SetLoggingLevel(MetaData.class);
+        Utils.SetLoggingLevel(MetadataSearchIndex.class);
+        Utils.SetLoggingLevel(JobQueueView.class);
         Utils.SetLoggingLevel(CreateArgsFile.class);
         Utils.SetLoggingLevel(ExportMetadata.class);
         Utils.SetLoggingLevel(RemoveMetadata.class);
@@ -560,10 +583,17 @@ public class Utils {
     }
 
     static public String returnBasicImageDataString(String filename, String stringType) {
+        return returnBasicImageDataString(filename, stringType, MyVariables.getimgBasicData());
+    }
+
+    /*
+     * Same as above, but for a specific image. Used when images are processed in parallel
+     * and the "last" imgBasicData can belong to any of them
+     */
+    static public String returnBasicImageDataString(String filename, String stringType, HashMap<String, String> imgBasicData) {
         String strImgData = "";
         Double calcFLin35mmFormat = 0.0;
         // hashmap basicImgData: ImageWidth, ImageHeight, Orientation, ISO, FNumber, ExposureTime, focallength, focallengthin35mmformat
-        HashMap<String, String> imgBasicData = MyVariables.getimgBasicData();
         StringBuilder imginfo = new StringBuilder();
         NumberFormat df = DecimalFormat.getInstance(Locale.US);
         df.setMaximumFractionDigits(1);
@@ -689,6 +719,7 @@ public class Utils {
 
     public static File[] loadImages(String loadingType, JPanel rootPanel, JPanel LeftPanel, JTable tableListfiles, JTable ListexiftoolInfotable, JButton[] commandButtons, JLabel[] mainScreenLabels, JProgressBar progressBar, String[] params, JCheckBox[] loadOptions) {
         File[] files;
+        File folder = null;
         boolean files_null = false;
 
         // "Translate" for clarity, instead of using the array index;
@@ -722,13 +753,15 @@ public class Utils {
             logger.debug("load folder pushed or menu load folder");
             if ("jfilechooser".equals(prefFileDialog)) {
                 logger.debug("load folder using jfilechooser");
-                files = StandardFileIO.getFolderFiles(rootPanel);
+                folder = StandardFileIO.getFolder(rootPanel);
                 logger.debug("AFTER load folder using jfilechooser");
             } else {
                 logger.debug("load folder using AWT file dialog");
-                files = StandardFileIO.getFolderFilesAwt(rootPanel);
+                folder = StandardFileIO.getFolderAwt(rootPanel);
                 logger.debug("AFTER load folder using AWT file dialog");
             }
+            // The files in the folder are found by the load job, so a big folder tree doesn't block the screen
+            files = (folder == null) ? null : new File[0];
         } else if ("dropped files".equals(loadingType)){ // files dropped onto our app
             OutputLabel.setText(ResourceBundle.getBundle("translations/program_strings").getString("pt.droppedfiles"));
             files = MyVariables.getLoadedFiles();
@@ -736,15 +769,19 @@ public class Utils {
             OutputLabel.setText(ResourceBundle.getBundle("translations/program_strings").getString("pt.commandline"));
             files = MyVariables.getLoadedFiles();
         }
+        List<Integer> selectedIndicesList = new ArrayList<>();
+        MyVariables.setselectedIndicesList(selectedIndicesList);
+        MyVariables.setLoadedFiles(files);
         if (files != null) {
-            // First initialize our data Hashmap
-            HashMap <String, HashMap<String, String> > imagesData = new HashMap<String, HashMap<String, String>>();
-            MyVariables.setimagesData(imagesData);
+            FolderWatcher.stop();
+            // First initialize our metadata store
+            MyVariables.setimagesData(new MetadataStore());
+            MetadataSearchIndex.clear();
 
             lblLoadedFiles.setText(String.valueOf(files.length));
             logger.debug("After loading images, loading files or dropping files: no. of files > 0");
-            Executor executor = Executors.newSingleThreadExecutor();
-            executor.execute(new Runnable() {
+            File finalFolder = folder;
+            JobScheduler.submit(ResourceBundle.getBundle("translations/program_strings").getString("jobs.loadimages"), JobScheduler.Priority.INTERACTIVE, new Runnable() {
                 @Override
                 public void run() {
                     int jpegcounter = 0;
@@ -753,10 +790,28 @@ public class Utils {
                     File firstFile = null;
                     boolean showCreatePreview = loadOptions[0].isSelected();
                     boolean loadMetadata = loadOptions[1].isSelected();
-                    for (File file : files) {
+                    File[] loadFiles = files;
+                    if (finalFolder != null) {
+                        // The rows appear while the folder (tree) is still being searched
+                        FileRows rows = startDisplayFiles(tableListfiles, LeftPanel, showCreatePreview, loadMetadata);
+                        findFolderFiles(finalFolder, OutputLabel, lblLoadedFiles, rows::add);
+                        rows.finish();
+                        loadFiles = MyVariables.getLoadedFiles();
+                        int foundFiles = loadFiles.length;
+                        if ((foundFiles == 0) || JobScheduler.isCancelled()) {
+                            // A cancelled search keeps the files found so far
+                            SwingUtilities.invokeLater(() -> {
+                                OutputLabel.setText("");
+                                lblLoadedFiles.setText(String.valueOf(foundFiles));
+                            });
+                            Utils.progressStatus(progressBar, false);
+                            return;
+                        }
+                    }
+                    for (File file : loadFiles) {
                         // Simple way to get image folder from first loaded image
                         if (loopcounter == 0) {
-                            lblimgSourceFolder.setText(file.getParent());
+                            lblimgSourceFolder.setText((finalFolder != null) ? finalFolder.getPath() : file.getParent());
                             firstFile = file;
                             loopcounter++;
                         }
@@ -767,12 +822,17 @@ public class Utils {
                             jpegcounter++;
                         }
                     }
-                    if ( (jpegcounter >= 3) && (showCreatePreview) ){
-                        // Always try to extract thumbnails and previews of selected images. This normally only works for JPGs and RAWs
-                        ImageFunctions.extractThumbnails();
+                    if (finalFolder == null) {
+                        if ( (jpegcounter >= 3) && (showCreatePreview) ){
+                            // Always try to extract thumbnails and previews of selected images. This normally only works for JPGs and RAWs
+                            // (for a folder the rows are already there: its icons are extracted one by one when they become visible)
+                            ImageFunctions.extractThumbnails();
+                        }
+                        Utils.displayFiles(tableListfiles, LeftPanel, showCreatePreview, loadMetadata);
                     }
-
-                    Utils.displayFiles(tableListfiles, LeftPanel, showCreatePreview, loadMetadata);
+                    // From now on changes by other programs only refresh the changed files (when the user wants that)
+                    int watchedLoad = ((FileTableModel) tableListfiles.getModel()).currentLoad();
+                    FolderWatcher.watch(MyVariables.getLoadedFiles(), (finalFolder != null), changes -> refreshChangedFiles(changes, tableListfiles, lblLoadedFiles, watchedLoad));
 
                     // After loading all display the data for the first image
                     MyVariables.setSelectedRow(0);
@@ -807,23 +867,62 @@ public class Utils {
             lblLoadedFiles.setText("");
             OutputLabel.setText("");
         }
-        List<Integer> selectedIndicesList = new ArrayList<>();
-        MyVariables.setselectedIndicesList(selectedIndicesList);
-        MyVariables.setLoadedFiles(files);
 
         return files;
     }
 
+    /*
+     * Finds the files of a loaded folder (with its subfolders when the user wants that) and hands them to the consumer
+     * per folder, while showing the number of files found so far. The search stops when the load job is cancelled.
+     */
+    private static void findFolderFiles(File folder, JLabel OutputLabel, JLabel lblLoadedFiles, Consumer<List<File>> folderFilesConsumer) {
+        boolean recursive = prefs.getByKey(LOAD_SUBFOLDERS, false);
+        String filesFound = ResourceBundle.getBundle("translations/program_strings").getString("pt.filesfound");
+        long[] lastUpdate = new long[1];
+        int[] count = new int[1];
+        FolderLoader.walk(folder, recursive, folderFiles -> {
+            folderFilesConsumer.accept(folderFiles);
+            count[0] += folderFiles.size();
+            // Not more than a few label updates per second
+            long now = System.currentTimeMillis();
+            if (now - lastUpdate[0] > 200) {
+                lastUpdate[0] = now;
+                int found = count[0];
+                SwingUtilities.invokeLater(() -> {
+                    OutputLabel.setText(filesFound + " " + found);
+                    lblLoadedFiles.setText(String.valueOf(found));
+                });
+            }
+        });
+        int found = count[0];
+        logger.debug("found {} files in {} (subfolders: {})", found, folder, recursive);
+        SwingUtilities.invokeLater(() -> {
+            OutputLabel.setText(ResourceBundle.getBundle("translations/program_strings").getString("pt.loadingdirectory"));
+            lblLoadedFiles.setText(String.valueOf(found));
+        });
+    }
+
+
+    // How the rows of the current load are made, for the rows that are refreshed later (FolderWatcher)
+    private static boolean displayedSingleColumnTable = true;
+    private static boolean displayedWithPreview = false;
+    private static boolean displayedWithMetadata = false;
 
     /*
      * Display the loaded files with icon and name
      */
     static void displayFiles(JTable jTable_File_Names, JPanel LeftPanel, boolean showCreatePreview, boolean loadMetadata) {
-        int selectedRow, selectedColumn;
-
-        ImageIcon icon = null;
         File[] files = MyVariables.getLoadedFiles();
+        FileRows rows = startDisplayFiles(jTable_File_Names, LeftPanel, showCreatePreview, loadMetadata);
+        rows.add(Arrays.asList(files));
+        rows.finish();
+    }
 
+    /*
+     * Empties the left table and sets it up for the rows of a new load, which are then added with the returned FileRows.
+     * The loaded files start empty and grow with the files given to FileRows.
+     */
+    static FileRows startDisplayFiles(JTable jTable_File_Names, JPanel LeftPanel, boolean showCreatePreview, boolean loadMetadata) {
         boolean singleColumnTable = true;
         if ( (showCreatePreview)  && (loadMetadata) ) {
             boolean columns = prefs.getByKey(DUAL_COLUMN, true);
@@ -836,96 +935,341 @@ public class Utils {
             singleColumnTable = true;
         }
 
-        DefaultTableModel model = (DefaultTableModel) jTable_File_Names.getModel();
-
         boolean finalSingleColumnTable = singleColumnTable;
         boolean finalshowCreatePreview = showCreatePreview;
-        jTable_File_Names.setDefaultRenderer(Object.class, new DefaultTableCellRenderer() {
-            protected void setValue(Object value) {
-                if (finalSingleColumnTable) {
-                    if (value instanceof LabelIcon) {
-                        setIcon(((LabelIcon) value).icon);
-                        setHorizontalTextPosition(JLabel.CENTER);
-                        setVerticalTextPosition(JLabel.BOTTOM);
-                        setText(((LabelIcon) value).label);
-                    }
-                } else {
-                    if (value instanceof ImageIcon) {
-                        setIcon((ImageIcon) value);
-                        setText("");
+        displayedSingleColumnTable = singleColumnTable;
+        displayedWithPreview = showCreatePreview;
+        displayedWithMetadata = loadMetadata;
+        // This runs as background job: the table itself may only be changed on the EDT
+        int[] load = new int[1];
+        runOnEdt(() -> {
+            FileTableModel model;
+            if (jTable_File_Names.getModel() instanceof FileTableModel) {
+                model = (FileTableModel) jTable_File_Names.getModel();
+            } else {
+                model = new FileTableModel();
+                jTable_File_Names.setModel(model);
+            }
+            jTable_File_Names.setDefaultRenderer(Object.class, new DefaultTableCellRenderer() {
+                protected void setValue(Object value) {
+                    if (finalSingleColumnTable) {
+                        if (value instanceof LabelIcon) {
+                            setIcon(((LabelIcon) value).icon);
+                            setHorizontalTextPosition(JLabel.CENTER);
+                            setVerticalTextPosition(JLabel.BOTTOM);
+                            setText(((LabelIcon) value).label);
+                        }
                     } else {
-                        setIcon(null);
-                        super.setValue(value);
+                        if (value instanceof Icon) {
+                            setIcon((Icon) value);
+                            setText("");
+                        } else {
+                            setIcon(null);
+                            super.setValue(value);
+                        }
                     }
                 }
+            });
+
+            if (finalSingleColumnTable) {
+                jTable_File_Names.setDefaultRenderer(LabelIcon.class, new LabelIconRenderer());
+                if ( (loadMetadata) || (finalshowCreatePreview) ) {
+                    load[0] = model.reset("Photo / Filename");
+                    jTable_File_Names.setRowHeight(150);
+                } else {
+                    load[0] = model.reset(ResourceBundle.getBundle("translations/program_strings").getString("lp.filename"));
+                    jTable_File_Names.setRowHeight(25);
+                }
+                jTable_File_Names.getColumnModel().getColumn(0).setMinWidth(170);
+                jTable_File_Names.getColumnModel().getColumn(0).setPreferredWidth(210);
+                LeftPanel.setPreferredSize(new Dimension(440, -1));
+            } else {
+                load[0] = model.reset(ResourceBundle.getBundle("translations/program_strings").getString("lp.thumbtablephotos"), ResourceBundle.getBundle("translations/program_strings").getString("lp.thumbtabledata"));
+                jTable_File_Names.getColumnModel().getColumn(0).setPreferredWidth(170);
+                jTable_File_Names.getColumnModel().getColumn(1).setPreferredWidth(250);
+                jTable_File_Names.setRowHeight(150);
+                LeftPanel.setPreferredSize(new Dimension(440, -1));
             }
+            jTable_File_Names.clearSelection();
+            jTable_File_Names.setCellSelectionEnabled(true);
+            // Together with the emptied table, so a row number never points past the loaded files
+            MyVariables.setLoadedFiles(new File[0]);
         });
+        FileTableModel model = (FileTableModel) jTable_File_Names.getModel();
+        if (showCreatePreview) {
+            LazyIconLoader.attach(jTable_File_Names, new File[0]);
+        }
+        MyVariables.setSelectedRow(0);
+        MyVariables.setSelectedColumn(0);
+        return new FileRows(model, load[0], singleColumnTable, showCreatePreview, loadMetadata);
+    }
 
-        if (singleColumnTable) {
-            jTable_File_Names.setDefaultRenderer(LabelIcon.class, new LabelIconRenderer());
-            model.setColumnIdentifiers(new String[]{"Photo / Filename"});
-            jTable_File_Names.getColumnModel().getColumn(0).setMinWidth(170);
-            jTable_File_Names.getColumnModel().getColumn(0).setPreferredWidth(210);
-            //jTable_File_Names.setRowHeight(150);
-            if ( (loadMetadata) || (showCreatePreview) ) {
-                jTable_File_Names.setRowHeight(150);
-            } else {
-                model.setColumnIdentifiers(new String[]{ResourceBundle.getBundle("translations/program_strings").getString("lp.filename")});
-                jTable_File_Names.setRowHeight(25);
+    /*
+     * Adds the rows of the loaded files to the left table while the files are still being found (see displayFiles).
+     * The files come in per folder. They are added to the loaded files in batches, and for every batch the basic
+     * metadata is read in chunks in the task pool. Every chunk adds its rows as soon as it and the chunks before
+     * it are ready, so the row numbers always match MyVariables.getLoadedFiles().
+     */
+    static class FileRows {
+        // Hand the found files over at least this often, or when this many files are waiting
+        private static final long MAX_BATCH_MILLIS = 250;
+        private final FileTableModel model;
+        private final int currentLoad;
+        private final boolean singleColumnTable;
+        private final boolean showCreatePreview;
+        private final boolean loadMetadata;
+        private final int threads = getWorkerThreadCount();
+        // Null when there is nothing to extract: then the rows are made directly
+        private final ExecutorService workers;
+        private final List<File> loadedFiles = new ArrayList<>();
+        private List<File> pendingFiles = new ArrayList<>();
+        private final Deque<RowChunk> chunks = new ArrayDeque<>();
+        private long lastBatch = System.currentTimeMillis();
+
+        private FileRows(FileTableModel model, int currentLoad, boolean singleColumnTable, boolean showCreatePreview, boolean loadMetadata) {
+            this.model = model;
+            this.currentLoad = currentLoad;
+            this.singleColumnTable = singleColumnTable;
+            this.showCreatePreview = showCreatePreview;
+            this.loadMetadata = loadMetadata;
+            // Every file needs one or more exiftool calls. Do that on all cores (the shared task pool of the jobs)
+            this.workers = (loadMetadata || showCreatePreview) ? JobScheduler.newTaskGroup() : null;
+        }
+
+        /*
+         * The next files that were found
+         */
+        void add(List<File> files) {
+            pendingFiles.addAll(files);
+            if ((pendingFiles.size() >= BASIC_DATA_CHUNK_SIZE) || (System.currentTimeMillis() - lastBatch > MAX_BATCH_MILLIS)) {
+                addPendingFiles();
             }
-            LeftPanel.setPreferredSize(new Dimension(440, -1));
-        } else {
-            model.setColumnIdentifiers(new String[]{ResourceBundle.getBundle("translations/program_strings").getString("lp.thumbtablephotos"), ResourceBundle.getBundle("translations/program_strings").getString("lp.thumbtabledata")});
-            jTable_File_Names.getColumnModel().getColumn(0).setPreferredWidth(170);
-            jTable_File_Names.getColumnModel().getColumn(1).setPreferredWidth(250);
-            jTable_File_Names.setRowHeight(150);
-            LeftPanel.setPreferredSize(new Dimension(440, -1));
+            addReadyChunks(false);
         }
 
-        model.setRowCount(0);
-        model.fireTableDataChanged();
-        jTable_File_Names.clearSelection();
-        jTable_File_Names.setCellSelectionEnabled(true);
-        Object[] ImgFilenameRow = new Object[2];
-        String filename = "";
+        /*
+         * All files are found: waits for the rows of all files
+         */
+        void finish() {
+            addPendingFiles();
+            addReadyChunks(true);
+            if (workers != null) {
+                workers.shutdown();
+            }
+        }
 
-        Application.OS_NAMES currentOsName = getCurrentOsName();
-        for (File file : files) {
-            filename = file.getName().replace("\\", "/");
-            logger.debug("Now working on image: " +filename);
+        private void addPendingFiles() {
+            lastBatch = System.currentTimeMillis();
+            if (pendingFiles.isEmpty()) {
+                return;
+            }
+            List<File> batch = pendingFiles;
+            pendingFiles = new ArrayList<>();
+            loadedFiles.addAll(batch);
+            File[] files = loadedFiles.toArray(new File[0]);
+            // The loaded files first: a row may be selected as soon as it is shown
+            MyVariables.setLoadedFiles(files);
+            if (workers == null) {
+                for (File file : batch) {
+                    model.addRowLater(currentLoad, createFileRow(file, singleColumnTable, false, false));
+                }
+                return;
+            }
+            if (showCreatePreview) {
+                // Icons are only created when they become visible (LazyIconLoader) and get the basic data themselves
+                LazyIconLoader.update(files, Collections.emptyList());
+            }
+            // First get the basic metadata of the chunk: one exiftool call per chunk instead of per file
+            int chunkSize = Math.max(1, Math.min(BASIC_DATA_CHUNK_SIZE, (batch.size() + threads - 1) / threads));
+            for (int start = 0; start < batch.size(); start += chunkSize) {
+                List<File> chunk = batch.subList(start, Math.min(start + chunkSize, batch.size()));
+                Future<List<Object[]>> rows = workers.submit(() -> {
+                    if (loadMetadata) {
+                        ImageFunctions.getbasicImageDataBatch(chunk);
+                    }
+                    List<Object[]> chunkRows = new ArrayList<>();
+                    for (File file : chunk) {
+                        chunkRows.add(createFileRow(file, singleColumnTable, showCreatePreview, loadMetadata));
+                    }
+                    return chunkRows;
+                });
+                chunks.add(new RowChunk(chunk, rows));
+            }
+        }
+
+        // Adds the rows of the ready chunks in order. The model shows them in batches, so a big folder doesn't cause a table event per file
+        private void addReadyChunks(boolean wait) {
+            RowChunk chunk;
+            while (((chunk = chunks.peek()) != null) && (wait || chunk.rows.isDone())) {
+                chunks.poll();
+                try {
+                    for (Object[] row : chunk.rows.get()) {
+                        model.addRowLater(currentLoad, row);
+                    }
+                } catch (InterruptedException | ExecutionException | CancellationException ex) {
+                    logger.error("Error creating the rows of {} files", chunk.files.size(), ex);
+                    // Still a row for every loaded file
+                    for (File file : chunk.files) {
+                        model.addRowLater(currentLoad, createFileRow(file, singleColumnTable, false, false));
+                    }
+                }
+            }
+        }
+    }
+
+    private static class RowChunk {
+        final List<File> files;
+        final Future<List<Object[]>> rows;
+
+        RowChunk(List<File> files, Future<List<Object[]>> rows) {
+            this.files = files;
+            this.rows = rows;
+        }
+    }
+
+    /*
+     * Applies the changes the FolderWatcher found in the folders of the loaded files: only the metadata, icons and rows
+     * of those files are refreshed, the rest of the table stays as it is. Runs as background job.
+     */
+    static void refreshChangedFiles(FolderWatcher.Changes changes, JTable jTable_File_Names, JLabel lblLoadedFiles, int watchedLoad) {
+        if (!(jTable_File_Names.getModel() instanceof FileTableModel)) {
+            return;
+        }
+        FileTableModel model = (FileTableModel) jTable_File_Names.getModel();
+        List<File> changedFiles = new ArrayList<>(changes.modified);
+        changedFiles.addAll(changes.created);
+        // The metadata first: the rows and icons are made with it
+        if (displayedWithMetadata && !changedFiles.isEmpty()) {
+            ImageFunctions.getbasicImageDataBatch(changedFiles);
+        }
+        Map<File, Object[]> newRows = new HashMap<>();
+        for (File file : changedFiles) {
+            newRows.put(file, createFileRow(file, displayedSingleColumnTable, displayedWithPreview, displayedWithMetadata));
+        }
+
+        runOnEdt(() -> {
+            if (model.currentLoad() != watchedLoad) {
+                // Files were loaded again in the meantime
+                return;
+            }
+            List<File> files = new ArrayList<>(Arrays.asList(MyVariables.getLoadedFiles()));
+            boolean removedRows = false;
+            for (File file : changes.deleted) {
+                int index = files.indexOf(file);
+                if (index >= 0) {
+                    files.remove(index);
+                    model.removeRow(index);
+                    removedRows = true;
+                    String imageKey = MetadataStore.keyOf(file);
+                    MyVariables.getimagesData().remove(imageKey);
+                    MetadataSearchIndex.remove(imageKey);
+                }
+            }
+            for (File file : changes.modified) {
+                int index = files.indexOf(file);
+                if ((index >= 0) && (index < model.getRowCount())) {
+                    model.updateRow(index, newRows.get(file));
+                }
+            }
+            for (File file : changes.created) {
+                if (!files.contains(file)) {
+                    files.add(file);
+                    model.addRow(newRows.get(file));
+                }
+            }
+            File[] loadedFiles = files.toArray(new File[0]);
+            MyVariables.setLoadedFiles(loadedFiles);
+            LazyIconLoader.update(loadedFiles, changedFiles);
+            FolderWatcher.setWatchedFiles(loadedFiles);
+            if (removedRows) {
+                // The row numbers of the selection are no longer valid
+                jTable_File_Names.clearSelection();
+                MyVariables.setselectedIndicesList(new ArrayList<>());
+                MyVariables.setSelectedFilenamesIndices(new int[0]);
+                MyVariables.setSelectedRow(0);
+            }
+            lblLoadedFiles.setText(String.valueOf(loadedFiles.length));
+        });
+    }
+
+    /*
+     * Runs the code on the EDT and waits for it
+     */
+    private static void runOnEdt(Runnable code) {
+        if (SwingUtilities.isEventDispatchThread()) {
+            code.run();
+            return;
+        }
+        try {
+            SwingUtilities.invokeAndWait(code);
+        } catch (InterruptedException | java.lang.reflect.InvocationTargetException e) {
+            logger.error("error running code on the EDT", e);
+        }
+    }
+
+    /*
+     * The number of parallel workers used for loading images (and other per-file exiftool work): the number of cores,
+     * capped by the (optional) preference
+     */
+    public static int getWorkerThreadCount() {
+        int cores = Runtime.getRuntime().availableProcessors();
+        int maxThreads = cores;
+        try {
+            maxThreads = Integer.parseInt(prefs.getByKey(MAX_WORKER_THREADS, String.valueOf(cores)).trim());
+        } catch (NumberFormatException e) {
+            logger.error("Invalid value for preference {}", MAX_WORKER_THREADS.key);
+        }
+        return Math.max(1, Math.min(cores, maxThreads));
+    }
 
-            if (loadMetadata) {
+    /*
+     * Creates the left table row (icon and/or basic data) for one file.
+     * This runs on the worker threads of displayFiles
+     */
+    private static Object[] createFileRow(File file, boolean singleColumnTable, boolean showCreatePreview, boolean loadMetadata) {
+        Object[] ImgFilenameRow = new Object[2];
+        Icon icon = null;
+        HashMap<String, String> imgBasicData = new HashMap<String, String>();
+        String filename = file.getName().replace("\\", "/");
+        logger.debug("Now working on image: " +filename);
+
+        if (loadMetadata) {
+            MetadataStore imagesData = MyVariables.getimagesData();
+            String imageKey = MetadataStore.keyOf(file);
+            if (!imagesData.containsKey(imageKey)) {
+                // Not in the batch output (exiftool had an issue with it): try it separately
                 ImageFunctions.getbasicImageData(file);
             }
-            if (showCreatePreview) { //User wants a preview
-                icon = ImageFunctions.analyzeImageAndCreateIcon(file);
+            HashMap<String, String> storedData = imagesData.get(imageKey);
+            if (storedData != null) {
+                imgBasicData = storedData;
             }
+        }
+        if (showCreatePreview) { //User wants a preview. It is created when the row becomes visible
+            icon = LazyIconLoader.lazyIcon(file);
+        }
 
-            logger.debug("Before display: Singlecolumntable {} ShowCreatePreview {} loadMetadata {}", singleColumnTable, showCreatePreview, loadMetadata);
-            if (singleColumnTable){
-                if (showCreatePreview) { //User wants a preview
-                    ImgFilenameRow[0] = new LabelIcon(icon, filename);
+        logger.debug("Before display: Singlecolumntable {} ShowCreatePreview {} loadMetadata {}", singleColumnTable, showCreatePreview, loadMetadata);
+        if (singleColumnTable){
+            if (showCreatePreview) { //User wants a preview
+                ImgFilenameRow[0] = new LabelIcon(icon, filename);
+            } else {
+                if (loadMetadata) {
+                    String imginfo = returnBasicImageDataString(filename, "html", imgBasicData);
+                    logger.debug("imginfo {}", imginfo);
+                    //ImgFilenameRow[1] = imginfo;
+                    ImgFilenameRow[0] = new LabelIcon(null, imginfo);
                 } else {
-                    if (loadMetadata) {
-                        String imginfo = returnBasicImageDataString(filename, "html");
-                        logger.debug("imginfo {}", imginfo);
-                        //ImgFilenameRow[1] = imginfo;
-                        ImgFilenameRow[0] = new LabelIcon(null, imginfo);
-                    } else {
-                        ImgFilenameRow[0] = new LabelIcon(null, filename);
-                    }
+                    ImgFilenameRow[0] = new LabelIcon(null, filename);
                 }
-            } else {
-                String imginfo = returnBasicImageDataString(filename, "html");
-                logger.debug("imginfo {}", imginfo);
-                ImgFilenameRow[0] = icon;
-                ImgFilenameRow[1] = imginfo;
             }
-            model.addRow(ImgFilenameRow);
+        } else {
+            String imginfo = returnBasicImageDataString(filename, "html", imgBasicData);
+            logger.debug("imginfo {}", imginfo);
+            ImgFilenameRow[0] = icon;
+            ImgFilenameRow[1] = imginfo;
         }
-
-        MyVariables.setSelectedRow(0);
-        MyVariables.setSelectedColumn(0);
+        return ImgFilenameRow;
     }
 
     private static void getImageInfoFromSelectedTreeFile(String[] whichInfo,JTable ListexiftoolInfotable) {
@@ -972,9 +1316,9 @@ public class Utils {
 
             logger.trace("before runCommand: {}", cmdparams);
             try {
-                String res = CommandRunner.runCommand(cmdparams);
-                logger.trace("res is {}", res);
-                displayInfoForSelectedImage(res, ListexiftoolInfotable);
+                List<String[]> rows = new ArrayList<>();
+                CommandRunner.runCommand(cmdparams, infoRowParser(rows::add));
+                displayInfoRowsForSelectedImage(rows, ListexiftoolInfotable);
             } catch (IOException | InterruptedException ex) {
                 logger.error("Error executing command", ex);
             }
@@ -995,60 +1339,17 @@ public class Utils {
     public static String getImageInfoFromSelectedFile(String[] whichInfo) {
 
         String res = "";
-        String fpath = "";
-        List<String> cmdparams = new ArrayList<String>();
         int selectedRow = MyVariables.getSelectedRow();
         List<Integer> selectedIndicesList =  MyVariables.getselectedIndicesList();
         File[] files = MyVariables.getLoadedFiles();
 
         if (selectedIndicesList.size() < 2) { //Meaning we have only one image selected
-            logger.debug("selectedRow: {}", String.valueOf(selectedRow));
-            if (isOsFromMicrosoft()) {
-                fpath = files[selectedRow].getPath().replace("\\", "/");
-            } else {
-                fpath = files[selectedRow].getPath();
-            }
-
-            // Need to build exiftool prefs check
-            MyVariables.setSelectedImagePath(fpath);
-            Application.OS_NAMES currentOsName = getCurrentOsName();
-
-            cmdparams.add(Utils.platformExiftool().trim());
-            // Check if we want to use G1 instead of G
-            boolean useGroup1 = prefs.getByKey(USE_G1_GROUP, false);
-            if (useGroup1) {
-                for (int i = 0; i < whichInfo.length; i++) {
-                    if ("-G".equals(whichInfo[i])) {
-                        whichInfo[i] = whichInfo[i].replace("-G", "-G1");
-                    }
-                }
-            }
-            // Check for chosen metadata language
-            if (!"".equals(getmetadataLanguage())) {
-                cmdparams.add("-lang");
-                cmdparams.add(getmetadataLanguage());
-            }
-            // Check if user wants to see decimal degrees
-            if (UseDecimalDegrees()) {
-                cmdparams.add("-c");
-                cmdparams.add("%+.6f");
-            }
-            // Check if users wants to see the tags alphabetically sorted
-            if (Sorted_Tags()) {
-                cmdparams.add("-sort");
-            }
-            // Check if user wants to see the tags using STRUCTS
-            if (Display_Structured_Data()) {
-                cmdparams.add("-struct");
-            }
-
-            cmdparams.addAll(Arrays.asList(whichInfo));
-            logger.trace("image file path: {}", fpath);
-            cmdparams.add(MyVariables.getSelectedImagePath());
+            List<String> cmdparams = imageInfoCmdParams(whichInfo, selectedRow);
 
             logger.trace("before runCommand: {}", cmdparams);
             try {
-                res = CommandRunner.runCommand(cmdparams);
+                // Switching back to an image seen before doesn't need exiftool again
+                res = ImageInfoCache.runCommand(cmdparams, files[selectedRow]);
                 logger.trace("res is {}", res);
                 //displayInfoForSelectedImage(res, ListexiftoolInfotable);
             } catch (IOException | InterruptedException ex) {
@@ -1075,20 +1376,103 @@ public class Utils {
     public static String getImageInfoFromSelectedFile(String[] whichInfo, int index) {
 
         String res = "";
-        String fpath = "";
-        List<String> cmdparams = new ArrayList<String>();
-        File[] files = MyVariables.getLoadedFiles();
+        List<String> cmdparams = imageInfoCmdParams(whichInfo, index);
+
+        logger.trace("before runCommand: {}", cmdparams);
+        try {
+            res = ImageInfoCache.runCommand(cmdparams, MyVariables.getLoadedFiles()[index]);
+            logger.trace("res is {}", res);
+            //displayInfoForSelectedImage(res, ListexiftoolInfotable);
+        } catch (IOException | InterruptedException ex) {
+            logger.error("Error executing command", ex);
+        }
+
+        return res;
+    }
+
+    /**
+     * Streaming variant of getImageInfoFromSelectedFile(whichInfo, index): the exiftool output lines are handed
+     * to the consumer while exiftool is still running, instead of first being collected in one big String.
+     * Use infoRowParser to get the group/tag/value rows of "-tab" output.
+     * @param whichInfo
+     * @param index
+     * @param consumer
+     */
+    public static void getImageInfoFromSelectedFile(String[] whichInfo, int index, CommandRunner.LineConsumer consumer) throws IOException, InterruptedException {
+        List<String> cmdparams = imageInfoCmdParams(whichInfo, index);
+        logger.trace("before runCommand: {}", cmdparams);
+        CommandRunner.runCommand(cmdparams, consumer);
+    }
+
+    /*
+     * Gets the info of several files with one exiftool call, for batch work like the PDF export.
+     * Every {group, tag, value} row of the "-tab" output is handed to the consumer together with the file it belongs to.
+     */
+    public static void getImageInfoFromFiles(String[] whichInfo, List<File> files, BiConsumer<File, String[]> rowConsumer) throws IOException, InterruptedException {
+        if (files.isEmpty()) {
+            return;
+        }
+        Map<String, File> filesByPath = new HashMap<>();
+        List<String> cmdparams = imageInfoCmdParams(whichInfo.clone(), imagePath(files.get(0)));
+        cmdparams.remove(cmdparams.size() - 1);
+        for (File file : files) {
+            String fpath = imagePath(file);
+            filesByPath.put(fpath, file);
+            cmdparams.add(fpath);
+        }
+        logger.trace("before runCommand: {}", cmdparams);
+        CommandRunner.runCommand(cmdparams, new CommandRunner.LineConsumer() {
+            // exiftool only writes a "======== file" line before the output of a file when there are more files
+            private File current = (files.size() == 1) ? files.get(0) : null;
+            private CommandRunner.LineConsumer parser = (current == null) ? null : fileParser(current);
+
+            @Override
+            public void accept(String line) throws IOException {
+                if (line.startsWith("======== ")) {
+                    current = filesByPath.get(line.substring(9).trim());
+                    parser = (current == null) ? null : fileParser(current);
+                } else if ((parser != null) && !(line.startsWith(" ") && !line.contains("\t"))) {
+                    // Lines with leading spaces and no tabs are the "x image files read" summary
+                    parser.accept(line);
+                }
+            }
+
+            private CommandRunner.LineConsumer fileParser(File file) {
+                return infoRowParser(cells -> rowConsumer.accept(file, cells));
+            }
+        });
+    }
+
+    private static List<String> imageInfoCmdParams(String[] whichInfo, int index) {
 
         logger.debug("selectedRow: {}", String.valueOf(index));
+        String fpath = imagePath(MyVariables.getLoadedFiles()[index]);
+
+        // Need to build exiftool prefs check
+        MyVariables.setSelectedImagePath(fpath);
+        return imageInfoCmdParams(whichInfo, fpath);
+    }
+
+    private static String imagePath(File file) {
         if (isOsFromMicrosoft()) {
-            fpath = files[index].getPath().replace("\\", "/");
+            return file.getPath().replace("\\", "/");
         } else {
-            fpath = files[index].getPath();
+            return file.getPath();
         }
+    }
 
-        // Need to build exiftool prefs check
-        MyVariables.setSelectedImagePath(fpath);
-        Application.OS_NAMES currentOsName = getCurrentOsName();
+    /*
+     * Reads the info of an image that is not selected (yet) into the ImageInfoCache. Used by the Prefetcher
+     * for the rows around the selected one; doesn't touch the selected image path.
+     */
+    public static void prefetchImageInfo(String[] whichInfo, int index) throws IOException, InterruptedException {
+        File file = MyVariables.getLoadedFiles()[index];
+        ImageInfoCache.runCommand(imageInfoCmdParams(whichInfo.clone(), imagePath(file)), file);
+    }
+
+    private static List<String> imageInfoCmdParams(String[] whichInfo, String fpath) {
+
+        List<String> cmdparams = new ArrayList<String>();
 
         cmdparams.add(Utils.platformExiftool().trim());
         // Check if we want to use G1 instead of G
@@ -1121,18 +1505,9 @@ public class Utils {
 
         cmdparams.addAll(Arrays.asList(whichInfo));
         logger.trace("image file path: {}", fpath);
-        cmdparams.add(MyVariables.getSelectedImagePath());
+        cmdparams.add(fpath);
 
-        logger.trace("before runCommand: {}", cmdparams);
-        try {
-            res = CommandRunner.runCommand(cmdparams);
-            logger.trace("res is {}", res);
-            //displayInfoForSelectedImage(res, ListexiftoolInfotable);
-        } catch (IOException | InterruptedException ex) {
-            logger.error("Error executing command", ex);
-        }
-
-        return res;
+        return cmdparams;
     }
 
 
@@ -1211,8 +1586,7 @@ public class Utils {
                 for (String customCombi : customCombis) {
                     if (customCombi.equals(SelectedTagName)) {
                         //logger.info("SelectedTagName: {}; customCombi: {}",SelectedTagName, customCombi);
-                        String sql = "select tag from custommetadatasetLines where customset_name='" + SelectedTagName + "' order by rowcount";
-                        String queryResult = SQLiteJDBC.singleFieldQuery(sql,"tag");
+                        String queryResult = SQLiteModel.getCustomSetTags(SelectedTagName);
                         if (queryResult.length() > 0) {
                             String[] customTags = queryResult.split("\\r?\\n");
                             logger.debug("queryResult {}",queryResult);
@@ -1254,6 +1628,23 @@ public class Utils {
         // This will display the metadata info in the right panel
 
         logger.trace("String exiftoolInfo {}", exiftoolInfo);
+        List<String[]> rows = new ArrayList<>();
+        CommandRunner.LineConsumer parser = infoRowParser(rows::add);
+        try {
+            for (String line : (Iterable<String>) exiftoolInfo.lines()::iterator) {
+                parser.accept(line);
+            }
+        } catch (IOException e) {
+            // Can't happen when parsing a String
+            logger.error("Error parsing exiftool info", e);
+        }
+        displayInfoRowsForSelectedImage(rows, ListexiftoolInfotable);
+    }
+
+    /*
+     * Displays the group/tag/value rows (see infoRowParser) in the right panel
+     */
+    public static void displayInfoRowsForSelectedImage(List<String[]> rows, JTable ListexiftoolInfotable) {
         DefaultTableModel model = (DefaultTableModel) ListexiftoolInfotable.getModel();
         model.setColumnIdentifiers(new String[]{ ResourceBundle.getBundle("translations/program_strings").getString("vdtab.tablegroup"),
                 ResourceBundle.getBundle("translations/program_strings").getString("vdtab.tabletag"),
@@ -1263,43 +1654,64 @@ public class Utils {
         ListexiftoolInfotable.getColumnModel().getColumn(2).setPreferredWidth(440);
         model.setRowCount(0);
 
-        Object[] row = new Object[1];
+        logger.debug("number of info rows {}", rows.size());
+        boolean sort_cats_tags = prefs.getByKey(SORT_CATEGORIES_TAGS, false);
+        if (sort_cats_tags) {
+            // Same order as sorting the exiftool output lines
+            rows.sort(Comparator.comparing(cells -> String.join("\t", cells)));
+        }
+        for (String[] cells : rows) {
+            model.addRow(new Object[]{cells[0], cells[1], cells[2]});
+        }
+    }
 
+    /*
+     * Returns a LineConsumer that turns the lines of exiftool "-tab" output into {group, tag, value} rows.
+     * When exiftool starts with a Warning or Error, there is only one {"ExifTool", "Warning"/"Error", "Invalid Metadata data"} row.
+     * Lines are processed as they arrive, so the complete output never needs to be in memory.
+     */
+    public static CommandRunner.LineConsumer infoRowParser(Consumer<String[]> rowConsumer) {
+        return infoRowParser(rowConsumer, kind -> new String[]{"ExifTool", kind, "Invalid Metadata data"});
+    }
 
-        logger.debug("exiftoolInfo.length() {}; Warning?? {}; Error ?? {}", exiftoolInfo.length(),exiftoolInfo.trim().startsWith("Warning"), exiftoolInfo.trim().startsWith("Error"));
-//        if ( (exiftoolInfo.length() > 0) && !( exiftoolInfo.trim().startsWith("Warning") || exiftoolInfo.trim().startsWith("Error") ) ) {
-        if (exiftoolInfo.length() > 0) {
-            if (exiftoolInfo.trim().startsWith("Warning")) {
-                model.addRow(new Object[]{"ExifTool", "Warning", "Invalid Metadata data"});
-            } else if (exiftoolInfo.trim().startsWith("Error")) {
-                model.addRow(new Object[]{"ExifTool", "Error", "Invalid Metadata data"});
-            } else {
-                String[] lines = exiftoolInfo.split(SystemPropertyFacade.getPropertyByKey(LINE_SEPARATOR));
-
-                boolean sort_cats_tags = prefs.getByKey(SORT_CATEGORIES_TAGS, false);
-                if (sort_cats_tags) {
-                    List<String> strList = Arrays.asList(lines);
-                    Collections.sort(strList);
-                    String[] sortedLines = strList.stream().toArray(String[]::new);
-                    for (String line : sortedLines) {
-                        String[] cells = line.split("\\t", 3);
-                        model.addRow(new Object[]{cells[0], cells[1], cells[2]});
+    /*
+     * Same as infoRowParser(rowConsumer), but invalidRow makes the one row for a "Warning" or "Error" at the start
+     */
+    public static CommandRunner.LineConsumer infoRowParser(Consumer<String[]> rowConsumer, Function<String, String[]> invalidRow) {
+        return new CommandRunner.LineConsumer() {
+            private boolean firstLine = true;
+            private boolean invalid = false;
+
+            @Override
+            public void accept(String line) {
+                if (invalid || line.trim().isEmpty()) {
+                    return;
+                }
+                if (firstLine) {
+                    firstLine = false;
+                    if (line.trim().startsWith("Warning")) {
+                        invalid = true;
+                        rowConsumer.accept(invalidRow.apply("Warning"));
+                        return;
+                    } else if (line.trim().startsWith("Error")) {
+                        invalid = true;
+                        rowConsumer.accept(invalidRow.apply("Error"));
+                        return;
                     }
-                } else {
-                    for (String line : lines) {
-                        //String[] cells = lines[i].split(":", 2); // Only split on first : as some tags also contain (multiple) :
-                        String[] cells = line.split("\\t", 3);
-                        model.addRow(new Object[]{cells[0], cells[1], cells[2]});
+                }
+                //String[] cells = lines[i].split(":", 2); // Only split on first : as some tags also contain (multiple) :
+                String[] cells = line.split("\\t", 3);
+                if (cells.length < 3) {
+                    cells = Arrays.copyOf(cells, 3);
+                    for (int i = 0; i < 3; i++) {
+                        if (cells[i] == null) {
+                            cells[i] = "";
+                        }
                     }
                 }
-                /*for (String line : lines) {
-                    //String[] cells = lines[i].split(":", 2); // Only split on first : as some tags also contain (multiple) :
-                    String[] cells = line.split("\\t", 3);
-                    model.addRow(new Object[]{cells[0], cells[1], cells[2]});
-                } */
+                rowConsumer.accept(cells);
             }
-        }
-
+        };
     }
 
     /*
@@ -0,0 +1,236 @@
+package org.hvdw.jexiftoolgui.controllers;
+
+import org.hvdw.jexiftoolgui.Utils;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Runs exiftool commands on big selections of files via "-@ argfile"s instead of putting every file on the command line.
+ * Most actions append all selected files to the exiftool parameters. With thousands of files that runs into the
+ * command line length limits of the OS (about 32K characters on Windows) and makes process startup slow.
+ * - The file arguments at the end of the command are written in chunks to temporary argfiles
+ * - Write commands that can't interfere with each other run their chunks in parallel, the others one after the other
+ * - Commands producing one document (-csv, -json, -X, -php) get all files in one argfile, otherwise the document would be split
+ * - The output of the chunks is passed on in chunk order, the "N image files updated" summary lines are added up,
+ *   and the "[n/total]" progress lines (-progress) are renumbered for the complete selection
+ */
+public class CommandBatcher {
+    private final static ch.qos.logback.classic.Logger logger = (ch.qos.logback.classic.Logger) LoggerFactory.getLogger(CommandBatcher.class);
+
+    static final int CHUNK_SIZE = 500;
+    // Well below the 32767 characters of Windows, where the exiftool path and options are added too
+    private static final int MAX_COMMAND_LENGTH = 24000;
+
+    // Options that take the next parameter as value: that value is never one of the files to process.
+    // The short options are case sensitive (-x excludes a tag, -X is the xml output), the long ones are not
+    private static final Set<String> OPTIONS_WITH_VALUE = new HashSet<>(Arrays.asList(
+            "-@", "-o", "-w", "-W", "-w!", "-w+", "-W!", "-W+", "-p", "-d", "-i", "-x", "-c",
+            "-out", "-tagsfromfile", "-srcfile", "-ext", "-ext+", "-if", "-fileorder", "-geotag", "-userparam", "-api",
+            "-charset", "-lang", "-sep", "-common_args", "-config"));
+    // Summary lines like "    3 image files updated" or "    1 directories scanned"
+    private static final Pattern SUMMARY_LINE = Pattern.compile("^\\s+(\\d+) (.*(files|directories).*)$");
+
+    private CommandBatcher() {}
+
+    /*
+     * Returns the number of trailing file arguments when the command should be batched, otherwise 0
+     */
+    static int batchedFileCount(List<String> cmdparams) {
+        if (!ExifToolPool.isExiftoolCommand(cmdparams)) {
+            return 0;
+        }
+        for (String param : cmdparams) {
+            String lower = param.toLowerCase();
+            if ("-execute".equals(lower) || "-common_args".equals(lower) || "-stay_open".equals(lower)) {
+                return 0;
+            }
+        }
+        int files = trailingFileCount(cmdparams);
+        if (files <= 1) {
+            return 0;
+        }
+        int length = 0;
+        for (String param : cmdparams) {
+            length += param.length() + 3;
+        }
+        return ((files > CHUNK_SIZE) || (length > MAX_COMMAND_LENGTH)) ? files : 0;
+    }
+
+    /*
+     * The files and folders are always the last parameters of our commands
+     */
+    static int trailingFileCount(List<String> cmdparams) {
+        int count = 0;
+        for (int i = cmdparams.size() - 1; i > 0; i--) {
+            String param = cmdparams.get(i);
+            if (param.startsWith("-") || takesValue(cmdparams.get(i - 1)) || !new java.io.File(param).exists()) {
+                break;
+            }
+            count++;
+        }
+        return count;
+    }
+
+    private static boolean takesValue(String option) {
+        return OPTIONS_WITH_VALUE.contains(option) || ((option.length() > 3) && OPTIONS_WITH_VALUE.contains(option.toLowerCase()));
+    }
+
+    /*
+     * Commands whose output is one document can't be split over several exiftool runs
+     */
+    static boolean isSingleDocument(List<String> options) {
+        for (String option : options) {
+            String lower = option.toLowerCase();
+            if (lower.startsWith("-csv") || "-j".equals(lower) || lower.startsWith("-j=") || lower.startsWith("-json")
+                    || "-X".equals(option) || "-xmlformat".equals(lower) || "-php".equals(lower)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    static boolean mayRunInParallel(List<String> options) {
+        for (String option : options) {
+            String lower = option.toLowerCase();
+            // Renaming/moving files: parallel chunks could pick the same new name
+            if (lower.contains("filename") || lower.contains("directory") || lower.contains("testname") || "-o".equals(lower) || "-out".equals(lower)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /*
+     * Runs the command with its trailing fileCount files in argfile chunks and passes the merged output to the consumer
+     */
+    static void run(List<String> cmdparams, int fileCount, CommandRunner.LineConsumer consumer) throws IOException, InterruptedException {
+        List<String> options = new ArrayList<>(cmdparams.subList(0, cmdparams.size() - fileCount));
+        List<String> files = cmdparams.subList(cmdparams.size() - fileCount, cmdparams.size());
+        if (Utils.isOsFromMicrosoft()) {
+            // The argfiles are written in UTF-8. A "-config file" pair has to stay the first argument
+            int first = ExifToolPool.firstOptionIndex(options);
+            options.add(first, "-charset");
+            options.add(first + 1, "filename=utf8");
+        }
+        boolean singleDocument = isSingleDocument(options);
+        int chunkSize = singleDocument ? fileCount : CHUNK_SIZE;
+        List<List<String>> chunks = new ArrayList<>();
+        for (int start = 0; start < fileCount; start += chunkSize) {
+            chunks.add(files.subList(start, Math.min(start + chunkSize, fileCount)));
+        }
+        boolean parallel = (chunks.size() > 1) && mayRunInParallel(options);
+        logger.info("running command on {} files in {} argfile chunk(s), {}", fileCount, chunks.size(), parallel ? "parallel" : "sequential");
+
+        MergedOutput output = new MergedOutput(consumer, fileCount);
+        if (!parallel) {
+            for (List<String> chunk : chunks) {
+                if (JobScheduler.isCancelled()) {
+                    logger.info("batched command cancelled");
+                    break;
+                }
+                runChunk(options, chunk, output, output::acceptLine);
+            }
+        } else {
+            ExecutorService workers = JobScheduler.newTaskGroup();
+            try {
+                List<Future<List<String>>> results = new ArrayList<>();
+                for (List<String> chunk : chunks) {
+                    results.add(workers.submit(() -> {
+                        List<String> lines = new ArrayList<>();
+                        runChunk(options, chunk, output, lines::add);
+                        return lines;
+                    }));
+                }
+                // Pass on the output in chunk order, as soon as a chunk and all chunks before it are done.
+                // A cancelled job is interrupted here, after which the chunks that did not start yet are dropped
+                for (Future<List<String>> result : results) {
+                    for (String line : result.get()) {
+                        output.acceptLine(line);
+                    }
+                }
+            } catch (ExecutionException e) {
+                throw (e.getCause() instanceof IOException) ? (IOException) e.getCause() : new IOException(e.getCause());
+            } finally {
+                workers.shutdownNow();
+            }
+        }
+        output.flushSummary();
+    }
+
+    private static void runChunk(List<String> options, List<String> chunk, MergedOutput output, CommandRunner.LineConsumer lines) throws IOException, InterruptedException {
+        Path argfile = Files.createTempFile("jexiftoolgui-files", ".args");
+        try {
+            try (BufferedWriter writer = Files.newBufferedWriter(argfile, StandardCharsets.UTF_8)) {
+                for (String file : chunk) {
+                    writer.write(file);
+                    writer.newLine();
+                }
+            }
+            List<String> chunkParams = new ArrayList<>(options);
+            chunkParams.add("-@");
+            chunkParams.add(argfile.toString());
+            CommandRunner.runCommand(chunkParams, line -> {
+                // Progress lines go on directly, so the progress stays live in parallel mode
+                if (!output.acceptProgressLine(line)) {
+                    lines.accept(line);
+                }
+            });
+        } finally {
+            Files.deleteIfExists(argfile);
+        }
+    }
+
+    /*
+     * Merges the output of the chunks: renumbers the progress lines and adds up the summary lines
+     */
+    private static class MergedOutput {
+        private final CommandRunner.LineConsumer consumer;
+        private final int total;
+        private final AtomicInteger processed = new AtomicInteger(0);
+        private final LinkedHashMap<String, Integer> summary = new LinkedHashMap<>();
+
+        MergedOutput(CommandRunner.LineConsumer consumer, int total) {
+            this.consumer = consumer;
+            this.total = total;
+        }
+
+        boolean acceptProgressLine(String line) throws IOException {
+            Matcher progress = CommandProgress.EXIFTOOL_PROGRESS.matcher(line.trim());
+            if (!progress.matches()) {
+                return false;
+            }
+            String renumbered = line.trim().substring(0, progress.start(1) - 1) + "[" + processed.incrementAndGet() + "/" + total + "]";
+            synchronized (this) {
+                consumer.accept(renumbered);
+            }
+            return true;
+        }
+
+        synchronized void acceptLine(String line) throws IOException {
+            Matcher summaryLine = SUMMARY_LINE.matcher(line);
+            if (summaryLine.matches()) {
+                summary.merge(summaryLine.group(2), Integer.parseInt(summaryLine.group(1)), Integer::sum);
+            } else {
+                consumer.accept(line);
+            }
+        }
+
+        synchronized void flushSummary() throws IOException {
+            for (Map.Entry<String, Integer> entry : summary.entrySet()) {
+                consumer.accept(String.format("%5d %s", entry.getValue(), entry.getKey()));
+            }
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package org.hvdw.jexiftoolgui.controllers;
 
 import org.hvdw.jexiftoolgui.MyVariables;
+import org.hvdw.jexiftoolgui.facades.IPreferencesFacade;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -10,7 +11,10 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.List;
 
+import static org.hvdw.jexiftoolgui.facades.IPreferencesFacade.PreferenceKey.LOAD_SUBFOLDERS;
+
 public class CommandLineArguments {
+    private static IPreferencesFacade prefs = IPreferencesFacade.defaultInstance;
     private final static Logger logger = (Logger) LoggerFactory.getLogger(CommandLineArguments.class);
 
 
@@ -32,13 +36,11 @@ public class CommandLineArguments {
                         logger.debug("adding file {}", file.toString());
                     } else if (file.isDirectory()) {
                         logger.debug("arg {} detected as directory", file.toString());
-                        File[] listOfFiles = file.listFiles();
-                        for (File filecontent : listOfFiles) {
-                            if (filecontent.isFile()) {
-                                logger.debug("parsing folder, adding file {} ", filecontent.toString());
-                                filesList.add(filecontent);
-                            }
-                            // We are currently not going to recursively parse subfolders. We might end up with tens of thousands of files
+                        // Only supported files; subfolders as well when the user chose that when loading a folder
+                        boolean recursive = prefs.getByKey(LOAD_SUBFOLDERS, false);
+                        for (File filecontent : FolderLoader.findFiles(file, recursive, null)) {
+                            logger.debug("parsing folder, adding file {} ", filecontent.toString());
+                            filesList.add(filecontent);
                         }
                     }
                 }
@@ -0,0 +1,110 @@
+package org.hvdw.jexiftoolgui.controllers;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Progress of one running exiftool command, filled from the "-progress" output of exiftool.
+ * With -progress exiftool writes a line "======== filename [n/total]" for every file it processes.
+ * Besides the number of files done it keeps the number of errors and calculates the throughput and the expected remaining time.
+ * Callers of CommandRunner can follow the progress with a CommandProgress.Listener.
+ */
+public class CommandProgress {
+
+    static final Pattern EXIFTOOL_PROGRESS = Pattern.compile("^======== .* \\[(\\d+)/(\\d+)\\]$");
+
+    /*
+     * Called from the thread reading the exiftool output, so not on the EDT
+     */
+    public interface Listener {
+        void progressChanged(CommandProgress progress);
+    }
+
+    private final long startNanos;
+    private volatile int processed = 0;
+    private volatile int total = 0;
+    private volatile int errors = 0;
+    private volatile boolean finished = false;
+
+    public CommandProgress() {
+        this.startNanos = System.nanoTime();
+    }
+
+    /*
+     * Updates the progress from one exiftool output line.
+     * Returns true if this was a progress line, which is not part of the "real" output of the command.
+     */
+    public boolean parseLine(String line) {
+        String trimmed = line.trim();
+        Matcher progress = EXIFTOOL_PROGRESS.matcher(trimmed);
+        if (progress.matches()) {
+            processed = Integer.parseInt(progress.group(1));
+            total = Integer.parseInt(progress.group(2));
+            return true;
+        }
+        if (trimmed.startsWith("Error")) {
+            errors++;
+        }
+        return false;
+    }
+
+    void setFinished() {
+        finished = true;
+    }
+
+    public int getProcessed() {
+        return processed;
+    }
+
+    public int getTotal() {
+        return total;
+    }
+
+    public int getErrors() {
+        return errors;
+    }
+
+    public boolean isFinished() {
+        return finished;
+    }
+
+    /*
+     * False as long as exiftool did not tell us how many files it will process
+     */
+    public boolean isDeterminate() {
+        return total > 0;
+    }
+
+    public double getFilesPerSecond() {
+        double seconds = (System.nanoTime() - startNanos) / 1e9;
+        return (seconds > 0) ? processed / seconds : 0;
+    }
+
+    /*
+     * Expected remaining seconds, -1 when unknown
+     */
+    public long getEtaSeconds() {
+        double filesPerSecond = getFilesPerSecond();
+        if (!isDeterminate() || (filesPerSecond <= 0)) {
+            return -1;
+        }
+        return Math.round((total - processed) / filesPerSecond);
+    }
+
+    /*
+     * Short text for a progress bar like "120 / 2000 - 35.2 files/s - ETA 0:53 - 1 error(s)"
+     */
+    public String toProgressString(String filesPerSecondText, String etaText, String errorsText) {
+        StringBuilder text = new StringBuilder();
+        text.append(processed).append(" / ").append(total);
+        text.append(" - ").append(String.format("%.1f", getFilesPerSecond())).append(" ").append(filesPerSecondText);
+        long eta = getEtaSeconds();
+        if (eta >= 0) {
+            text.append(" - ").append(etaText).append(" ").append(String.format("%d:%02d", eta / 60, eta % 60));
+        }
+        if (errors > 0) {
+            text.append(" - ").append(errors).append(" ").append(errorsText);
+        }
+        return text.toString();
+    }
+}
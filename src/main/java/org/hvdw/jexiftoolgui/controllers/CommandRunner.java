@@ -6,33 +6,41 @@ import org.slf4j.LoggerFactory;
 import javax.swing.*;
 import java.awt.*;
 import java.io.*;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.Executor;
+import java.util.ResourceBundle;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 public class CommandRunner {
     public final static ch.qos.logback.classic.Logger logger = (ch.qos.logback.classic.Logger) LoggerFactory.getLogger(CommandRunner.class);
 
+    // Listeners that follow the progress of every command run with progress (see addProgressListener)
+    private static final List<CommandProgress.Listener> progressListeners = new CopyOnWriteArrayList<>();
+
+    /*
+     * Receives the output lines of a command one by one, while the command is still running.
+     * The command waits (pipe buffer full) as long as the consumer is busy, so a slow consumer never
+     * causes the output to pile up in memory.
+     */
+    public interface LineConsumer {
+        void accept(String line) throws IOException;
+    }
+
     /*
      * All exiftool commands go through this method
+     * The complete output is returned as one String. For big outputs use the LineConsumer variant below
      */
     public static String runCommand(List<String> cmdparams) throws InterruptedException, IOException {
 
         StringBuilder res = new StringBuilder();
-        logger.debug("commandrunner {}", cmdparams.toString());
-
-        ProcessBuilder builder = new ProcessBuilder(cmdparams);
-        logger.trace("Did ProcessBuilder builder = new ProcessBuilder(cmdparams);");
         try {
-            builder.redirectErrorStream(true);
-            Process process = builder.start();
-            //Use a buffered reader to prevent hangs on Windows
-            BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream(), "UTF-8"));
-            String line;
-            while ((line = reader.readLine()) != null) {
+            runCommand(cmdparams, line -> {
                 res.append(line).append(System.lineSeparator());
                 logger.trace("tasklist: " + line);
-            }
-            process.waitFor();
+            });
+        } catch (InterruptedIOException e) {
+            // A cancelled job, not an error of the command
+            throw new InterruptedException(e.getMessage());
         } catch (IOException e) {
             logger.error("IOException error", e);
             res.append("IOException error")
@@ -42,6 +50,147 @@ public class CommandRunner {
         return res.toString();
     }
 
+    /*
+     * Streaming variant of runCommand: every output line is handed to the consumer as soon as it is read.
+     * Commands on many files are split into argfile chunks by the CommandBatcher.
+     * exiftool commands are sent to a warm "-stay_open" exiftool process if possible (see ExifToolPool),
+     * all other commands (or when that fails to start) are run as a separate process
+     */
+    public static void runCommand(List<String> cmdparams, LineConsumer consumer) throws InterruptedException, IOException {
+
+        // Cached image info of files this command writes to is no longer valid
+        ImageInfoCache.invalidateFor(cmdparams);
+
+        // Big selections of files go via argfiles, in chunks
+        int batchedFiles = CommandBatcher.batchedFileCount(cmdparams);
+        if (batchedFiles > 0) {
+            CommandBatcher.run(cmdparams, batchedFiles, consumer);
+            return;
+        }
+
+        logger.debug("commandrunner {}", cmdparams.toString());
+
+        if (ExifToolPool.canHandle(cmdparams)) {
+            if (ExifToolPool.execute(cmdparams, consumer)) {
+                return;
+            }
+        }
+
+        ProcessBuilder builder = new ProcessBuilder(cmdparams);
+        logger.trace("Did ProcessBuilder builder = new ProcessBuilder(cmdparams);");
+        builder.redirectErrorStream(true);
+        Process process = builder.start();
+        // A cancelled job destroys the process, which ends the read below
+        ProcessCanceller.watch(process);
+        //Use a buffered reader to prevent hangs on Windows
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream(), "UTF-8"))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                consumer.accept(line);
+            }
+        } catch (IOException e) {
+            process.destroy();
+            if (Thread.currentThread().isInterrupted()) {
+                throw new InterruptedIOException("command cancelled");
+            }
+            throw e;
+        } finally {
+            ProcessCanceller.unwatch();
+        }
+        process.waitFor();
+    }
+
+    /*
+     * Subscribe to the progress of all commands that are run with progress, e.g. for a status bar
+     */
+    public static void addProgressListener(CommandProgress.Listener listener) {
+        progressListeners.add(listener);
+    }
+
+    public static void removeProgressListener(CommandProgress.Listener listener) {
+        progressListeners.remove(listener);
+    }
+
+    /*
+     * Runs the command like runCommand(cmdparams, consumer), but adds "-progress" to exiftool commands
+     * and parses the progress lines into a CommandProgress. The progress lines are not passed to the consumer.
+     * The listener (may be null) and the subscribed progress listeners are notified on every change and once more when the command has finished.
+     */
+    public static CommandProgress runCommand(List<String> cmdparams, LineConsumer consumer, CommandProgress.Listener listener) throws InterruptedException, IOException {
+        CommandProgress progress = new CommandProgress();
+        try {
+            runCommand(withProgressOption(cmdparams), line -> {
+                boolean progressLine = progress.parseLine(line);
+                if (progressLine) {
+                    notifyProgress(progress, listener);
+                } else {
+                    consumer.accept(line);
+                }
+            });
+        } finally {
+            progress.setFinished();
+            notifyProgress(progress, listener);
+            logger.debug("command processed {} of {} files ({} errors) at {} files/s", progress.getProcessed(), progress.getTotal(), progress.getErrors(), String.format("%.1f", progress.getFilesPerSecond()));
+        }
+        return progress;
+    }
+
+    /*
+     * Adds -progress directly after the exiftool executable (and after a "-config file" pair). Commands that are not a direct exiftool call
+     * (like a shell command line) are returned as they are and simply stay without determinate progress.
+     */
+    static List<String> withProgressOption(List<String> cmdparams) {
+        if (!ExifToolPool.isExiftoolCommand(cmdparams)) {
+            return cmdparams;
+        }
+        for (String param : cmdparams) {
+            if (param.toLowerCase().startsWith("-progress")) {
+                return cmdparams;
+            }
+        }
+        List<String> progressParams = new ArrayList<>(cmdparams);
+        progressParams.add(ExifToolPool.firstOptionIndex(cmdparams), "-progress");
+        return progressParams;
+    }
+
+    private static void notifyProgress(CommandProgress progress, CommandProgress.Listener listener) {
+        if (listener != null) {
+            listener.progressChanged(progress);
+        }
+        for (CommandProgress.Listener progressListener : progressListeners) {
+            progressListener.progressChanged(progress);
+        }
+    }
+
+    /*
+     * Listener that shows the progress in the (shared) progress bar of the main screen. When the command
+     * has finished the bar is set back to the default indeterminate mode.
+     */
+    public static CommandProgress.Listener progressBarListener(JProgressBar progressBar) {
+        String filesPerSecond = ResourceBundle.getBundle("translations/program_strings").getString("progress.filespersec");
+        String eta = ResourceBundle.getBundle("translations/program_strings").getString("progress.eta");
+        String errors = ResourceBundle.getBundle("translations/program_strings").getString("progress.errors");
+        return progress -> {
+            boolean finished = progress.isFinished();
+            boolean determinate = progress.isDeterminate();
+            int processed = progress.getProcessed();
+            int total = progress.getTotal();
+            String text = progress.toProgressString(filesPerSecond, eta, errors);
+            SwingUtilities.invokeLater(() -> {
+                if (finished || !determinate) {
+                    progressBar.setIndeterminate(true);
+                    progressBar.setStringPainted(false);
+                } else {
+                    progressBar.setIndeterminate(false);
+                    progressBar.setStringPainted(true);
+                    progressBar.setMaximum(total);
+                    progressBar.setValue(processed);
+                    progressBar.setString(text);
+                }
+            });
+        };
+    }
+
     /*
      * This shows the output of exiftool after it has run
      */
@@ -54,18 +203,36 @@ public class CommandRunner {
         JOptionPane.showMessageDialog(null, scrollPane, "Output from the given command", JOptionPane.INFORMATION_MESSAGE);
     }
 
+    /*
+     * Like runCommand(cmdparams), with the progress shown in the progress bar
+     */
+    private static String runCommandWithProgress(List<String> cmdparams, JProgressBar progressBar) throws InterruptedException, IOException {
+        StringBuilder res = new StringBuilder();
+        try {
+            CommandProgress progress = runCommand(cmdparams, line -> res.append(line).append(System.lineSeparator()), progressBarListener(progressBar));
+            if (progress.getTotal() > 0) {
+                logger.info("{} of {} files processed, {} errors", progress.getProcessed(), progress.getTotal(), progress.getErrors());
+            }
+        } catch (IOException e) {
+            logger.error("IOException error", e);
+            res.append("IOException error")
+                    .append(System.lineSeparator())
+                    .append(e.getMessage());
+        }
+        return res.toString();
+    }
+
     /*
      * This executes the commands via runCommand and shows/hides the progress bar
      * This one is special for the output windows and has 2 parameters
      */
     public static void runCommandWithProgressBar(List<String> cmdparams, JProgressBar progressBar) {
-        // Create executor thread to be able to update my gui when longer methods run
-        Executor executor = java.util.concurrent.Executors.newSingleThreadExecutor();
-        executor.execute(new Runnable() {
+        // Run as background job to be able to update my gui when longer methods run
+        JobScheduler.submit(ResourceBundle.getBundle("translations/program_strings").getString("jobs.command"), JobScheduler.Priority.NORMAL, new Runnable() {
             @Override
             public void run() {
                 try {
-                    String res = runCommand(cmdparams);
+                    String res = runCommandWithProgress(cmdparams, progressBar);
                     logger.debug("res is\n{}", res);
                     progressBar.setVisible(false);
                     outputAfterCommand(res);
@@ -87,13 +254,12 @@ public class CommandRunner {
      * This one has a 3rd parameter to enable/disable output. It should replace the above one (when I find the time)
      */
     public static void runCommandWithProgressBar(List<String> cmdparams, JProgressBar progressBar, String output) {
-        // Create executor thread to be able to update my gui when longer methods run
-        Executor executor = java.util.concurrent.Executors.newSingleThreadExecutor();
-        executor.execute(new Runnable() {
+        // Run as background job to be able to update my gui when longer methods run
+        JobScheduler.submit(ResourceBundle.getBundle("translations/program_strings").getString("jobs.command"), JobScheduler.Priority.NORMAL, new Runnable() {
             @Override
             public void run() {
                 try {
-                    String res = runCommand(cmdparams);
+                    String res = runCommandWithProgress(cmdparams, progressBar);
                     logger.debug("res is\n{}", res);
                     progressBar.setVisible(false);
                     if ("delayed".equals(output.toLowerCase())) {
@@ -0,0 +1,183 @@
+package org.hvdw.jexiftoolgui.controllers;
+
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reads the embedded exif thumbnail (IFD1 JPEGInterchangeFormat) and the orientation directly
+ * from jpg and tif files, without exiftool and without writing temp files.
+ * Only the few bytes of the headers and the thumbnail itself are read from the file.
+ */
+public class ExifThumbnailReader {
+    private final static ch.qos.logback.classic.Logger logger = (ch.qos.logback.classic.Logger) LoggerFactory.getLogger(ExifThumbnailReader.class);
+
+    private static final int TAG_ORIENTATION = 0x0112;
+    private static final int TAG_THUMBNAIL_OFFSET = 0x0201;
+    private static final int TAG_THUMBNAIL_LENGTH = 0x0202;
+    // An exif thumbnail must fit in the 64 KB APP1 segment of a jpg. Allow more for tif files
+    private static final int MAX_THUMBNAIL_LENGTH = 1024 * 1024;
+    private static final int MAX_IFD_ENTRIES = 1000;
+
+    private ExifThumbnailReader() {}
+
+    /**
+     * The thumbnail (jpg bytes) and orientation (1-8, or 0 if not found) of an image
+     */
+    public static class EmbeddedThumbnail {
+        public final byte[] data;
+        public final int orientation;
+
+        EmbeddedThumbnail(byte[] data, int orientation) {
+            this.data = data;
+            this.orientation = orientation;
+        }
+    }
+
+    /**
+     * @param file - a jpg or tif file
+     * @return the embedded thumbnail, or null if the file has none (or it is not a jpg/tif)
+     */
+    public static EmbeddedThumbnail readThumbnail(File file) {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer start = read(channel, 0, 4);
+            if (start == null) {
+                return null;
+            }
+            if (((start.get(0) & 0xFF) == 0xFF) && ((start.get(1) & 0xFF) == 0xD8)) {
+                long tiffStart = findExifSegment(channel);
+                return (tiffStart < 0) ? null : readTiffThumbnail(channel, tiffStart);
+            } else if (((start.get(0) == 'I') && (start.get(1) == 'I')) || ((start.get(0) == 'M') && (start.get(1) == 'M'))) {
+                return readTiffThumbnail(channel, 0);
+            }
+        } catch (IOException | RuntimeException e) {
+            // A corrupt header should never stop the loading of images. We simply fall back to exiftool
+            logger.debug("Can not read embedded thumbnail from {}: {}", file.getName(), e.toString());
+        }
+        return null;
+    }
+
+    /*
+     * Walks the jpg markers until the APP1 "Exif" segment and returns the position of its tiff header
+     */
+    private static long findExifSegment(FileChannel channel) throws IOException {
+        long pos = 2;
+        long size = channel.size();
+        while (pos + 4 <= size) {
+            ByteBuffer marker = read(channel, pos, 4);
+            if ((marker == null) || ((marker.get(0) & 0xFF) != 0xFF)) {
+                return -1;
+            }
+            int type = marker.get(1) & 0xFF;
+            if (type == 0xFF) { // fill byte
+                pos++;
+                continue;
+            }
+            if ((type == 0xDA) || (type == 0xD9)) { // start of scan or end of image: no more metadata
+                return -1;
+            }
+            int length = marker.getShort(2) & 0xFFFF;
+            if (type == 0xE1) {
+                ByteBuffer header = read(channel, pos + 4, 6);
+                if ((header != null) && "Exif".equals(new String(header.array(), 0, 4, StandardCharsets.US_ASCII))) {
+                    return pos + 10;
+                }
+            }
+            pos += 2 + length;
+        }
+        return -1;
+    }
+
+    private static EmbeddedThumbnail readTiffThumbnail(FileChannel channel, long tiffStart) throws IOException {
+        ByteBuffer header = read(channel, tiffStart, 8);
+        if (header == null) {
+            return null;
+        }
+        ByteOrder order = (header.get(0) == 'I') ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN;
+        header.order(order);
+        if (header.getShort(2) != 42) {
+            return null;
+        }
+        long ifd0 = header.getInt(4) & 0xFFFFFFFFL;
+
+        int orientation = 0;
+        long thumbOffset = -1;
+        long thumbLength = -1;
+
+        // IFD0: orientation and the offset of IFD1
+        ByteBuffer entries = readIfd(channel, tiffStart, ifd0, order);
+        if (entries == null) {
+            return null;
+        }
+        int count = entries.getShort(0) & 0xFFFF;
+        for (int i = 0; i < count; i++) {
+            int entry = 2 + i * 12;
+            if ((entries.getShort(entry) & 0xFFFF) == TAG_ORIENTATION) {
+                orientation = entries.getShort(entry + 8) & 0xFFFF;
+            }
+        }
+        long ifd1 = entries.getInt(2 + count * 12) & 0xFFFFFFFFL;
+        if (ifd1 == 0) {
+            return null;
+        }
+
+        // IFD1: the thumbnail
+        entries = readIfd(channel, tiffStart, ifd1, order);
+        if (entries == null) {
+            return null;
+        }
+        count = entries.getShort(0) & 0xFFFF;
+        for (int i = 0; i < count; i++) {
+            int entry = 2 + i * 12;
+            int tag = entries.getShort(entry) & 0xFFFF;
+            if (tag == TAG_THUMBNAIL_OFFSET) {
+                thumbOffset = entries.getInt(entry + 8) & 0xFFFFFFFFL;
+            } else if (tag == TAG_THUMBNAIL_LENGTH) {
+                thumbLength = entries.getInt(entry + 8) & 0xFFFFFFFFL;
+            }
+        }
+        if ((thumbOffset <= 0) || (thumbLength <= 0) || (thumbLength > MAX_THUMBNAIL_LENGTH)) {
+            return null;
+        }
+        ByteBuffer thumbnail = read(channel, tiffStart + thumbOffset, (int) thumbLength);
+        if ((thumbnail == null) || ((thumbnail.get(0) & 0xFF) != 0xFF) || ((thumbnail.get(1) & 0xFF) != 0xD8)) {
+            return null;
+        }
+        return new EmbeddedThumbnail(thumbnail.array(), orientation);
+    }
+
+    // Returns the entry count, the entries and the next IFD offset of the IFD at this offset
+    private static ByteBuffer readIfd(FileChannel channel, long tiffStart, long ifdOffset, ByteOrder order) throws IOException {
+        ByteBuffer countBuffer = read(channel, tiffStart + ifdOffset, 2);
+        if (countBuffer == null) {
+            return null;
+        }
+        int count = countBuffer.order(order).getShort(0) & 0xFFFF;
+        if (count > MAX_IFD_ENTRIES) {
+            return null;
+        }
+        ByteBuffer ifd = read(channel, tiffStart + ifdOffset, 2 + count * 12 + 4);
+        return (ifd == null) ? null : ifd.order(order);
+    }
+
+    // Reads exactly length bytes at position, or returns null if the file is too short
+    private static ByteBuffer read(FileChannel channel, long position, int length) throws IOException {
+        if ((position < 0) || (position + length > channel.size())) {
+            return null;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                return null;
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+}
@@ -11,8 +11,7 @@ import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.Executor;
-import java.util.concurrent.Executors;
+import java.util.ResourceBundle;
 
 public class ExifToolCommands {
 
@@ -101,10 +100,9 @@ public class ExifToolCommands {
 
         logger.debug("cmdparams {}", cmdparams.toString());
 
-        Executor executor = Executors.newSingleThreadExecutor();
         boolean finalHtmlOutput = htmlOutput;
         boolean finalHtmlDump = htmlDump;
-        executor.execute(() -> {
+        JobScheduler.submit(ResourceBundle.getBundle("translations/program_strings").getString("jobs.yourcommand"), JobScheduler.Priority.NORMAL, () -> {
             try {
                 String res = CommandRunner.runCommand(cmdparams);
                 if (finalHtmlOutput) {
@@ -0,0 +1,269 @@
+package org.hvdw.jexiftoolgui.controllers;
+
+import org.hvdw.jexiftoolgui.Utils;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+
+/**
+ * Keeps a small number of exiftool processes running in "-stay_open True -@ -" mode.
+ * Starting exiftool (perl) costs 150~400 ms per call. A warm process only needs the arguments
+ * to be written to its stdin followed by "-execute{N}" and answers with "{readyN}" when done.
+ * CommandRunner.runCommand routes all exiftool calls through this pool and falls back to
+ * the one-shot ProcessBuilder mode when a command can't be sent to a stay_open process.
+ */
+public class ExifToolPool {
+    private final static ch.qos.logback.classic.Logger logger = (ch.qos.logback.classic.Logger) LoggerFactory.getLogger(ExifToolPool.class);
+
+    // Never keep more warm processes than this. Every process is a full perl interpreter (~20-30 MB)
+    private static final int MAX_SESSIONS = Math.max(1, Math.min(Runtime.getRuntime().availableProcessors(), 8));
+
+    private static final LinkedBlockingDeque<Session> idleSessions = new LinkedBlockingDeque<>();
+    private static final AtomicInteger sessionCount = new AtomicInteger(0);
+    // The exiftool that could not be started in stay_open mode. Another exiftool in the preferences gets a new try
+    private static volatile String disabledExiftool = null;
+    // An option with another option in the same parameter, like "-FileName<... -d %Y%m%d", is a piece of command line
+    private static final Pattern EMBEDDED_OPTION = Pattern.compile("^-.*\\s-\\w.*");
+
+    private ExifToolPool() {}
+
+    /*
+     * Check whether this command can be executed by a stay_open exiftool process.
+     * The first parameter must be our configured exiftool and no argument may contain a line break
+     * (the -@ argfile protocol uses one argument per line).
+     * exiftool only reads "-config file" as the very first argument of its command line, so inside the argfile of a
+     * running process it is ignored: commands with a custom config file always run one-shot.
+     */
+    static boolean canHandle(List<String> cmdparams) {
+        if (!isExiftoolCommand(cmdparams) || cmdparams.get(0).trim().equals(disabledExiftool)) {
+            return false;
+        }
+        for (String param : cmdparams) {
+            if ("-config".equalsIgnoreCase(param.trim())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /*
+     * A direct call of our configured exiftool (not a shell command line), that can be passed as argument list.
+     * Some callers build (parts of) a Windows command line: quoted parameters, several options in one parameter or
+     * \( \) escaped paths. Windows splits and unquotes those, an argfile (one literal argument per line) does not,
+     * so these commands keep running as they are.
+     */
+    static boolean isExiftoolCommand(List<String> cmdparams) {
+        if (cmdparams == null || cmdparams.size() < 2) {
+            return false;
+        }
+        String exiftool = Utils.platformExiftool().trim();
+        if ("".equals(exiftool) || !exiftool.equals(cmdparams.get(0).trim())) {
+            return false;
+        }
+        for (String param : cmdparams.subList(1, cmdparams.size())) {
+            if (param.contains("\n") || param.contains("\r") || "-stay_open".equalsIgnoreCase(param)) {
+                return false;
+            }
+            if (isCommandLinePart(param)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    static boolean isCommandLinePart(String param) {
+        return param.contains("\"") || param.contains("\\(") || param.contains("\\)") || EMBEDDED_OPTION.matcher(param).matches();
+    }
+
+    /*
+     * The index of the first option after the exiftool executable and a leading "-config file" pair,
+     * which must stay in front (exiftool only reads -config as first argument)
+     */
+    static int firstOptionIndex(List<String> cmdparams) {
+        if ((cmdparams.size() > 2) && "-config".equalsIgnoreCase(cmdparams.get(1).trim())) {
+            return 3;
+        }
+        return 1;
+    }
+
+    /*
+     * Runs the exiftool arguments (without the exiftool executable itself) on a warm process
+     * and hands every output line to the consumer. Returns false if no process could be started,
+     * in which case the caller should use the one-shot mode.
+     */
+    static boolean execute(List<String> cmdparams, CommandRunner.LineConsumer consumer) throws IOException {
+        String exiftool = cmdparams.get(0).trim();
+        Session session = borrowSession(exiftool);
+        if (session == null) {
+            return false;
+        }
+        boolean healthy = false;
+        try {
+            session.execute(cmdparams.subList(1, cmdparams.size()), consumer);
+            healthy = true;
+        } finally {
+            if (healthy) {
+                idleSessions.offerFirst(session);
+            } else {
+                session.destroy();
+            }
+        }
+        return true;
+    }
+
+    private static Session borrowSession(String exiftool) {
+        Session session;
+        while ((session = idleSessions.pollFirst()) != null) {
+            if (session.isUsable(exiftool)) {
+                return session;
+            }
+            // exiftool path changed in the preferences or process died
+            session.destroy();
+        }
+        if (sessionCount.incrementAndGet() > MAX_SESSIONS) {
+            sessionCount.decrementAndGet();
+            try {
+                // All processes are busy. Wait for one to come back instead of spawning yet another perl
+                session = idleSessions.takeFirst();
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                return null;
+            }
+            if (session.isUsable(exiftool)) {
+                return session;
+            }
+            session.destroy();
+            sessionCount.incrementAndGet();
+        }
+        try {
+            return new Session(exiftool);
+        } catch (IOException ioe) {
+            sessionCount.decrementAndGet();
+            logger.error("Can not start exiftool in stay_open mode. Falling back to one-shot mode", ioe);
+            disabledExiftool = exiftool;
+            return null;
+        }
+    }
+
+    /*
+     * Stops all warm exiftool processes. Called when the application exits.
+     */
+    public static void shutdown() {
+        Session session;
+        while ((session = idleSessions.pollFirst()) != null) {
+            session.close();
+        }
+    }
+
+    private static class Session {
+        private final String exiftool;
+        private final Process process;
+        private final BufferedWriter writer;
+        private final BufferedReader reader;
+        private int executeCounter = 0;
+
+        Session(String exiftool) throws IOException {
+            this.exiftool = exiftool;
+            List<String> params = new ArrayList<>();
+            params.add(exiftool);
+            params.add("-stay_open");
+            params.add("True");
+            params.add("-@");
+            params.add("-");
+            ProcessBuilder builder = new ProcessBuilder(params);
+            // Same as the one-shot mode: warnings and errors end up in the output
+            builder.redirectErrorStream(true);
+            process = builder.start();
+            writer = new BufferedWriter(new OutputStreamWriter(process.getOutputStream(), StandardCharsets.UTF_8));
+            reader = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8));
+            logger.debug("started stay_open exiftool session {}", sessionCount.get());
+        }
+
+        boolean isUsable(String exiftoolPath) {
+            return process.isAlive() && exiftool.equals(exiftoolPath);
+        }
+
+        /*
+         * When the thread is interrupted (a cancelled job) the process is destroyed and an InterruptedIOException is thrown:
+         * the caller then destroys this session, the next command gets a new process
+         */
+        void execute(List<String> args, CommandRunner.LineConsumer consumer) throws IOException {
+            if (Thread.currentThread().isInterrupted()) {
+                throw new InterruptedIOException("exiftool command cancelled");
+            }
+            ProcessCanceller.watch(process);
+            try {
+                executeAndRead(args, consumer);
+            } catch (IOException e) {
+                if (Thread.currentThread().isInterrupted()) {
+                    throw new InterruptedIOException("exiftool command cancelled");
+                }
+                throw e;
+            } finally {
+                ProcessCanceller.unwatch();
+            }
+        }
+
+        private void executeAndRead(List<String> args, CommandRunner.LineConsumer consumer) throws IOException {
+            executeCounter++;
+            String readyMarker = "{ready" + executeCounter + "}";
+            if (Utils.isOsFromMicrosoft()) {
+                // The argfile is written as UTF-8. Make sure exiftool also treats the file names that way
+                writer.write("-charset");
+                writer.newLine();
+                writer.write("filename=utf8");
+                writer.newLine();
+            }
+            for (String arg : args) {
+                writer.write(arg);
+                writer.newLine();
+            }
+            writer.write("-execute" + executeCounter);
+            writer.newLine();
+            writer.flush();
+
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.equals(readyMarker)) {
+                    return;
+                }
+                // stderr is merged: a warning can be written just before the ready marker on the same line
+                if (line.endsWith(readyMarker)) {
+                    consumer.accept(line.substring(0, line.length() - readyMarker.length()));
+                    return;
+                }
+                consumer.accept(line);
+            }
+            if (Thread.currentThread().isInterrupted()) {
+                throw new InterruptedIOException("exiftool command cancelled");
+            }
+            throw new IOException("stay_open exiftool process ended unexpectedly");
+        }
+
+        void close() {
+            try {
+                writer.write("-stay_open");
+                writer.newLine();
+                writer.write("False");
+                writer.newLine();
+                writer.flush();
+                process.waitFor();
+            } catch (IOException | InterruptedException e) {
+                logger.debug("Error stopping stay_open exiftool session {}", e.toString());
+                process.destroy();
+            }
+            sessionCount.decrementAndGet();
+        }
+
+        void destroy() {
+            process.destroy();
+            sessionCount.decrementAndGet();
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package org.hvdw.jexiftoolgui.controllers;
+
+import org.hvdw.jexiftoolgui.MyConstants;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+
+/**
+ * Finds the files to load in a folder, optionally including all its subfolders.
+ * - Only files with an extension of the supported formats; hidden files and folders (.DS_Store, ._image.jpg, .thumbnails) are skipped
+ * - xmp sidecars are skipped when the image they belong to (same name, other extension) is in the same folder
+ * - Symbolic links to folders are not followed, so a link can't make us loop; unreadable folders are skipped
+ * The files are handed over per folder, sorted on name, while the walk continues: a folder before its subfolders.
+ * The walk stops when the job it runs in is cancelled (see JobScheduler.isCancelled()).
+ */
+public class FolderLoader {
+    private final static ch.qos.logback.classic.Logger logger = (ch.qos.logback.classic.Logger) LoggerFactory.getLogger(FolderLoader.class);
+
+    private static final Set<String> EXTENSIONS = new HashSet<>();
+    static {
+        for (String[] formats : new String[][]{MyConstants.SUPPORTED_FORMATS, MyConstants.SUPPORTED_IMAGES, MyConstants.SUPPORTED_VIDEOS, MyConstants.SUPPORTED_AUDIOS}) {
+            EXTENSIONS.addAll(Arrays.asList(formats));
+        }
+    }
+
+    private FolderLoader() {}
+
+    /*
+     * All files to load in the folder, in the order they were found. The progress gets the number of files found so far
+     */
+    public static File[] findFiles(File folder, boolean recursive, IntConsumer progress) {
+        List<File> files = new ArrayList<>();
+        walk(folder, recursive, folderFiles -> {
+            files.addAll(folderFiles);
+            if (progress != null) {
+                progress.accept(files.size());
+            }
+        });
+        return files.toArray(new File[0]);
+    }
+
+    /*
+     * Walks the folder and gives the files of every folder to the consumer: first the files of a folder itself,
+     * then those of its subfolders (sorted on name), so the files come in the order the user sees in a file manager
+     */
+    public static void walk(File folder, boolean recursive, Consumer<List<File>> folderFilesConsumer) {
+        Deque<Path> folders = new ArrayDeque<>();
+        folders.push(folder.toPath());
+        while (!folders.isEmpty() && !JobScheduler.isCancelled()) {
+            Path dir = folders.pop();
+            List<Path> files = new ArrayList<>();
+            List<Path> subFolders = new ArrayList<>();
+            try (DirectoryStream<Path> entries = Files.newDirectoryStream(dir)) {
+                for (Path entry : entries) {
+                    if (JobScheduler.isCancelled()) {
+                        break;
+                    }
+                    BasicFileAttributes attrs;
+                    try {
+                        attrs = Files.readAttributes(entry, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+                    } catch (IOException e) {
+                        logger.debug("skipping {}: {}", entry, e.toString());
+                        continue;
+                    }
+                    if (attrs.isDirectory()) {
+                        if (recursive && !isHidden(entry)) {
+                            subFolders.add(entry);
+                        }
+                    } else if (isSupportedFile(entry.getFileName().toString()) && (attrs.isRegularFile() || (attrs.isSymbolicLink() && Files.isRegularFile(entry)))) {
+                        files.add(entry);
+                    }
+                }
+            } catch (IOException | DirectoryIteratorException e) {
+                if (dir.equals(folder.toPath())) {
+                    logger.error("Error reading folder {}", folder, e);
+                } else {
+                    logger.debug("skipping folder {}: {}", dir, e.toString());
+                }
+            }
+            List<File> folderFiles = withoutSidecars(files);
+            if (!folderFiles.isEmpty()) {
+                folderFilesConsumer.accept(folderFiles);
+            }
+            // Pushed in reverse, so the first subfolder is walked first
+            subFolders.sort(Comparator.comparing((Path path) -> path.getFileName().toString(), String.CASE_INSENSITIVE_ORDER).reversed());
+            for (Path subFolder : subFolders) {
+                folders.push(subFolder);
+            }
+        }
+    }
+
+    static boolean isSupportedFile(String filename) {
+        int dot = filename.lastIndexOf('.');
+        if (filename.startsWith(".") || (dot < 0)) {
+            return false;
+        }
+        return EXTENSIONS.contains(filename.substring(dot + 1).toLowerCase());
+    }
+
+    private static boolean isHidden(Path dir) {
+        Path name = dir.getFileName();
+        return (name != null) && name.toString().startsWith(".");
+    }
+
+    /*
+     * Sorts the files of a folder on name and drops the xmp files that are the sidecar of one of the other files
+     */
+    static List<File> withoutSidecars(List<Path> paths) {
+        Set<String> nonSidecarNames = new HashSet<>();
+        Set<String> nonSidecarBaseNames = new HashSet<>();
+        for (Path path : paths) {
+            String filename = path.getFileName().toString();
+            if (!filename.toLowerCase().endsWith(".xmp")) {
+                nonSidecarNames.add(filename.toLowerCase());
+                nonSidecarBaseNames.add(baseName(filename));
+            }
+        }
+        List<File> files = new ArrayList<>();
+        for (Path path : paths) {
+            String filename = path.getFileName().toString();
+            // Both image.xmp and image.jpg.xmp are used as sidecar name
+            if (filename.toLowerCase().endsWith(".xmp") && (nonSidecarBaseNames.contains(baseName(filename)) || nonSidecarNames.contains(baseName(filename)))) {
+                continue;
+            }
+            files.add(path.toFile());
+        }
+        files.sort(Comparator.comparing(File::getName, String.CASE_INSENSITIVE_ORDER));
+        return files;
+    }
+
+    /*
+     * Whether the file is an xmp sidecar of another supported file in its folder, by the same rule as withoutSidecars
+     */
+    static boolean isSidecar(File file) {
+        if (!file.getName().toLowerCase().endsWith(".xmp")) {
+            return false;
+        }
+        String sidecarBaseName = baseName(file.getName());
+        File[] images = file.getAbsoluteFile().getParentFile().listFiles((dir, name) -> !name.toLowerCase().endsWith(".xmp") && isSupportedFile(name)
+                && (baseName(name).equals(sidecarBaseName) || name.toLowerCase().equals(sidecarBaseName)));
+        return (images != null) && (images.length > 0);
+    }
+
+    private static String baseName(String filename) {
+        int dot = filename.lastIndexOf('.');
+        return ((dot < 0) ? filename : filename.substring(0, dot)).toLowerCase();
+    }
+}
@@ -0,0 +1,240 @@
+package org.hvdw.jexiftoolgui.controllers;
+
+import org.hvdw.jexiftoolgui.facades.IPreferencesFacade;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import static java.nio.file.StandardWatchEventKinds.*;
+import static org.hvdw.jexiftoolgui.facades.IPreferencesFacade.PreferenceKey.WATCH_LOADED_FOLDERS;
+
+/**
+ * Optional watcher (preference WATCH_LOADED_FOLDERS, Tools menu) on the folders of the loaded files.
+ * When other programs create, change or delete files in these folders, only those files are refreshed
+ * instead of the user having to reload the complete folder.
+ * - The events are collected until nothing happened for DEBOUNCE_MS (or at most MAX_DELAY_MS), so a copy of
+ *   hundreds of files or an exiftool write (temp file, rename) gives one batch
+ * - What happened to a file is decided at the end, from the loaded files and the file system, not from the event kinds
+ * - New files are only added when a folder was loaded. When the user loaded (or dropped) some files of a folder,
+ *   only those files are followed, not every file that appears next to them (like an exported pdf)
+ * - The batch is handed to the handler of the load in a NORMAL job of the JobScheduler
+ * Our own exiftool writes are seen as well, which updates their rows too.
+ */
+public class FolderWatcher {
+    private final static ch.qos.logback.classic.Logger logger = (ch.qos.logback.classic.Logger) LoggerFactory.getLogger(FolderWatcher.class);
+    private static IPreferencesFacade prefs = IPreferencesFacade.defaultInstance;
+
+    private static final long DEBOUNCE_MS = 1000;
+    private static final long MAX_DELAY_MS = 5000;
+    // A recursively loaded archive can have thousands of folders; every watched folder costs an OS watch handle
+    private static final int MAX_WATCHED_FOLDERS = 1000;
+
+    private static File[] watchedFiles = null;
+    private static boolean watchedFolderLoad = false;
+    private static Consumer<Changes> changesHandler = null;
+    private static WatchService watchService = null;
+    private static Thread watcherThread = null;
+
+    private FolderWatcher() {}
+
+    /*
+     * The files found in a batch of events
+     */
+    public static class Changes {
+        public final List<File> created = new ArrayList<>();
+        public final List<File> modified = new ArrayList<>();
+        public final List<File> deleted = new ArrayList<>();
+
+        public boolean isEmpty() {
+            return created.isEmpty() && modified.isEmpty() && deleted.isEmpty();
+        }
+    }
+
+    /*
+     * Called after every load: watches the folders of these files (when the user wants that)
+     * and gives the changes to the handler. folderLoad: the files are the content of a loaded folder
+     */
+    public static synchronized void watch(File[] files, boolean folderLoad, Consumer<Changes> handler) {
+        watchedFiles = files;
+        watchedFolderLoad = folderLoad;
+        changesHandler = handler;
+        restart();
+    }
+
+    /*
+     * Called after the handler applied changes: the loaded files are now these
+     */
+    public static synchronized void setWatchedFiles(File[] files) {
+        watchedFiles = files;
+    }
+
+    public static boolean isEnabled() {
+        return prefs.getByKey(WATCH_LOADED_FOLDERS, false);
+    }
+
+    public static synchronized void setEnabled(boolean enabled) {
+        prefs.storeByKey(WATCH_LOADED_FOLDERS, enabled);
+        restart();
+    }
+
+    /*
+     * Called when a new load starts, so the changes of the old files are no longer handled
+     */
+    public static synchronized void stop() {
+        watchedFiles = null;
+        changesHandler = null;
+        stopWatching();
+    }
+
+    // Must be called while synchronized
+    private static void stopWatching() {
+        if (watcherThread != null) {
+            watcherThread.interrupt();
+            watcherThread = null;
+        }
+        if (watchService != null) {
+            try {
+                watchService.close();
+            } catch (IOException e) {
+                logger.debug("closing the watch service: {}", e.toString());
+            }
+            watchService = null;
+        }
+    }
+
+    // Must be called while synchronized
+    private static void restart() {
+        stopWatching();
+        if (!isEnabled() || (watchedFiles == null) || (watchedFiles.length == 0) || (changesHandler == null)) {
+            return;
+        }
+        Set<Path> folders = new LinkedHashSet<>();
+        for (File file : watchedFiles) {
+            File parent = file.getAbsoluteFile().getParentFile();
+            if (parent != null) {
+                folders.add(parent.toPath());
+            }
+        }
+        try {
+            WatchService service = FileSystems.getDefault().newWatchService();
+            Map<WatchKey, Path> keys = new HashMap<>();
+            for (Path folder : folders) {
+                if (keys.size() >= MAX_WATCHED_FOLDERS) {
+                    logger.info("only watching the first {} of {} folders", MAX_WATCHED_FOLDERS, folders.size());
+                    break;
+                }
+                keys.put(folder.register(service, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE), folder);
+            }
+            watchService = service;
+            watcherThread = new Thread(() -> watchLoop(service, keys), "jexiftoolgui-folderwatcher");
+            watcherThread.setDaemon(true);
+            watcherThread.start();
+            logger.debug("watching {} folders", keys.size());
+        } catch (IOException e) {
+            logger.error("Can not watch the loaded folders: {}", e.toString());
+        }
+    }
+
+    private static void watchLoop(WatchService service, Map<WatchKey, Path> keys) {
+        Set<Path> changedPaths = new LinkedHashSet<>();
+        long firstChange = 0;
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                WatchKey key;
+                if (changedPaths.isEmpty()) {
+                    key = service.take();
+                    firstChange = System.currentTimeMillis();
+                } else if (System.currentTimeMillis() - firstChange > MAX_DELAY_MS) {
+                    key = null;
+                } else {
+                    key = service.poll(DEBOUNCE_MS, TimeUnit.MILLISECONDS);
+                }
+                if (key == null) {
+                    // Quiet for a while (or busy for too long): handle what we have
+                    submit(changedPaths);
+                    changedPaths = new LinkedHashSet<>();
+                    continue;
+                }
+                Path folder = keys.get(key);
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (event.kind() == OVERFLOW) {
+                        // Too many events: check all loaded files in this folder
+                        logger.debug("watch events lost for {}", folder);
+                        changedPaths.add(folder);
+                    } else if (folder != null) {
+                        changedPaths.add(folder.resolve((Path) event.context()));
+                    }
+                }
+                key.reset();
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            logger.debug("folder watcher stopped");
+        }
+    }
+
+    private static void submit(Set<Path> changedPaths) {
+        Consumer<Changes> handler;
+        File[] files;
+        boolean folderLoad;
+        synchronized (FolderWatcher.class) {
+            handler = changesHandler;
+            files = watchedFiles;
+            folderLoad = watchedFolderLoad;
+        }
+        if ((handler == null) || (files == null)) {
+            return;
+        }
+        Changes changes = classify(changedPaths, files, folderLoad);
+        if (changes.isEmpty()) {
+            return;
+        }
+        logger.debug("{} created, {} modified, {} deleted", changes.created.size(), changes.modified.size(), changes.deleted.size());
+        JobScheduler.submit(ResourceBundle.getBundle("translations/program_strings").getString("jobs.refreshfiles"), JobScheduler.Priority.NORMAL, () -> handler.accept(changes));
+    }
+
+    /*
+     * Decides per changed path whether it is a new, changed or deleted file. A folder path stands for all loaded files in it.
+     * New files are only reported with withCreated (a folder load)
+     */
+    static Changes classify(Collection<Path> changedPaths, File[] loadedFiles, boolean withCreated) {
+        Map<Path, File> loaded = new HashMap<>();
+        Map<Path, List<File>> loadedPerFolder = new HashMap<>();
+        for (File file : loadedFiles) {
+            Path path = file.getAbsoluteFile().toPath();
+            loaded.put(path, file);
+            loadedPerFolder.computeIfAbsent(path.getParent(), folder -> new ArrayList<>()).add(file);
+        }
+        Set<File> seen = new HashSet<>();
+        Changes changes = new Changes();
+        for (Path changedPath : changedPaths) {
+            List<File> candidates;
+            if (loadedPerFolder.containsKey(changedPath)) {
+                candidates = loadedPerFolder.get(changedPath);
+            } else {
+                File known = loaded.get(changedPath);
+                candidates = Collections.singletonList((known != null) ? known : changedPath.toFile());
+            }
+            for (File file : candidates) {
+                if (!seen.add(file)) {
+                    continue;
+                }
+                boolean isLoaded = loaded.containsKey(file.getAbsoluteFile().toPath());
+                if (isLoaded && file.isFile()) {
+                    changes.modified.add(file);
+                } else if (isLoaded) {
+                    changes.deleted.add(file);
+                } else if (withCreated && file.isFile() && FolderLoader.isSupportedFile(file.getName()) && !FolderLoader.isSidecar(file)) {
+                    // Like when loading: a new sidecar (also one exported by us) is no row of its own
+                    changes.created.add(file);
+                }
+            }
+        }
+        changes.created.sort(Comparator.comparing(File::getName, String.CASE_INSENSITIVE_ORDER));
+        return changes;
+    }
+}
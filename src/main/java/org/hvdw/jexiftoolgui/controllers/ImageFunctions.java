@@ -2,21 +2,29 @@ package org.hvdw.jexiftoolgui.controllers;
 
 //import com.twelvemonkeys.image.AffineTransformOp;
 
+import com.eclipsesource.json.*;
 import org.hvdw.jexiftoolgui.*;
 import org.hvdw.jexiftoolgui.facades.SystemPropertyFacade;
+import org.hvdw.jexiftoolgui.metadata.MetadataSearchIndex;
+import org.hvdw.jexiftoolgui.metadata.MetadataStore;
 import org.slf4j.LoggerFactory;
 
 import javax.imageio.IIOException;
 import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
 import javax.swing.*;
 import java.awt.*;
 import java.awt.geom.AffineTransform;
 import java.awt.image.AffineTransformOp;
 import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.IOException;
 import java.util.*;
 import java.util.List;
+import java.util.regex.Pattern;
 
 
 import static org.hvdw.jexiftoolgui.Application.OS_NAMES.APPLE;
@@ -30,6 +38,10 @@ public class ImageFunctions {
     // And I then extended it with the TwelveMonkeys imageIO libraries
 
     private final static ch.qos.logback.classic.Logger logger = (ch.qos.logback.classic.Logger) LoggerFactory.getLogger(ImageFunctions.class);
+    private final static String CANT_DISPLAY = "cantdisplay";
+    // The previews we extract to the tmp work folder as "<name>_<tag>.jpg"
+    private final static String[] TMP_PREVIEW_TAGS = {"ThumbnailImage", "PhotoshopThumbnail", "PreviewImage", "JpgFromRaw"};
+    private final static Map<String, Object> tmpPreviewLocks = new java.util.concurrent.ConcurrentHashMap<>();
 
     public static int[] getbasicImageData (File file) {
         // BASIC_IMG_DATA = {"-n", "-S", "-imagewidth", "-imageheight", "-orientation", "-iso", "-fnumber", "-exposuretime", "-focallength", "-focallengthin35mmformat"}
@@ -38,7 +50,6 @@ public class ImageFunctions {
         String tmpValue;
         HashMap<String, String> imgBasicData = new HashMap<String, String>();
         //Directory metadata = null;
-        String filename = file.getName().replace("\\", "/");
 
         String exiftool = Utils.platformExiftool();
         List<String> cmdparams = new ArrayList<String>();
@@ -62,33 +73,138 @@ public class ImageFunctions {
             String[] lines = who.split(SystemPropertyFacade.getPropertyByKey(LINE_SEPARATOR));
             for (String line : lines) {
                 String[] parts = line.split(":", 2);
+                if (parts.length < 2) {
+                    continue;
+                }
                 imgBasicData.put(parts[0].trim(), parts[1].trim());
-                    try {
-                        if (parts[0].contains("ImageWidth")) {
-                            basicdata[0] = Integer.parseInt(parts[1].trim());
-                        } else if (parts[0].contains("ImageHeight")) {
-                            basicdata[1] = Integer.parseInt(parts[1].trim());
-                        } else if (parts[0].contains("Orientation")) {
-                            basicdata[2] = Integer.parseInt(parts[1].trim());
-                        }
-                    } catch (NumberFormatException e) {
-                        e.printStackTrace();
-                        logger.info("error Integer.parseInt {}", e);
-                    }
-                //}
                 counter++;
             }
+            basicdata = basicDataFromMap(imgBasicData);
             MyVariables.setimgBasicData(imgBasicData);
             logger.trace("imgBasicData {}", imgBasicData);
-            HashMap<String, HashMap<String, String> > imagesData = MyVariables.getimagesData();
-            imagesData.put(filename, imgBasicData);
-            MyVariables.setimagesData(imagesData);
-            // Note: 100 images will create 300~600 Kb in the total imagesData hashmap.
+            // Images can be loaded by multiple worker threads at the same time
+            storeImageData(MetadataStore.keyOf(file), imgBasicData);
         }
 
         return basicdata;
     }
-    
+
+    /*
+     * Returns width, height and orientation from the imagesData of an already loaded file.
+     * Only calls exiftool when we don't have the data yet.
+     */
+    public static int[] getCachedBasicImageData (File file) {
+        MetadataStore imagesData = MyVariables.getimagesData();
+        if (imagesData != null) {
+            HashMap<String, String> storedData = imagesData.get(MetadataStore.keyOf(file));
+            if (storedData != null) {
+                return basicDataFromMap(storedData);
+            }
+        }
+        return getbasicImageData(file);
+    }
+
+    private static int[] basicDataFromMap (HashMap<String, String> imgBasicData) {
+        int[] basicdata = {0, 0, 999, 0, 0, 0, 0, 0};
+        for (Map.Entry<String, String> entry : imgBasicData.entrySet()) {
+            try {
+                if (entry.getKey().contains("ImageWidth")) {
+                    basicdata[0] = Integer.parseInt(entry.getValue().trim());
+                } else if (entry.getKey().contains("ImageHeight")) {
+                    basicdata[1] = Integer.parseInt(entry.getValue().trim());
+                } else if (entry.getKey().contains("Orientation")) {
+                    basicdata[2] = Integer.parseInt(entry.getValue().trim());
+                }
+            } catch (NumberFormatException e) {
+                logger.info("error Integer.parseInt {}", e.toString());
+            }
+        }
+        return basicdata;
+    }
+
+    /*
+     * Batch version of getbasicImageData: one exiftool -json call for a whole list (chunk) of files
+     * instead of one exiftool call per file. The results are put into imagesData.
+     */
+    public static void getbasicImageDataBatch (List<File> files) {
+        HashMap<String, String> imageKeys = new HashMap<String, String>();
+        boolean isWindows = Utils.isOsFromMicrosoft();
+
+        List<String> cmdparams = new ArrayList<String>();
+        cmdparams.add(Utils.platformExiftool().trim());
+        cmdparams.add("-json");
+        cmdparams.add("-n");
+        cmdparams.add("-a");
+        for (File file : files) {
+            String path = isWindows ? file.getPath().replace("\\", "/") : file.getPath();
+            cmdparams.add(path);
+            imageKeys.put(path, MetadataStore.keyOf(file));
+        }
+
+        String res = "";
+        try {
+            res = CommandRunner.runCommand(cmdparams);
+        } catch (IOException | InterruptedException ex) {
+            logger.error("Error executing command", ex);
+        }
+
+        // exiftool can write warnings or "x image files read" lines around the json array
+        int start = res.indexOf('[');
+        int end = res.lastIndexOf(']');
+        if ((start < 0) || (end < start)) {
+            logger.debug("no json output for batch of {} files", files.size());
+            return;
+        }
+        JsonArray images;
+        try {
+            images = Json.parse(res.substring(start, end + 1)).asArray();
+        } catch (ParseException | UnsupportedOperationException pe) {
+            logger.error("error parsing exiftool json output {}", pe.toString());
+            return;
+        }
+
+        for (JsonValue image : images) {
+            JsonObject tags = image.asObject();
+            String imageKey = imageKeys.get(tags.getString("SourceFile", ""));
+            if (imageKey == null) {
+                continue;
+            }
+            HashMap<String, String> imgBasicData = new HashMap<String, String>();
+            for (JsonObject.Member tag : tags) {
+                if (!"SourceFile".equals(tag.getName())) {
+                    imgBasicData.put(tag.getName(), jsonValueToString(tag.getValue()));
+                }
+            }
+            storeImageData(imageKey, imgBasicData);
+        }
+    }
+
+    /*
+     * Puts the data of one image in the metadata store and the search index. The index gets the
+     * map back from the store, so both share the same tag name and value strings.
+     */
+    private static void storeImageData (String imageKey, HashMap<String, String> imgBasicData) {
+        MetadataStore imagesData = MyVariables.getimagesData();
+        synchronized (imagesData) {
+            imagesData.put(imageKey, imgBasicData);
+            MetadataSearchIndex.put(imageKey, imagesData.get(imageKey));
+        }
+    }
+
+    // Converts a json value to the same string the exiftool -S output would give
+    private static String jsonValueToString (JsonValue value) {
+        if (value.isString()) {
+            return value.asString();
+        } else if (value.isArray()) {
+            StringJoiner joined = new StringJoiner(", ");
+            for (JsonValue item : value.asArray()) {
+                joined.add(jsonValueToString(item));
+            }
+            return joined.toString();
+        }
+        return value.toString();
+    }
+
 
     /*
     / This method is used to mass extract thumbnails from JPG images, either by load folder, load images or "dropped" images.
@@ -112,13 +228,23 @@ public class ImageFunctions {
         cmdparams.add("-preview:ThumbnailImage");
         //cmdparams.add("-preview:PreviewImage");
 
+        int filesToExtract = 0;
         for (File file : files) {
+            // No need to extract anything for images we already have an icon for, or for
+            // jpg/tif images of which we read the embedded thumbnail ourselves
+            if (ThumbnailCache.contains(file) || hasExifThumbnailFormat(getFileExtension(file))) {
+                continue;
+            }
+            filesToExtract++;
             if (isWindows) {
                 cmdparams.add(file.getPath().replace("\\", "/"));
             } else {
                 cmdparams.add(file.getPath());
             }
         }
+        if (filesToExtract == 0) {
+            return;
+        }
         try {
             String cmdResult = CommandRunner.runCommand(cmdparams);
             //logger.info("cmd result from export previews for single RAW" + cmdResult);
@@ -142,6 +268,7 @@ public class ImageFunctions {
 
         // Get the temporary directory
         String tempWorkDir = MyVariables.gettmpWorkFolder();
+        deleteTmpPreviews(file);
 
         cmdparams.add("-a");
         cmdparams.add("-m");
@@ -182,6 +309,7 @@ public class ImageFunctions {
 
         // Get the temporary directory
         String tempWorkDir = MyVariables.gettmpWorkFolder();
+        deleteTmpPreviews(file);
 
         cmdparams.add("-a");
         cmdparams.add("-m");
@@ -209,7 +337,64 @@ public class ImageFunctions {
 
 
 
+    /*
+     * The previews in the tmp work folder are named after the file name without extension. Files with the same name in other
+     * folders, or with another extension (IMG_0001.JPG and IMG_0001.CR2), use the same tmp files. Extracting these
+     * previews and reading them must be done while holding the lock of the name.
+     */
+    public static Object tmpPreviewLock(File file) {
+        return tmpPreviewLocks.computeIfAbsent(Utils.getFileNameWithoutExtension(file.getName()).toLowerCase(), name -> new Object());
+    }
+
+    /*
+     * Removes the previews an earlier file with the same name left in the tmp work folder. Otherwise exiftool writes ours
+     * next to them as "<name>_<tag>-1.jpg" and we would read the old ones. Only while holding tmpPreviewLock(file)
+     */
+    static void deleteTmpPreviews(File file) {
+        String name = Utils.getFileNameWithoutExtension(file.getName());
+        Pattern previewName = Pattern.compile(Pattern.quote(name) + "_(" + String.join("|", TMP_PREVIEW_TAGS) + ")(-\\d+)?\\.\\w+", Pattern.CASE_INSENSITIVE);
+        File[] previews = new File(MyVariables.gettmpWorkFolder()).listFiles((dir, filename) -> previewName.matcher(filename).matches());
+        if (previews != null) {
+            for (File preview : previews) {
+                if (!preview.delete()) {
+                    logger.debug("could not delete old preview {}", preview);
+                }
+            }
+        }
+    }
+
+    /*
+     * Returns the icon for the left table: from the persistent thumbnail cache if we have it,
+     * otherwise it is created (and stored in the cache)
+     */
     public static ImageIcon analyzeImageAndCreateIcon (File file) {
+        ImageIcon icon = ThumbnailCache.get(file);
+        if (icon != null) {
+            logger.debug("thumbnail cache hit for {}", file.getName());
+            return icon;
+        }
+        // The previews in the tmp work folder are shared by the files with the same name
+        synchronized (tmpPreviewLock(file)) {
+            icon = createIconForFile(file);
+        }
+        if ((icon != null) && !CANT_DISPLAY.equals(icon.getDescription())) {
+            ThumbnailCache.put(file, icon);
+        }
+        return icon;
+    }
+
+    // The "can't display" icon. We don't want it in the cache, so we mark it via its description
+    private static ImageIcon cantDisplayIcon() {
+        try {
+            BufferedImage img = ImageIO.read(mainScreen.class.getResource("/cantdisplay.png"));
+            return new ImageIcon(img, CANT_DISPLAY);
+        } catch (IOException e) {
+            logger.error("Error loading image", e);
+            return null;
+        }
+    }
+
+    private static ImageIcon createIconForFile (File file) {
         boolean heicextension = false;
         String[] SimpleExtensions = MyConstants.JAVA_SUP_EXTENSIONS;
 
@@ -261,6 +446,13 @@ public class ImageFunctions {
             photoshopThumbfilename = filename.substring(0, filename.lastIndexOf('.')) + "_PhotoshopThumbnail.jpg";
             thumbfile = new File (MyVariables.gettmpWorkFolder() + File.separator + thumbfilename);
             psthumbfile = new File (MyVariables.gettmpWorkFolder() + File.separator + photoshopThumbfilename);
+            if (hasExifThumbnailFormat(filenameExt)) {
+                // Try to read the embedded exif thumbnail ourselves: no exiftool call and no temp file
+                icon = createIconFromEmbeddedThumbnail(file);
+                if (icon != null) {
+                    return icon;
+                }
+            }
             if ((!thumbfile.exists() || !psthumbfile.exists()) && (filenameExt.toLowerCase().equals("jpg")) || (filenameExt.toLowerCase().equals("jpeg") || filenameExt.toLowerCase().equals("tif")) || (filenameExt.toLowerCase().equals("tiff")) ) {
                 String exportResult = ImageFunctions.ExportPreviewsThumbnailsForIconDisplay(file);
                 /*if (thumbfile.exists()) {
@@ -333,13 +525,7 @@ public class ImageFunctions {
                                 }
                         } else {
                                 // Load he cantdisplay.png from our resources
-                                try {
-                                    BufferedImage img = ImageIO.read(mainScreen.class.getResource("/cantdisplay.png"));
-                                    icon = new ImageIcon(img);
-                                } catch (IOException e) {
-                                    logger.error("Error loading image", e);
-                                    icon = null;
-                                }
+                                icon = cantDisplayIcon();
                                 //ImageFunctions.getbasicImageData(file);
                                 if (icon != null) {
                                     // display our created icon from the preview
@@ -352,13 +538,7 @@ public class ImageFunctions {
 
             } else { // Our "String exportResult = ExportPreviewsThumbnailsForIconDisplay(file);"  completely failed due to some weird RAW format
                 // Load he cantdisplay.png from our resources
-                try {
-                    BufferedImage img = ImageIO.read(mainScreen.class.getResource("/cantdisplay.png"));
-                    icon = new ImageIcon(img);
-                } catch (IOException e){
-                    logger.error("Error loading image", e);
-                    icon = null;
-                }
+                icon = cantDisplayIcon();
                 //ImageFunctions.getbasicImageData(file);
                 if (icon != null) {
                     // display our created icon from the preview
@@ -386,7 +566,6 @@ public class ImageFunctions {
         File psthumbfile = null;
         String filename = "";
         BufferedImage img = null;
-        BufferedImage resizedImg = null;
 
         filename = file.getName().replace("\\", "/");
         logger.debug("Now working on image: " +filename);
@@ -395,7 +574,7 @@ public class ImageFunctions {
             try {
                 // We use exiftool to get width, height and orientation from the ORIGINAL image
                 // (as it is not always available in the thumbnail or preview)
-                basicdata = getbasicImageData(file);
+                basicdata = getCachedBasicImageData(file);
                 logger.debug("Width {} Height {} Orientation {}", String.valueOf(basicdata[0]), String.valueOf(basicdata[1]), String.valueOf(basicdata[2]));
             } catch (NullPointerException npe) {
                 npe.printStackTrace();
@@ -414,30 +593,19 @@ public class ImageFunctions {
             psthumbfile = new File (MyVariables.gettmpWorkFolder() + File.separator + photoshopThumbfilename);
             if (thumbfile.exists()) {
                 logger.debug("precreated thumbnail found: {}", thumbfile.toString());
-                img = ImageIO.read(new File(thumbfile.getPath().replace("\\", "/")));
+                img = readSubsampledImage(new File(thumbfile.getPath().replace("\\", "/")), 160, 160);
             } else if (psthumbfile.exists()) {
                 logger.debug("precreated photoshop thumbnail found: {}", psthumbfile.toString());
-                img = ImageIO.read(new File(psthumbfile.getPath().replace("\\", "/")));
+                img = readSubsampledImage(new File(psthumbfile.getPath().replace("\\", "/")), 160, 160);
             } else {
                 logger.debug("precreated thumbnail NOT found: {}", thumbfile.toString());
-                img = ImageIO.read(new File(file.getPath().replace("\\", "/")));
-            }
-            if (basicdata[0] > 160) {
-                resizedImg = ImageFunctions.scaleImageToContainer(img, 160, 160);
-                logger.trace("after scaleImageToContainer");
-            } else {
-                // In some circumstances we even have images < 160 width
-                resizedImg = img;
+                img = readSubsampledImage(new File(file.getPath().replace("\\", "/")), 160, 160);
             }
-            if ( basicdata[2] > 1 ) { //We use 999 if we can' t find an orientation
-                resizedImg = ImageFunctions.rotate(resizedImg, basicdata[2]);
+            if (img == null) {
+                // No ImageIO reader for this format
+                return null;
             }
-
-
-            logger.trace("after rotate");
-
-            icon = new ImageIcon(resizedImg);
-            return icon;
+            return scaleAndRotateIcon(img, basicdata[2]);
         } catch (IIOException iex) {
             icon = null;
         } catch (IOException ex) {
@@ -447,6 +615,50 @@ public class ImageFunctions {
         return icon;
     }
 
+    // Scales the image to max. 160x160 and rotates it according to the exif orientation
+    private static ImageIcon scaleAndRotateIcon(BufferedImage img, int orientation) {
+        BufferedImage resizedImg;
+        if ((img.getWidth() > 160) || (img.getHeight() > 160)) {
+            resizedImg = ImageFunctions.scaleImageToContainer(img, 160, 160);
+            logger.trace("after scaleImageToContainer");
+        } else {
+            // In some circumstances we even have images < 160 width
+            resizedImg = img;
+        }
+        if ( (orientation > 1) && (orientation <= 8) ) { //We use 999 if we can' t find an orientation
+            resizedImg = ImageFunctions.rotate(resizedImg, orientation);
+        }
+        logger.trace("after rotate");
+        return new ImageIcon(resizedImg);
+    }
+
+    static boolean hasExifThumbnailFormat(String filenameExt) {
+        String ext = filenameExt.toLowerCase();
+        return "jpg".equals(ext) || "jpeg".equals(ext) || "tif".equals(ext) || "tiff".equals(ext);
+    }
+
+    /*
+     * Creates the icon from the exif thumbnail inside a jpg or tif, read by ExifThumbnailReader.
+     * Returns null if the image doesn't have an (readable) embedded thumbnail
+     */
+    public static ImageIcon createIconFromEmbeddedThumbnail(File file) {
+        ExifThumbnailReader.EmbeddedThumbnail thumbnail = ExifThumbnailReader.readThumbnail(file);
+        if (thumbnail == null) {
+            return null;
+        }
+        try {
+            BufferedImage img = ImageIO.read(new ByteArrayInputStream(thumbnail.data));
+            if (img == null) {
+                return null;
+            }
+            logger.debug("using embedded exif thumbnail of {}", file.getName());
+            return scaleAndRotateIcon(img, thumbnail.orientation);
+        } catch (IOException e) {
+            logger.debug("Can not decode embedded thumbnail of {}: {}", file.getName(), e.toString());
+            return null;
+        }
+    }
+
     /*
     / On Mac we let sips do the conversion of tif and heic images to previews
     / like "sips -s format JPEG -Z 160 test.heic --out test.jpg"
@@ -494,6 +706,43 @@ public class ImageFunctions {
     }
 
 
+    /**
+     * Reads an image at (about) the resolution we need instead of the full resolution.
+     * The ImageIO reader only decodes every n-th pixel/line (source subsampling), where n is the largest
+     * value that still gives an image of at least maxWidth x maxHeight. A 45 MP jpg for a 160 pixel icon is
+     * decoded as a ~0.1 MP image. The result still needs to be scaled to its final size.
+     * @param file - the image file
+     * @param maxWidth - the width the image will be scaled to
+     * @param maxHeight - the height the image will be scaled to
+     * @return - the (subsampled) image or null if ImageIO has no reader for it
+     */
+    public static BufferedImage readSubsampledImage(File file, int maxWidth, int maxHeight) throws IOException {
+        try (ImageInputStream iis = ImageIO.createImageInputStream(file)) {
+            if (iis == null) {
+                return null;
+            }
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(iis);
+            if (!readers.hasNext()) {
+                return null;
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(iis, true, true);
+                int width = reader.getWidth(0);
+                int height = reader.getHeight(0);
+                int subsampling = Math.max(1, Math.min(width / Math.max(1, maxWidth), height / Math.max(1, maxHeight)));
+                ImageReadParam param = reader.getDefaultReadParam();
+                if (subsampling > 1) {
+                    param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+                }
+                logger.trace("reading {} ({}x{}) with subsampling {}", file.getName(), width, height, subsampling);
+                return reader.read(0, param);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
     /**
      * Resizes an image using a Graphics2D object backed by a BufferedImage.
      * @param src - source image to scale
@@ -0,0 +1,148 @@
+package org.hvdw.jexiftoolgui.controllers;
+
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * Small LRU cache for the exiftool output that is shown for the selected image.
+ * Clicking back to an image (or browsing with the arrow keys through images seen before) then doesn't run exiftool again.
+ * The key is the complete exiftool command (which contains the file, the tags, -lang, -c, -sort, -struct and so on)
+ * plus the modification time and size of the file, so changes by other programs are noticed too.
+ * Every write command that goes through the CommandRunner removes the cached output of the files it touches,
+ * or of all files below a folder it touches. A read that was running while a write happened is not cached.
+ */
+public class ImageInfoCache {
+    private final static ch.qos.logback.classic.Logger logger = (ch.qos.logback.classic.Logger) LoggerFactory.getLogger(ImageInfoCache.class);
+
+    private static final int MAX_ENTRIES = 100;
+
+    private static final LinkedHashMap<String, CachedInfo> cache = new LinkedHashMap<String, CachedInfo>(MAX_ENTRIES, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, CachedInfo> eldest) {
+            return size() > MAX_ENTRIES;
+        }
+    };
+
+    // Counts the write commands: output of a read that started before the last write may be stale
+    private static long writeGeneration = 0;
+
+    private ImageInfoCache() {}
+
+    /*
+     * Returns the output of the read command for the file from the cache, or runs the command and caches its output
+     */
+    public static String runCommand(List<String> cmdparams, File file) throws IOException, InterruptedException {
+        String key = String.join("\u0000", cmdparams) + "\u0000" + file.lastModified() + "\u0000" + file.length();
+        long generation;
+        synchronized (cache) {
+            CachedInfo entry = cache.get(key);
+            if (entry != null) {
+                logger.trace("exiftool output for {} from cache", file.getName());
+                return entry.output;
+            }
+            generation = writeGeneration;
+        }
+        String output = CommandRunner.runCommand(cmdparams);
+        // Don't keep failures
+        if (!output.isEmpty() && !output.startsWith("IOException error")) {
+            synchronized (cache) {
+                if (generation == writeGeneration) {
+                    cache.put(key, new CachedInfo(normalize(cmdparams.get(cmdparams.size() - 1)), output));
+                } else {
+                    logger.trace("files were written while reading {}: not cached", file.getName());
+                }
+            }
+        }
+        return output;
+    }
+
+    public static void clear() {
+        synchronized (cache) {
+            cache.clear();
+        }
+    }
+
+    /*
+     * Called for every command the CommandRunner executes: write commands drop the cached output of the files they write to.
+     * When we can't tell which files are written (a shell command line) the complete cache is dropped.
+     */
+    static void invalidateFor(List<String> cmdparams) {
+        if (!isWriteCommand(cmdparams)) {
+            return;
+        }
+        synchronized (cache) {
+            writeGeneration++;
+            if (cache.isEmpty()) {
+                return;
+            }
+            if (!ExifToolPool.isExiftoolCommand(cmdparams)) {
+                logger.trace("command of unknown type: clearing the image info cache");
+                cache.clear();
+                return;
+            }
+            Set<String> paths = new HashSet<>();
+            List<String> folders = new ArrayList<>();
+            for (String param : cmdparams) {
+                if (param.startsWith("-@")) {
+                    // The files are in an argfile
+                    cache.clear();
+                    return;
+                }
+                String path = normalize(param);
+                paths.add(path);
+                // A folder parameter writes to the files in it (and with -r in its subfolders)
+                if (!param.startsWith("-") && new File(param).isDirectory()) {
+                    folders.add(path.endsWith("/") ? path : path + "/");
+                }
+            }
+            cache.values().removeIf(entry -> paths.contains(entry.path) || isInFolder(entry.path, folders));
+        }
+    }
+
+    /*
+     * Tag assignments ("-tag=value", "-tag<srctag", "-all="), copying tags and geotagging write to the files.
+     * Commands that are not a direct exiftool call (shell command lines) might write as well.
+     */
+    static boolean isWriteCommand(List<String> cmdparams) {
+        if (!ExifToolPool.isExiftoolCommand(cmdparams)) {
+            return true;
+        }
+        for (String param : cmdparams) {
+            if (!param.startsWith("-")) {
+                continue;
+            }
+            String lower = param.toLowerCase();
+            if (lower.contains("=") || lower.contains("<") || "-tagsfromfile".equals(lower) || "-geotag".equals(lower)
+                    || "-delete_original".equals(lower) || "-delete_original!".equals(lower) || "-restore_original".equals(lower)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isInFolder(String path, List<String> folders) {
+        for (String folder : folders) {
+            if (path.startsWith(folder)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String normalize(String path) {
+        return path.replace("\\", "/");
+    }
+
+    private static class CachedInfo {
+        final String path;
+        final String output;
+
+        CachedInfo(String path, String output) {
+            this.path = path;
+            this.output = output;
+        }
+    }
+}
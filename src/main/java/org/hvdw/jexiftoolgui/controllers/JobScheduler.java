@@ -0,0 +1,457 @@
+package org.hvdw.jexiftoolgui.controllers;
+
+import org.hvdw.jexiftoolgui.Utils;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Central scheduler for all longer running background work (loading images, comparing, exports, commands).
+ * It replaces the separate Executors.newSingleThreadExecutor() per action, that were never shut down.
+ * - A fixed, small number of worker threads (started when needed, stopped on exit)
+ * - Jobs are started in order of priority (INTERACTIVE before NORMAL before BULK), first in first out within a priority
+ * - BULK jobs (exports, batch copies) can never occupy all workers, so interactive jobs never wait for a big export
+ * - PREFETCH jobs (reading ahead what the user will probably look at next) come after all other jobs and run one at a time
+ * - Queued jobs can be cancelled; running jobs get an interrupt and can check JobScheduler.isCancelled()
+ * - Per-file parallel work inside a job goes to a task group (newTaskGroup). The tasks of all groups share one pool of
+ *   Utils.getWorkerThreadCount() threads, taken in the priority order of their jobs, so the number of running exiftool
+ *   processes doesn't grow with the number of jobs. Cancelling a job also cancels its task groups.
+ */
+public class JobScheduler {
+    private final static ch.qos.logback.classic.Logger logger = (ch.qos.logback.classic.Logger) LoggerFactory.getLogger(JobScheduler.class);
+
+    private static final int WORKERS = 4;
+    // Leave at least 2 workers for interactive and normal jobs
+    private static final int MAX_BULK_JOBS = WORKERS - 2;
+    private static final int MAX_PREFETCH_JOBS = 1;
+
+    public enum Priority { INTERACTIVE, NORMAL, BULK, PREFETCH }
+
+    public enum State { QUEUED, RUNNING, DONE, CANCELLED, FAILED }
+
+    private static final Object lock = new Object();
+    private static final TreeSet<Job> queue = new TreeSet<>(Comparator.comparing((Job job) -> job.priority).thenComparingLong(job -> job.sequence));
+    private static final List<Job> running = new ArrayList<>();
+    private static final List<Thread> workers = new ArrayList<>();
+    private static final AtomicLong sequence = new AtomicLong(0);
+    private static final ThreadLocal<Job> currentJob = new ThreadLocal<>();
+    private static int runningBulkJobs = 0;
+    private static int runningPrefetchJobs = 0;
+    private static boolean shutdown = false;
+    private static ThreadPoolExecutor taskPool = null;
+    private static final AtomicInteger taskThreadCount = new AtomicInteger(0);
+
+    private JobScheduler() {}
+
+    /*
+     * Queues the task and returns the Job, which can be used to cancel it
+     */
+    public static Job submit(String name, Priority priority, Runnable task) {
+        Job job = new Job(name, priority, task);
+        synchronized (lock) {
+            if (shutdown) {
+                job.state = State.CANCELLED;
+                return job;
+            }
+            queue.add(job);
+            startWorkers();
+            lock.notifyAll();
+        }
+        logger.debug("queued job \"{}\" ({})", name, priority);
+        return job;
+    }
+
+    /*
+     * The queued and running jobs, running jobs first. Used by the JobQueueView
+     */
+    public static List<Job> getJobs() {
+        synchronized (lock) {
+            List<Job> jobs = new ArrayList<>(running);
+            jobs.addAll(queue);
+            return jobs;
+        }
+    }
+
+    /*
+     * For long running tasks: check this regularly and stop when the user cancelled the job
+     */
+    public static boolean isCancelled() {
+        Job job = currentJob.get();
+        return ((job != null) && (job.state == State.CANCELLED)) || Thread.currentThread().isInterrupted();
+    }
+
+    /*
+     * A new group for the per-file work of the current job, like an ExecutorService of its own. The tasks run in the shared
+     * task pool with the priority of the job, see JobScheduler.isCancelled() as that job and are cancelled with it.
+     * Outside a job the tasks get priority NORMAL.
+     */
+    public static ExecutorService newTaskGroup() {
+        Job job = currentJob.get();
+        if (job == null) {
+            return newTaskGroup(Priority.NORMAL);
+        }
+        TaskGroup group = new TaskGroup(job.priority, job);
+        job.addTaskGroup(group);
+        return group;
+    }
+
+    /*
+     * A task group that belongs to no job, for work that outlives the job that starts it (like loading the visible icons)
+     */
+    public static ExecutorService newTaskGroup(Priority priority) {
+        return new TaskGroup(priority, null);
+    }
+
+    private static ThreadPoolExecutor taskPool() {
+        int threads = Utils.getWorkerThreadCount();
+        synchronized (lock) {
+            if (taskPool == null) {
+                taskPool = new ThreadPoolExecutor(threads, threads, 30, TimeUnit.SECONDS, new PriorityBlockingQueue<>(),
+                        runnable -> new TaskThread(runnable, "jexiftoolgui-task-" + taskThreadCount.incrementAndGet()));
+                taskPool.allowCoreThreadTimeOut(true);
+            } else if (taskPool.getMaximumPoolSize() < threads) {
+                // The preference changed
+                taskPool.setMaximumPoolSize(threads);
+                taskPool.setCorePoolSize(threads);
+            } else if (taskPool.getMaximumPoolSize() > threads) {
+                taskPool.setCorePoolSize(threads);
+                taskPool.setMaximumPoolSize(threads);
+            }
+            return taskPool;
+        }
+    }
+
+    /*
+     * Called when the application exits: cancels everything and stops the workers
+     */
+    public static void shutdown() {
+        synchronized (lock) {
+            shutdown = true;
+            for (Job job : queue) {
+                job.state = State.CANCELLED;
+            }
+            queue.clear();
+            for (Job job : running) {
+                job.cancel();
+            }
+            if (taskPool != null) {
+                taskPool.shutdownNow();
+            }
+            lock.notifyAll();
+        }
+    }
+
+    // Must be called while holding the lock
+    private static void startWorkers() {
+        while (workers.size() < WORKERS) {
+            Thread worker = new Thread(JobScheduler::workerLoop, "jexiftoolgui-job-" + (workers.size() + 1));
+            // Never keep the application alive because of a background job
+            worker.setDaemon(true);
+            workers.add(worker);
+            worker.start();
+        }
+    }
+
+    // Must be called while holding the lock: the first job in priority order that may start now
+    private static Job nextJob() {
+        for (Job job : queue) {
+            if (job.priority == Priority.BULK) {
+                if (runningBulkJobs < MAX_BULK_JOBS) {
+                    return job;
+                }
+            } else if (job.priority == Priority.PREFETCH) {
+                if (runningPrefetchJobs < MAX_PREFETCH_JOBS) {
+                    return job;
+                }
+            } else {
+                return job;
+            }
+        }
+        return null;
+    }
+
+    private static void workerLoop() {
+        while (true) {
+            Job job = null;
+            synchronized (lock) {
+                while (!shutdown && ((job = nextJob()) == null)) {
+                    try {
+                        lock.wait();
+                    } catch (InterruptedException e) {
+                        // The interrupt was meant for a job that ended just before; keep on waiting
+                    }
+                }
+                if (shutdown) {
+                    return;
+                }
+                queue.remove(job);
+                running.add(job);
+                if (job.priority == Priority.BULK) {
+                    runningBulkJobs++;
+                } else if (job.priority == Priority.PREFETCH) {
+                    runningPrefetchJobs++;
+                }
+                job.state = State.RUNNING;
+                job.thread = Thread.currentThread();
+            }
+            job.run();
+            synchronized (lock) {
+                running.remove(job);
+                if (job.priority == Priority.BULK) {
+                    runningBulkJobs--;
+                } else if (job.priority == Priority.PREFETCH) {
+                    runningPrefetchJobs--;
+                }
+                job.thread = null;
+                lock.notifyAll();
+            }
+            // Clear an interrupt of a cancelled job, so it doesn't hit the next job
+            Thread.interrupted();
+        }
+    }
+
+    public static class Job {
+        private final String name;
+        private final Priority priority;
+        private final long sequence;
+        private final Runnable task;
+        private volatile State state = State.QUEUED;
+        private volatile Thread thread = null;
+        private final List<TaskGroup> taskGroups = new ArrayList<>();
+
+        Job(String name, Priority priority, Runnable task) {
+            this.name = name;
+            this.priority = priority;
+            this.sequence = JobScheduler.sequence.incrementAndGet();
+            this.task = task;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public Priority getPriority() {
+            return priority;
+        }
+
+        public State getState() {
+            return state;
+        }
+
+        /*
+         * A queued job is removed from the queue, a running job is interrupted and its task groups are shut down
+         */
+        public void cancel() {
+            List<TaskGroup> groups = Collections.emptyList();
+            synchronized (lock) {
+                if (state == State.QUEUED) {
+                    queue.remove(this);
+                    state = State.CANCELLED;
+                } else if (state == State.RUNNING) {
+                    state = State.CANCELLED;
+                    if (thread != null) {
+                        thread.interrupt();
+                    }
+                    groups = new ArrayList<>(taskGroups);
+                }
+            }
+            for (TaskGroup group : groups) {
+                group.shutdownNow();
+            }
+            logger.debug("cancelled job \"{}\"", name);
+        }
+
+        private void addTaskGroup(TaskGroup group) {
+            boolean cancelled;
+            synchronized (lock) {
+                cancelled = (state == State.CANCELLED);
+                if (!cancelled) {
+                    taskGroups.add(group);
+                }
+            }
+            if (cancelled) {
+                group.shutdownNow();
+            }
+        }
+
+        private void run() {
+            currentJob.set(this);
+            long start = System.currentTimeMillis();
+            try {
+                task.run();
+                synchronized (lock) {
+                    if (state == State.RUNNING) {
+                        state = State.DONE;
+                    }
+                }
+            } catch (Throwable t) {
+                logger.error("job \"{}\" failed", name, t);
+                synchronized (lock) {
+                    if (state == State.RUNNING) {
+                        state = State.FAILED;
+                    }
+                }
+            } finally {
+                currentJob.remove();
+                synchronized (lock) {
+                    taskGroups.clear();
+                }
+                logger.debug("job \"{}\" ended as {} after {} ms", name, state, System.currentTimeMillis() - start);
+            }
+        }
+    }
+
+    // The threads of the shared task pool
+    private static class TaskThread extends Thread {
+        TaskThread(Runnable runnable, String name) {
+            super(runnable, name);
+            // Never keep the application alive because of a background task
+            setDaemon(true);
+        }
+    }
+
+    /*
+     * The per-file work of one job. It behaves as an ExecutorService of its own (shutdown, shutdownNow, awaitTermination),
+     * but its tasks run in the shared task pool
+     */
+    private static class TaskGroup extends AbstractExecutorService {
+        private final Priority priority;
+        private final Job job;
+        // Tasks that did not start yet, in order
+        private final Set<GroupTask> queued = new LinkedHashSet<>();
+        private final Set<Thread> runningThreads = new HashSet<>();
+        private int active = 0;
+        private boolean shutdown = false;
+
+        TaskGroup(Priority priority, Job job) {
+            this.priority = priority;
+            this.job = job;
+        }
+
+        @Override
+        public void execute(Runnable command) {
+            synchronized (this) {
+                if (shutdown) {
+                    throw new RejectedExecutionException("task group is shut down");
+                }
+            }
+            if (Thread.currentThread() instanceof TaskThread) {
+                // A task that starts tasks of its own (and waits for them) would otherwise wait for threads of the same pool
+                command.run();
+                return;
+            }
+            GroupTask task = new GroupTask(this, command);
+            synchronized (this) {
+                queued.add(task);
+                active++;
+            }
+            taskPool().execute(task);
+        }
+
+        @Override
+        public synchronized void shutdown() {
+            shutdown = true;
+        }
+
+        @Override
+        public List<Runnable> shutdownNow() {
+            List<Runnable> notStarted = new ArrayList<>();
+            List<GroupTask> dropped;
+            synchronized (this) {
+                shutdown = true;
+                dropped = new ArrayList<>(queued);
+                for (GroupTask task : dropped) {
+                    notStarted.add(task.command);
+                }
+                active -= queued.size();
+                queued.clear();
+                for (Thread thread : runningThreads) {
+                    thread.interrupt();
+                }
+                notifyAll();
+            }
+            ThreadPoolExecutor pool = taskPool;
+            for (GroupTask task : dropped) {
+                if (pool != null) {
+                    pool.remove(task);
+                }
+                // A submitted task that will never run: get() on it must not wait forever
+                if (task.command instanceof Future) {
+                    ((Future<?>) task.command).cancel(false);
+                }
+            }
+            return notStarted;
+        }
+
+        @Override
+        public synchronized boolean isShutdown() {
+            return shutdown;
+        }
+
+        @Override
+        public synchronized boolean isTerminated() {
+            return shutdown && (active == 0);
+        }
+
+        @Override
+        public synchronized boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+            long deadline = System.nanoTime() + unit.toNanos(timeout);
+            while (!isTerminated()) {
+                long left = deadline - System.nanoTime();
+                if (left <= 0) {
+                    return false;
+                }
+                TimeUnit.NANOSECONDS.timedWait(this, left);
+            }
+            return true;
+        }
+    }
+
+    // One task of a group in the shared pool; the pool takes them in the priority order of their jobs
+    private static class GroupTask implements Runnable, Comparable<GroupTask> {
+        private final TaskGroup group;
+        private final Runnable command;
+        private final long sequence;
+
+        GroupTask(TaskGroup group, Runnable command) {
+            this.group = group;
+            this.command = command;
+            this.sequence = JobScheduler.sequence.incrementAndGet();
+        }
+
+        @Override
+        public int compareTo(GroupTask other) {
+            int byPriority = group.priority.compareTo(other.group.priority);
+            return (byPriority != 0) ? byPriority : Long.compare(sequence, other.sequence);
+        }
+
+        @Override
+        public void run() {
+            synchronized (group) {
+                if (!group.queued.remove(this)) {
+                    // Dropped by shutdownNow
+                    return;
+                }
+                group.runningThreads.add(Thread.currentThread());
+            }
+            currentJob.set(group.job);
+            try {
+                command.run();
+            } catch (Throwable t) {
+                logger.error("task of job \"{}\" failed", (group.job != null) ? group.job.name : "-", t);
+            } finally {
+                currentJob.remove();
+                synchronized (group) {
+                    group.runningThreads.remove(Thread.currentThread());
+                    group.active--;
+                    group.notifyAll();
+                }
+                // Clear an interrupt of shutdownNow, so it doesn't hit the next task
+                Thread.interrupted();
+            }
+        }
+    }
+}
@@ -0,0 +1,235 @@
+package org.hvdw.jexiftoolgui.controllers;
+
+import org.slf4j.LoggerFactory;
+
+import javax.swing.*;
+import javax.swing.event.ChangeListener;
+import java.awt.*;
+import java.io.File;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Creates the icons of the left file table only when they are (nearly) visible.
+ * The table rows get a LazyIcon that paints a placeholder until the real icon is loaded.
+ * Loading is done on worker threads for the rows in or near the viewport of the table.
+ * Only a limited number of icons is kept in memory; icons of rows that scrolled out of view
+ * are dropped (least recently used first) and are reloaded (mostly from the ThumbnailCache) when needed.
+ */
+public class LazyIconLoader {
+    private final static ch.qos.logback.classic.Logger logger = (ch.qos.logback.classic.Logger) LoggerFactory.getLogger(LazyIconLoader.class);
+
+    // Rows above and below the viewport for which we load the icons in advance
+    private static final int PREFETCH_ROWS = 10;
+    // Max. number of icons in memory
+    private static final int MAX_ICONS = 400;
+    private static final int PLACEHOLDER_WIDTH = 160;
+    private static final int PLACEHOLDER_HEIGHT = 120;
+
+    private static final Map<File, ImageIcon> icons = new LinkedHashMap<File, ImageIcon>(MAX_ICONS, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<File, ImageIcon> eldest) {
+            return size() > MAX_ICONS;
+        }
+    };
+    private static final Set<File> pending = new HashSet<>();
+
+    private static ExecutorService workers = null;
+    private static JTable table = null;
+    private static File[] files = new File[0];
+    private static JViewport viewport = null;
+    private static final ChangeListener viewportListener = e -> prefetchVisibleRows();
+
+    private LazyIconLoader() {}
+
+    /*
+     * Called from displayFiles for every (re)load of the left table
+     */
+    public static void attach(JTable fileTable, File[] loadedFiles) {
+        synchronized (icons) {
+            icons.clear();
+            pending.clear();
+        }
+        if (workers != null) {
+            workers.shutdownNow();
+        }
+        // The visible icons are what the user waits for. They belong to no job: they are loaded as long as the files are shown
+        workers = JobScheduler.newTaskGroup(JobScheduler.Priority.INTERACTIVE);
+        table = fileTable;
+        files = loadedFiles;
+        SwingUtilities.invokeLater(() -> {
+            if (viewport != null) {
+                viewport.removeChangeListener(viewportListener);
+            }
+            Container parent = SwingUtilities.getUnwrappedParent(fileTable);
+            viewport = (parent instanceof JViewport) ? (JViewport) parent : null;
+            if (viewport != null) {
+                viewport.addChangeListener(viewportListener);
+            }
+            prefetchVisibleRows();
+        });
+    }
+
+    /*
+     * Called when files of the current load were added, changed or deleted (FolderWatcher): the icons of the
+     * changed files are loaded again when they are painted
+     */
+    public static void update(File[] loadedFiles, Collection<File> changedFiles) {
+        synchronized (icons) {
+            for (File file : changedFiles) {
+                icons.remove(file);
+            }
+        }
+        files = loadedFiles;
+    }
+
+    /*
+     * The icon to put in the table model for this file
+     */
+    public static Icon lazyIcon(File file) {
+        return new LazyIcon(file);
+    }
+
+    // Requests the icons of the visible rows and PREFETCH_ROWS above and below them
+    private static void prefetchVisibleRows() {
+        int[] range = nearViewportRows();
+        for (int row = range[0]; row <= range[1]; row++) {
+            request(files[row]);
+        }
+    }
+
+    // first and last row index around the viewport, or {0, -1} if there is nothing to show
+    private static int[] nearViewportRows() {
+        JTable fileTable = table;
+        File[] loadedFiles = files;
+        if ((fileTable == null) || (loadedFiles.length == 0) || (fileTable.getRowCount() == 0)) {
+            return new int[]{0, -1};
+        }
+        Rectangle visible = fileTable.getVisibleRect();
+        int first = fileTable.rowAtPoint(new Point(0, visible.y));
+        int last = fileTable.rowAtPoint(new Point(0, visible.y + visible.height - 1));
+        if (first < 0) {
+            first = 0;
+        }
+        if (last < 0) {
+            last = fileTable.getRowCount() - 1;
+        }
+        first = Math.max(0, first - PREFETCH_ROWS);
+        last = Math.min(Math.min(fileTable.getRowCount(), loadedFiles.length) - 1, last + PREFETCH_ROWS);
+        return new int[]{first, last};
+    }
+
+    private static boolean isNearViewport(File file) {
+        int[] range = nearViewportRows();
+        for (int row = range[0]; row <= range[1]; row++) {
+            if (files[row].equals(file)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static ImageIcon getIcon(File file) {
+        synchronized (icons) {
+            return icons.get(file);
+        }
+    }
+
+    private static void request(File file) {
+        synchronized (icons) {
+            if (icons.containsKey(file) || pending.contains(file) || (workers == null)) {
+                return;
+            }
+            pending.add(file);
+        }
+        ExecutorService currentWorkers = workers;
+        try {
+            currentWorkers.execute(() -> loadIcon(file));
+        } catch (RejectedExecutionException e) {
+            // The files were loaded again in the meantime
+            synchronized (icons) {
+                pending.remove(file);
+            }
+        }
+    }
+
+    // Runs in the task pool
+    private static void loadIcon(File file) {
+        try {
+            // The user may have scrolled away while this request was waiting
+            boolean stillNeeded;
+            try {
+                stillNeeded = checkOnEdt(() -> isNearViewport(file));
+            } catch (Exception e) {
+                // interrupted: the files were reloaded
+                logger.debug("viewport check failed {}", e.toString());
+                stillNeeded = false;
+            }
+            if (!stillNeeded) {
+                return;
+            }
+            ImageIcon icon = ImageFunctions.analyzeImageAndCreateIcon(file);
+            if (icon != null) {
+                synchronized (icons) {
+                    icons.put(file, icon);
+                }
+                SwingUtilities.invokeLater(() -> {
+                    if (table != null) {
+                        table.repaint();
+                    }
+                });
+            }
+        } finally {
+            synchronized (icons) {
+                pending.remove(file);
+            }
+        }
+    }
+
+    // The table may only be accessed from the EDT
+    private static boolean checkOnEdt(BooleanSupplier check) throws Exception {
+        if (SwingUtilities.isEventDispatchThread()) {
+            return check.getAsBoolean();
+        }
+        final boolean[] result = {true};
+        SwingUtilities.invokeAndWait(() -> result[0] = check.getAsBoolean());
+        return result[0];
+    }
+
+    /*
+     * Icon that paints the real icon once it is loaded, and a placeholder (and a load request) until then
+     */
+    private static class LazyIcon implements Icon {
+        private final File file;
+
+        LazyIcon(File file) {
+            this.file = file;
+        }
+
+        @Override
+        public void paintIcon(Component c, Graphics g, int x, int y) {
+            ImageIcon icon = getIcon(file);
+            if (icon != null) {
+                icon.paintIcon(c, g, x, y);
+            } else {
+                g.setColor(Color.LIGHT_GRAY);
+                g.drawRect(x, y, PLACEHOLDER_WIDTH - 1, PLACEHOLDER_HEIGHT - 1);
+                request(file);
+            }
+        }
+
+        @Override
+        public int getIconWidth() {
+            ImageIcon icon = getIcon(file);
+            return (icon != null) ? icon.getIconWidth() : PLACEHOLDER_WIDTH;
+        }
+
+        @Override
+        public int getIconHeight() {
+            ImageIcon icon = getIcon(file);
+            return (icon != null) ? icon.getIconHeight() : PLACEHOLDER_HEIGHT;
+        }
+    }
+}
@@ -11,6 +11,7 @@ import org.hvdw.jexiftoolgui.metadata.MetaData;
 import org.hvdw.jexiftoolgui.metadata.RemoveMetadata;
 import org.hvdw.jexiftoolgui.model.CompareImages;
 import org.hvdw.jexiftoolgui.model.GuiConfig;
+import org.hvdw.jexiftoolgui.model.ReverseGeocoder;
 import org.hvdw.jexiftoolgui.model.SQLiteModel;
 import org.hvdw.jexiftoolgui.renaming.RenamePhotos;
 import org.hvdw.jexiftoolgui.view.*;
@@ -78,6 +79,9 @@ public class MenuActionListener implements ActionListener  {
                 StandardFileIO.deleteDirectory(new File(MyVariables.gettmpWorkFolder()) );
                 CompareImages.CleanUp();
                 GuiConfig.SaveGuiConfig(frame, rootPanel, splitPanel);
+                JobScheduler.shutdown();
+                SQLiteJDBC.close();
+                ExifToolPool.shutdown();
                 System.exit(0);
                 break;
             case "Rename photos":
@@ -229,6 +233,18 @@ public class MenuActionListener implements ActionListener  {
             case "ExiftoolDatabase":
                 ExiftoolDatabase.showDialog();
                 break;
+            case "BackgroundJobs":
+                JobQueueView.showJobQueue(rootPanel);
+                break;
+            case "WatchFolders":
+                FolderWatcher.setEnabled(((JCheckBoxMenuItem) mev.getSource()).isSelected());
+                break;
+            case "PlacesFile":
+                File placesFile = StandardFileIO.getPlacesFile(rootPanel);
+                if (placesFile != null) {
+                    ReverseGeocoder.setPlacesFile(placesFile);
+                }
+                break;
             case "About jExifToolGUI":
                 //JOptionPane.showMessageDialog(mainScreen.this.rootPanel, String.format(ProgramTexts.HTML, 450, ResourceBundle.getBundle("translations/program_help_texts").getString("abouttext")), ResourceBundle.getBundle("translations/program_help_texts").getString("abouttitle"), JOptionPane.INFORMATION_MESSAGE);
                 WV.HTMLView(ResourceBundle.getBundle("translations/program_help_texts").getString("abouttitle"), ResourceBundle.getBundle("translations/program_help_texts").getString("abouttext"), 500, 450);
@@ -0,0 +1,107 @@
+package org.hvdw.jexiftoolgui.controllers;
+
+import org.hvdw.jexiftoolgui.MyVariables;
+import org.hvdw.jexiftoolgui.Utils;
+import org.hvdw.jexiftoolgui.view.JavaImageViewer;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.ResourceBundle;
+
+/**
+ * Reads ahead the images around the one that is shown, while the user is looking at it:
+ * - the exiftool info of the rows around the selected row in the file table (into the ImageInfoCache)
+ * - the screen sized images before and after the image in the image viewer / slideshow (into the cache of the JavaImageViewer)
+ * The work is done as PREFETCH jobs of the JobScheduler, so it never delays anything the user asked for.
+ * When the user moves on, the prefetches for the previous position that did not start yet are cancelled.
+ */
+public class Prefetcher {
+    private final static ch.qos.logback.classic.Logger logger = (ch.qos.logback.classic.Logger) LoggerFactory.getLogger(Prefetcher.class);
+
+    // Number of rows before and after the selected row
+    private static final int INFO_DISTANCE = 2;
+    // Number of images before and after the image in the viewer
+    private static final int PREVIEW_DISTANCE = 1;
+
+    private static final List<JobScheduler.Job> infoJobs = new ArrayList<>();
+    private static final List<JobScheduler.Job> previewJobs = new ArrayList<>();
+
+    private Prefetcher() {}
+
+    /*
+     * Called after the info of row "index" is shown. Rows in the direction of browsing go first
+     */
+    public static void prefetchImageInfo(String[] whichInfo, int index, int direction) {
+        File[] files = MyVariables.getLoadedFiles();
+        if ((files == null) || (index < 0) || (index >= files.length)) {
+            return;
+        }
+        synchronized (infoJobs) {
+            cancelQueued(infoJobs);
+            for (int neighbour : neighbours(index, direction, INFO_DISTANCE, files.length, false)) {
+                infoJobs.add(JobScheduler.submit(ResourceBundle.getBundle("translations/program_strings").getString("jobs.prefetchinfo") + " " + files[neighbour].getName(), JobScheduler.Priority.PREFETCH, () -> {
+                    try {
+                        Utils.prefetchImageInfo(whichInfo, neighbour);
+                    } catch (Exception e) {
+                        logger.debug("prefetch of info for {} failed: {}", files[neighbour].getName(), e.toString());
+                    }
+                }));
+            }
+        }
+    }
+
+    /*
+     * Called after the image "index" is shown in the image viewer. The viewer loops, so we do too
+     */
+    public static void prefetchScreenImages(int index, int direction) {
+        File[] files = MyVariables.getLoadedFiles();
+        if ((files == null) || (index < 0) || (index >= files.length)) {
+            return;
+        }
+        synchronized (previewJobs) {
+            cancelQueued(previewJobs);
+            for (int neighbour : neighbours(index, direction, PREVIEW_DISTANCE, files.length, true)) {
+                File file = files[neighbour];
+                previewJobs.add(JobScheduler.submit(ResourceBundle.getBundle("translations/program_strings").getString("jobs.prefetchimage") + " " + file.getName(), JobScheduler.Priority.PREFETCH, () -> {
+                    try {
+                        int orientation = ImageFunctions.getCachedBasicImageData(file)[2];
+                        JavaImageViewer.getScreenImage(file, orientation);
+                    } catch (Exception e) {
+                        logger.debug("prefetch of image {} failed: {}", file.getName(), e.toString());
+                    }
+                }));
+            }
+        }
+    }
+
+    /*
+     * The indices around index, nearest first and within the same distance the one in the browse direction first
+     */
+    static List<Integer> neighbours(int index, int direction, int distance, int count, boolean loop) {
+        List<Integer> neighbours = new ArrayList<>();
+        int forward = (direction < 0) ? -1 : 1;
+        for (int step = 1; step <= distance; step++) {
+            for (int candidate : new int[]{index + forward * step, index - forward * step}) {
+                if (loop) {
+                    candidate = ((candidate % count) + count) % count;
+                }
+                if ((candidate >= 0) && (candidate < count) && (candidate != index) && !neighbours.contains(candidate)) {
+                    neighbours.add(candidate);
+                }
+            }
+        }
+        return neighbours;
+    }
+
+    // Running prefetches are almost done and still useful, so only the queued ones are cancelled
+    private static void cancelQueued(List<JobScheduler.Job> jobs) {
+        for (JobScheduler.Job job : jobs) {
+            if (job.getState() == JobScheduler.State.QUEUED) {
+                job.cancel();
+            }
+        }
+        jobs.clear();
+    }
+}
@@ -0,0 +1,57 @@
+package org.hvdw.jexiftoolgui.controllers;
+
+import org.slf4j.LoggerFactory;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reading the output of a process blocks and doesn't react to an interrupt, so a cancelled job would wait for its exiftool
+ * command to finish. Threads register the process they read from; one daemon thread destroys the process of a thread
+ * that got interrupted, which ends the read.
+ */
+class ProcessCanceller {
+    private final static ch.qos.logback.classic.Logger logger = (ch.qos.logback.classic.Logger) LoggerFactory.getLogger(ProcessCanceller.class);
+
+    private static final long CHECK_MILLIS = 100;
+
+    private static final Map<Thread, Process> watched = new ConcurrentHashMap<>();
+    private static ScheduledExecutorService checker = null;
+
+    private ProcessCanceller() {}
+
+    /*
+     * The current thread reads from this process until unwatch()
+     */
+    static void watch(Process process) {
+        watched.put(Thread.currentThread(), process);
+        startChecker();
+    }
+
+    static void unwatch() {
+        watched.remove(Thread.currentThread());
+    }
+
+    private static synchronized void startChecker() {
+        if (checker == null) {
+            checker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "jexiftoolgui-process-canceller");
+                thread.setDaemon(true);
+                return thread;
+            });
+            checker.scheduleWithFixedDelay(ProcessCanceller::check, CHECK_MILLIS, CHECK_MILLIS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private static void check() {
+        watched.forEach((thread, process) -> {
+            if (thread.isInterrupted() && watched.remove(thread, process)) {
+                logger.debug("destroying the process of interrupted thread {}", thread.getName());
+                process.destroy();
+            }
+        });
+    }
+}
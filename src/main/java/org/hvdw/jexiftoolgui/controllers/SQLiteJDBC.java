@@ -7,125 +7,221 @@ import org.hvdw.jexiftoolgui.facades.SystemPropertyFacade;
 import org.slf4j.LoggerFactory;
 
 import java.sql.*;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 import static org.hvdw.jexiftoolgui.facades.SystemPropertyFacade.SystemPropertyKey.LINE_SEPARATOR;
 
+/**
+ * Access to our SQLite databases: the "disk" database (jexiftoolgui.db) and the "inmemory" database.
+ * Every database has one long-lived connection that is opened on first use and shared by all queries.
+ * Access to a connection is serialized (a SQLite connection is not meant to be used by several threads at once).
+ * The disk database runs in WAL mode, so reading doesn't wait for writing.
+ * Statements with "?" parameters are prepared once and kept in a small LRU cache per connection.
+ * The older string based methods (generalQuery and friends) get sql with the values in it, so they use plain statements.
+ * The connections are closed by close() on exit.
+ */
 public class SQLiteJDBC {
 
     private static IPreferencesFacade prefs = IPreferencesFacade.defaultInstance;
     private final static ch.qos.logback.classic.Logger logger = (ch.qos.logback.classic.Logger) LoggerFactory.getLogger(SQLiteJDBC.class);
 
-    static public Connection connect() {
+    private static final int MAX_CACHED_STATEMENTS = 50;
 
-        // ######################### The basic necessary stuff ###################3
-        Connection conn = null;
-        String url;
-        try {
-            // db parameters
-            boolean isWindows = Utils.isOsFromMicrosoft();
-            if (isWindows) {
-                url = "jdbc:sqlite:" + MyVariables.getjexiftoolguiDBPath();
-            } else {
-                url = "jdbc:sqlite:" + MyVariables.getjexiftoolguiDBPath().replace(" ", "\\ ");
-            }
-            // create a connection to the database
-            conn = DriverManager.getConnection(url);
-            logger.debug("Connection to SQLite DB has been established.");
-        } catch (SQLException e) {
-            System.out.println(e.getMessage());
-        }
-        return conn;
+    private static final Database diskDB = new Database("disk");
+    private static final Database inmemoryDB = new Database("inmemory");
+
+    /*
+     * Reads one row of a result set into an object of the caller
+     */
+    public interface RowMapper<T> {
+        T map(ResultSet rs) throws SQLException;
     }
 
+    /*
+     * Returns a new connection to the disk database. The caller must close it.
+     * Normally the query methods below, which use the shared connection, are what you want.
+     */
+    static public Connection connect() {
+        return connect("disk");
+    }
+
+    /*
+     * Returns a new connection to the database of dbType ("disk" or "inmemory"). The caller must close it.
+     * Note that every new "inmemory" connection has its own, empty, database.
+     */
     static public Connection connect(String dbType) {
 
         // ######################### The basic necessary stuff ###################3
         Connection conn = null;
-        String url;
         try {
-            // db parameters
-            boolean isWindows = Utils.isOsFromMicrosoft();
-            if ("inmemory".equals(dbType)) {
-                url = "jdbc:sqlite::memory:";
-            } else {
-                if (isWindows) {
-                    url = "jdbc:sqlite:" + MyVariables.getjexiftoolguiDBPath();
-                } else {
-                    url = "jdbc:sqlite:" + MyVariables.getjexiftoolguiDBPath().replace(" ", "\\ ");
-                }
-            }
             // create a connection to the database
-            conn = DriverManager.getConnection(url);
+            conn = DriverManager.getConnection(url(dbType));
             if ("inmemory".equals(dbType)) {
                 logger.debug("Connection to in Memeory SQLite DB has been established.");
             } else {
                 logger.debug("Connection to SQLite DB has been established.");
             }
         } catch (SQLException e) {
-            System.out.println(e.getMessage());
+            logger.error("Could not connect to the {} database: {}", dbType, e.getMessage());
         }
         return conn;
     }
 
+    private static String url(String dbType) {
+        if ("inmemory".equals(dbType)) {
+            return "jdbc:sqlite::memory:";
+        } else if (Utils.isOsFromMicrosoft()) {
+            return "jdbc:sqlite:" + MyVariables.getjexiftoolguiDBPath();
+        } else {
+            return "jdbc:sqlite:" + MyVariables.getjexiftoolguiDBPath().replace(" ", "\\ ");
+        }
+    }
 
+    private static Database database(String dbType) {
+        return "inmemory".equals(dbType) ? inmemoryDB : diskDB;
+    }
 
-    static public String generalQuery(String sql, String dbType) {
-        String DBresult = "";
-        String queryFields;
+    /*
+     * Runs a query with optional parameters for the "?" in the sql, and maps every row with the mapper
+     */
+    public static <T> List<T> query(String sql, String dbType, RowMapper<T> mapper, Object... params) throws SQLException {
+        Database db = database(dbType);
+        synchronized (db) {
+            PreparedStatement stmt = db.statement(sql);
+            setParameters(stmt, params);
+            List<T> rows = new ArrayList<>();
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    rows.add(mapper.map(rs));
+                }
+            }
+            return rows;
+        }
+    }
+
+    /*
+     * Runs a query and returns every row as array of column values, in the order of the select
+     */
+    public static List<String[]> queryRows(String sql, String dbType, Object... params) throws SQLException {
+        return query(sql, dbType, SQLiteJDBC::rowAsArray, params);
+    }
+
+    private static String[] rowAsArray(ResultSet rs) throws SQLException {
+        String[] row = new String[rs.getMetaData().getColumnCount()];
+        for (int column = 0; column < row.length; column++) {
+            row[column] = rs.getString(column + 1);
+        }
+        return row;
+    }
+
+    /*
+     * The rows as text like generalQuery returns them: fields tab separated, rows on separate lines
+     */
+    public static String rowsAsText(List<String[]> rows) {
         StringBuilder sbresult = new StringBuilder();
+        String lineSeparator = SystemPropertyFacade.getPropertyByKey(LINE_SEPARATOR);
+        for (String[] row : rows) {
+            sbresult.append(String.join("\t", row)).append(lineSeparator);
+        }
+        return sbresult.toString();
+    }
 
-        // get the fields that are being queried on and immediately remove spaces
-        if (sql.contains("distinct")) {
-            queryFields = Utils.stringBetween(sql.toLowerCase(), "select distinct", "from").replaceAll("\\s+", "");  // regex "\s" is space, extra \ to escape the first \;
-        } else {
-            queryFields = Utils.stringBetween(sql.toLowerCase(), "select", "from").replaceAll("\\s+", "");  // regex "\s" is space, extra \ to escape the first \;
-        }
-        logger.debug("the general query queryfields returned string: " + queryFields);
-        String[] dbFields = queryFields.split(",");
-
-        try (Connection conn = connect(dbType);
-             Statement stmt  = conn.createStatement();
-             ResultSet rs    = stmt.executeQuery(sql)){
-
-            int noOfFields = dbFields.length;
-            //logger.debug("nooffields: " + String.valueOf(noOfFields));
-            int counter = 1;
-            while (rs.next()) {
-                for (String dbfield : dbFields) {
-                    if ( (noOfFields) > counter) {
-                        sbresult.append(rs.getString(dbfield) + "\t");
-                        //logger.debug("counter in tab: " + counter);
-                        counter ++;
-                    } else {
-                        //sbresult.append(rs.getString(dbfield) + "\n");
-                        sbresult.append(rs.getString(dbfield) + SystemPropertyFacade.getPropertyByKey(LINE_SEPARATOR));
-                        //logger.debug("counter in linefeed: " + counter);
-                        counter = 1;
-                    }
+    /*
+     * Runs a query and returns the values of its first column
+     */
+    public static List<String> queryColumn(String sql, String dbType, Object... params) throws SQLException {
+        return query(sql, dbType, rs -> rs.getString(1), params);
+    }
+
+    /*
+     * Runs one insert, update, delete or create statement with optional parameters. Returns the number of changed rows
+     */
+    public static int update(String sql, String dbType, Object... params) throws SQLException {
+        Database db = database(dbType);
+        synchronized (db) {
+            PreparedStatement stmt = db.statement(sql);
+            setParameters(stmt, params);
+            return stmt.executeUpdate();
+        }
+    }
+
+    /*
+     * Runs the statements in one transaction: either all of them are done or none
+     */
+    public static void updateAll(String[] sqls, String dbType) throws SQLException {
+        Database db = database(dbType);
+        synchronized (db) {
+            Connection conn = db.connection();
+            conn.setAutoCommit(false);
+            try (Statement stmt = conn.createStatement()) {
+                for (String sql : sqls) {
+                    stmt.executeUpdate(sql);
+                }
+                conn.commit();
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        }
+    }
+
+    /*
+     * Runs a query as plain statement. For sql that has its values in it: every such string is different,
+     * so preparing and caching them would only push the reusable statements out of the cache
+     */
+    private static <T> List<T> queryUnprepared(String sql, String dbType, RowMapper<T> mapper) throws SQLException {
+        Database db = database(dbType);
+        synchronized (db) {
+            List<T> rows = new ArrayList<>();
+            try (Statement stmt = db.connection().createStatement(); ResultSet rs = stmt.executeQuery(sql)) {
+                while (rs.next()) {
+                    rows.add(mapper.map(rs));
                 }
             }
+            return rows;
+        }
+    }
+
+    private static void setParameters(PreparedStatement stmt, Object... params) throws SQLException {
+        stmt.clearParameters();
+        for (int i = 0; i < params.length; i++) {
+            stmt.setObject(i + 1, params[i]);
+        }
+    }
+
+    /*
+     * Closes the shared connections and their statements. A next query opens them again
+     */
+    public static void close() {
+        diskDB.close();
+        inmemoryDB.close();
+    }
+
+
+    static public String generalQuery(String sql, String dbType) {
+        String result;
+
+        try {
+            result = rowsAsText(queryUnprepared(sql, dbType, SQLiteJDBC::rowAsArray));
         } catch (SQLException e) {
             logger.error("sql error: " + e.getMessage());
-            sbresult.append(e.getMessage());
+            result = e.getMessage();
         }
-        //logger.info(sbresult.toString());
-        return sbresult.toString();
+        //logger.info(result);
+        return result;
     }
 
     static public String singleFieldQuery(String sql, String field) {
-        String DBresult = "";
         StringBuilder sbresult = new StringBuilder();
-        String typeDB = "inmemory";
-
-        try (
-             Connection conn = connect();
-             Statement stmt  = conn.createStatement();
-             ResultSet rs    = stmt.executeQuery(sql)){
 
-            // loop through the result set
-            while (rs.next()) {
-                sbresult.append(rs.getString(field) + "\n");
-                //logger.info(rs.getString(field));
+        try {
+            for (String value : queryUnprepared(sql, "disk", rs -> rs.getString(field))) {
+                sbresult.append(value + "\n");
             }
         } catch (SQLException e) {
             logger.error(e.getMessage());
@@ -136,12 +232,9 @@ public class SQLiteJDBC {
 
     static public String countQuery(String sql) {
         String DBresult = "";
-        try (Connection conn = connect();
-             Statement stmt  = conn.createStatement();
-             ResultSet rs    = stmt.executeQuery(sql)){
-            rs.next(); // You always have a row, with the count
-            int count = rs.getInt(1);
-            DBresult = String.valueOf(count).trim();
+        try {
+            // You always have a row, with the count
+            DBresult = String.valueOf(queryUnprepared(sql, "disk", rs -> rs.getInt(1)).get(0)).trim();
         } catch (SQLException e) {
             logger.error(e.getMessage());
         }
@@ -152,14 +245,15 @@ public class SQLiteJDBC {
     static public String insertUpdateQuery(String sql, String dbType) {
         String queryresult = "";
 
-        try {
-            Connection conn = connect(dbType);
-             Statement stmt  = conn.createStatement();
-             stmt.executeUpdate(sql);
-
-        } catch (SQLException e) {
-            logger.error(e.getMessage());
-            queryresult = e.getMessage();
+        // Not prepared: these statements are built with their values in them and are mostly executed only once
+        Database db = database(dbType);
+        synchronized (db) {
+            try (Statement stmt = db.connection().createStatement()) {
+                stmt.executeUpdate(sql);
+            } catch (SQLException e) {
+                logger.error(e.getMessage());
+                queryresult = e.getMessage();
+            }
         }
         logger.trace("insertUpdateQueryResult {}", queryresult);
         return queryresult;
@@ -169,13 +263,7 @@ public class SQLiteJDBC {
         String queryresult = "";
 
         try {
-            Connection conn = connect(dbType);
-            Statement stmt  = conn.createStatement();
-            //stmt.executeUpdate(sql);
-            for (String sql : sqls) {
-                stmt.executeUpdate(sql);
-            }
-
+            updateAll(sqls, dbType);
         } catch (SQLException e) {
             logger.error(e.getMessage());
             queryresult = e.getMessage();
@@ -186,4 +274,80 @@ public class SQLiteJDBC {
 
     // ################### End of the basic necessary stuff ###################
 
+    /*
+     * The shared connection of one database and its prepared statements. Only used while synchronized on it.
+     */
+    private static class Database {
+        private final String dbType;
+        private Connection conn;
+        // The url the connection was opened with: the disk database can move after first use (new jexiftoolgui folder)
+        private String connUrl;
+        private final LinkedHashMap<String, PreparedStatement> statements = new LinkedHashMap<String, PreparedStatement>(MAX_CACHED_STATEMENTS, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, PreparedStatement> eldest) {
+                if (size() > MAX_CACHED_STATEMENTS) {
+                    closeQuietly(eldest.getValue());
+                    return true;
+                }
+                return false;
+            }
+        };
+
+        Database(String dbType) {
+            this.dbType = dbType;
+        }
+
+        Connection connection() throws SQLException {
+            String url = url(dbType);
+            if ((conn != null) && (!url.equals(connUrl) || conn.isClosed())) {
+                close();
+            }
+            if (conn == null) {
+                conn = DriverManager.getConnection(url);
+                connUrl = url;
+                if (!"inmemory".equals(dbType)) {
+                    try (Statement stmt = conn.createStatement()) {
+                        stmt.execute("PRAGMA journal_mode=WAL");
+                    }
+                }
+                logger.debug("Shared connection to the {} SQLite DB has been established.", dbType);
+            }
+            return conn;
+        }
+
+        PreparedStatement statement(String sql) throws SQLException {
+            Connection connection = connection();
+            PreparedStatement stmt = statements.get(sql);
+            if (stmt == null) {
+                stmt = connection.prepareStatement(sql);
+                statements.put(sql, stmt);
+            }
+            return stmt;
+        }
+
+        synchronized void close() {
+            for (PreparedStatement stmt : statements.values()) {
+                closeQuietly(stmt);
+            }
+            statements.clear();
+            if (conn != null) {
+                try {
+                    conn.close();
+                    logger.debug("Shared connection to the {} SQLite DB has been closed.", dbType);
+                } catch (SQLException e) {
+                    logger.error("Closing the {} database: {}", dbType, e.getMessage());
+                }
+                conn = null;
+                connUrl = null;
+            }
+        }
+
+        private static void closeQuietly(Statement stmt) {
+            try {
+                stmt.close();
+            } catch (SQLException e) {
+                logger.debug("Closing a statement: {}", e.getMessage());
+            }
+        }
+    }
 }
@@ -3,6 +3,7 @@ package org.hvdw.jexiftoolgui.controllers;
 import org.hvdw.jexiftoolgui.*;
 import org.hvdw.jexiftoolgui.facades.IPreferencesFacade;
 import org.hvdw.jexiftoolgui.facades.SystemPropertyFacade;
+import org.hvdw.jexiftoolgui.model.ReverseGeocoder;
 import org.slf4j.LoggerFactory;
 
 import javax.swing.*;
@@ -271,10 +272,10 @@ public class StandardFileIO {
 
 
     /*
-    * Get the files from a folder via the "Load Directory" via JFilechooser
+    * Get the folder for the "Load Directory" via JFilechooser. The files in it are found by the FolderLoader.
+    * The "include subfolders" checkbox is remembered in the preferences.
      */
-    public static File[] getFolderFiles(JPanel myComponent) {
-        File[] files = null;
+    public static File getFolder(JPanel myComponent) {
         String SelectedFolder;
         FileSystemView fsv = FileSystemView.getFileSystemView();
 
@@ -294,28 +295,48 @@ public class StandardFileIO {
         jchooser.resetChoosableFileFilters();
         jchooser.setAcceptAllFileFilterUsed(false);
         jchooser.setFileSelectionMode(JFileChooser.DIRECTORIES_ONLY);
+        JCheckBox includeSubFolders = new JCheckBox(ResourceBundle.getBundle("translations/program_strings").getString("stfio.includesubfolders"));
+        includeSubFolders.setSelected(prefs.getByKey(LOAD_SUBFOLDERS, false));
+        jchooser.setAccessory(includeSubFolders);
         int status = jchooser.showOpenDialog(myComponent);
         if (status == JFileChooser.APPROVE_OPTION) {
             SelectedFolder = jchooser.getSelectedFile().getAbsolutePath();
-            File folder = new File(SelectedFolder);
-            //files = listFiles(SelectedFolder);
-            files = folder.listFiles();
-            MyVariables.setLoadedFiles(files);
+            prefs.storeByKey(LOAD_SUBFOLDERS, includeSubFolders.isSelected());
             prefs.storeByKey(LAST_OPENED_FOLDER, jchooser.getCurrentDirectory().getAbsolutePath());
             logger.debug("jchooser.getCurrentDirectory().getAbsolutePath() {}", jchooser.getCurrentDirectory().getAbsolutePath());
-            return files;
+            return new File(SelectedFolder);
         } else {
-            return files = null;
+            return null;
         }
+    }
 
-        //return files;
+    /*
+     * Get the GeoNames places file (cities1000.txt and the like) for the offline reverse geocoding
+     */
+    public static File getPlacesFile(JPanel myComponent) {
+        File current = ReverseGeocoder.getPlacesFile();
+        File startFolder = (current != null) ? current.getParentFile() : new File(getFolderPathToOpenBasedOnPreferences());
+
+        final JFileChooser jchooser = new JFileChooser(startFolder, FileSystemView.getFileSystemView());
+        jchooser.setDialogTitle(ResourceBundle.getBundle("translations/program_strings").getString("stfio.placesfile"));
+        jchooser.setFileFilter(new FileNameExtensionFilter(ResourceBundle.getBundle("translations/program_strings").getString("stfio.placesfilter"), "txt"));
+        jchooser.setFileSelectionMode(JFileChooser.FILES_ONLY);
+        if (current != null) {
+            jchooser.setSelectedFile(current);
+        }
+        int status = jchooser.showOpenDialog(myComponent);
+        if (status == JFileChooser.APPROVE_OPTION) {
+            return jchooser.getSelectedFile();
+        } else {
+            return null;
+        }
     }
 
     /*
-     * Get the files from a folder via the "Load Directory" via Awt Filedialog
+     * Get the folder for the "Load Directory" via Awt Filedialog. Subfolders are loaded according to the preference
+     * set by the JFilechooser variant
      */
-    public static File[] getFolderFilesAwt(JPanel myComponent) {
-        File[] files = null;
+    public static File getFolderAwt(JPanel myComponent) {
         String SelectedFolder;
 
         Frame dialogframe = new Frame();
@@ -337,16 +358,13 @@ public class StandardFileIO {
 
         SelectedFolder = fdchooser.getDirectory();
         if (SelectedFolder == null) {
-            files = null;
+            return null;
         }
-        File folder = new File(SelectedFolder);
-        files = folder.listFiles();
-        MyVariables.setLoadedFiles(files);
         prefs.storeByKey(LAST_OPENED_FOLDER, fdchooser.getDirectory());
         /*if (os == APPLE) {
             System.setProperty("apple.awt.fileDialogForDirectories", "false");
         }*/
-        return files;
+        return new File(SelectedFolder);
     }
 
     /*
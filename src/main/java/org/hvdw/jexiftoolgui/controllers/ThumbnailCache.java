@@ -0,0 +1,198 @@
+package org.hvdw.jexiftoolgui.controllers;
+
+import org.hvdw.jexiftoolgui.MyConstants;
+import org.hvdw.jexiftoolgui.facades.SystemPropertyFacade;
+import org.slf4j.LoggerFactory;
+
+import javax.imageio.ImageIO;
+import javax.swing.*;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+
+import static org.hvdw.jexiftoolgui.facades.SystemPropertyFacade.SystemPropertyKey.USER_HOME;
+
+/**
+ * Persistent cache for the icons in the left file table.
+ * The icons are stored as png in {user home}/jexiftoolgui_data/thumbnails, with a file name that
+ * is the hash of the canonical path, file size and last modified time of the image. A changed image
+ * simply gets a new key, the old icon is removed by the LRU eviction when the cache grows too big.
+ */
+public class ThumbnailCache {
+    private final static ch.qos.logback.classic.Logger logger = (ch.qos.logback.classic.Logger) LoggerFactory.getLogger(ThumbnailCache.class);
+
+    private static final String CACHE_FOLDER = SystemPropertyFacade.getPropertyByKey(USER_HOME) + File.separator + MyConstants.MY_DATA_FOLDER + File.separator + "thumbnails";
+    private static final String EXTENSION = ".png";
+    private static final String TMP_EXTENSION = ".tmp";
+    // Temp files this old are left over from a crashed session, not being written right now
+    private static final long STALE_TMP_MILLIS = 60 * 60 * 1000L;
+
+    // key -> size in bytes. In access order, so the first entry is the least recently used one
+    private static LinkedHashMap<String, Long> index = null;
+    private static long totalBytes = 0;
+
+    private ThumbnailCache() {}
+
+    /*
+     * Returns the cached icon for this file or null if we don't have it (yet)
+     */
+    public static ImageIcon get(File file) {
+        String key = cacheKey(file);
+        synchronized (ThumbnailCache.class) {
+            if (!getIndex().containsKey(key)) {
+                return null;
+            }
+            // touch it, so it is the most recently used one
+            getIndex().get(key);
+        }
+        File cachedFile = new File(CACHE_FOLDER, key + EXTENSION);
+        try {
+            BufferedImage img = ImageIO.read(cachedFile);
+            if (img != null) {
+                // Also store the "use" on disk for the LRU order of the next session
+                cachedFile.setLastModified(System.currentTimeMillis());
+                return new ImageIcon(img);
+            }
+        } catch (IOException e) {
+            logger.debug("Can not read cached thumbnail {}: {}", cachedFile.getPath(), e.toString());
+        }
+        remove(key);
+        return null;
+    }
+
+    public static boolean contains(File file) {
+        String key = cacheKey(file);
+        synchronized (ThumbnailCache.class) {
+            return getIndex().containsKey(key);
+        }
+    }
+
+    /*
+     * Stores the icon for this file and evicts the least recently used icons when the cache is too big
+     */
+    public static void put(File file, ImageIcon icon) {
+        if ((icon == null) || (icon.getIconWidth() <= 0) || (icon.getIconHeight() <= 0)) {
+            return;
+        }
+        String key = cacheKey(file);
+        BufferedImage img;
+        if (icon.getImage() instanceof BufferedImage) {
+            img = (BufferedImage) icon.getImage();
+        } else {
+            img = new BufferedImage(icon.getIconWidth(), icon.getIconHeight(), BufferedImage.TYPE_INT_ARGB);
+            Graphics2D g2 = img.createGraphics();
+            icon.paintIcon(null, g2, 0, 0);
+            g2.dispose();
+        }
+        File tmpFile = null;
+        try {
+            File folder = new File(CACHE_FOLDER);
+            Files.createDirectories(folder.toPath());
+            // Write to a temp file first: other threads may read this key at the same time
+            tmpFile = File.createTempFile(key, TMP_EXTENSION, folder);
+            if (!ImageIO.write(img, "png", tmpFile)) {
+                throw new IOException("no png writer for this image");
+            }
+            File cachedFile = new File(folder, key + EXTENSION);
+            Files.move(tmpFile.toPath(), cachedFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            synchronized (ThumbnailCache.class) {
+                Long previous = getIndex().put(key, cachedFile.length());
+                if (previous != null) {
+                    totalBytes -= previous;
+                }
+                totalBytes += cachedFile.length();
+                evict();
+            }
+        } catch (IOException e) {
+            logger.error("Can not write thumbnail to the cache: {}", e.toString());
+        } finally {
+            // Only still there when writing or moving it failed. The index doesn't know it, so it would never be evicted
+            if (tmpFile != null) {
+                tmpFile.delete();
+            }
+        }
+    }
+
+    private static void remove(String key) {
+        synchronized (ThumbnailCache.class) {
+            Long size = getIndex().remove(key);
+            if (size != null) {
+                totalBytes -= size;
+            }
+        }
+        new File(CACHE_FOLDER, key + EXTENSION).delete();
+    }
+
+    // Must be called while holding the lock
+    private static void evict() {
+        Iterator<Map.Entry<String, Long>> it = index.entrySet().iterator();
+        while ((totalBytes > MyConstants.THUMBNAIL_CACHE_MAX_BYTES) && it.hasNext()) {
+            Map.Entry<String, Long> eldest = it.next();
+            totalBytes -= eldest.getValue();
+            new File(CACHE_FOLDER, eldest.getKey() + EXTENSION).delete();
+            it.remove();
+        }
+    }
+
+    /*
+     * The index is built once from the cache folder, oldest (least recently used) files first
+     */
+    private static LinkedHashMap<String, Long> getIndex() {
+        if (index == null) {
+            index = new LinkedHashMap<>(1024, 0.75f, true);
+            totalBytes = 0;
+            File[] cachedFiles = new File(CACHE_FOLDER).listFiles((dir, name) -> name.endsWith(EXTENSION));
+            if (cachedFiles != null) {
+                Arrays.sort(cachedFiles, Comparator.comparingLong(File::lastModified));
+                for (File cachedFile : cachedFiles) {
+                    String name = cachedFile.getName();
+                    index.put(name.substring(0, name.length() - EXTENSION.length()), cachedFile.length());
+                    totalBytes += cachedFile.length();
+                }
+            }
+            File[] staleTmpFiles = new File(CACHE_FOLDER).listFiles((dir, name) -> name.endsWith(TMP_EXTENSION));
+            if (staleTmpFiles != null) {
+                for (File staleTmpFile : staleTmpFiles) {
+                    if (System.currentTimeMillis() - staleTmpFile.lastModified() > STALE_TMP_MILLIS) {
+                        staleTmpFile.delete();
+                    }
+                }
+            }
+            logger.debug("thumbnail cache: {} icons, {} bytes", index.size(), totalBytes);
+            evict();
+        }
+        return index;
+    }
+
+    /*
+     * Key is the sha-1 of canonical path, file size and modification time
+     */
+    static String cacheKey(File file) {
+        String path;
+        try {
+            path = file.getCanonicalPath();
+        } catch (IOException e) {
+            path = file.getAbsolutePath();
+        }
+        String keySource = path + "|" + file.length() + "|" + file.lastModified();
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            byte[] hash = digest.digest(keySource.getBytes(StandardCharsets.UTF_8));
+            StringBuilder key = new StringBuilder();
+            for (byte b : hash) {
+                key.append(String.format("%02x", b));
+            }
+            return key.toString();
+        } catch (NoSuchAlgorithmException e) {
+            // SHA-1 is always available, but just in case
+            return Integer.toHexString(keySource.hashCode()) + "_" + file.length();
+        }
+    }
+}
@@ -7,6 +7,7 @@ import org.hvdw.jexiftoolgui.controllers.CommandRunner;
 import org.hvdw.jexiftoolgui.controllers.SQLiteJDBC;
 import org.hvdw.jexiftoolgui.facades.IPreferencesFacade;
 import org.hvdw.jexiftoolgui.facades.SystemPropertyFacade;
+import org.hvdw.jexiftoolgui.model.SQLiteModel;
 import org.slf4j.LoggerFactory;
 
 import javax.swing.*;
@@ -82,8 +83,7 @@ public class EditUserDefinedCombis {
 
     public void UpdateCustomConfigLabel(JComboBox combicombobox, JLabel customconfiglabel) {
         String setName = combicombobox.getSelectedItem().toString();
-        String sql = "select custom_config from custommetadataset where customset_name='" + setName.trim() + "'";
-        String queryResult = SQLiteJDBC.singleFieldQuery(sql, "custom_config").trim();
+        String queryResult = SQLiteModel.getCustomSetConfigFile(setName.trim());
         if ("".equals(queryResult) || queryResult.isEmpty() || "null".equals(queryResult)) {
             customconfiglabel.setText("");
             strcustomconfigfile = "";
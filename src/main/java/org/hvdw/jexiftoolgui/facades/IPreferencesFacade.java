@@ -28,7 +28,11 @@ public interface IPreferencesFacade {
         LATITUDE("latitude"), // latitude for mapviewer screen
         LONGITUDE("longitude"),
         SORT_CATEGORIES_TAGS("sortcategoriestags"),
-        ENABLE_STRUCTS("enable_struct_output")
+        ENABLE_STRUCTS("enable_struct_output"),
+        MAX_WORKER_THREADS("maxworkerthreads"), // cap for the number of parallel exiftool/icon workers
+        LOAD_SUBFOLDERS("loadsubfolders"), // also load the files in the subfolders of a loaded folder
+        WATCH_LOADED_FOLDERS("watchloadedfolders"), // refresh the files that other programs change in the loaded folders
+        GEONAMES_FILE("geonamesfile") // GeoNames places file for the offline reverse geocoding
         ;
 
         public final String key;
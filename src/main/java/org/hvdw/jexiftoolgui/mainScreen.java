@@ -2903,9 +2903,7 @@ private String getSeparatorString() {
             @Override
             public void actionPerformed(ActionEvent actionEvent) {
                 logger.info("buttonCompare pressed");
-                if (selectedIndicesList.size() > 25) {
-                    JOptionPane.showMessageDialog(rootPanel, String.format(ProgramTexts.HTML, 200, ResourceBundle.getBundle("translations/program_strings").getString("msd.max25imgslong")), ResourceBundle.getBundle("translations/program_strings").getString("msd.max25imgs"), JOptionPane.WARNING_MESSAGE);
-                } else if ( !(selectedIndicesList == null) && (selectedIndicesList.size() > 0) ) {
+                if ( !(selectedIndicesList == null) && (selectedIndicesList.size() > 0) ) {
                     //List<String[]> allMetadata = CompareImages.CompareImages(selectedIndicesList, whichRBselected(), progressBar, OutputLabel);
                     CompareImages.CompareImages(selectedIndicesList, whichRBselected(), progressBar, OutputLabel);
                     //CompareImagesWindow.Initialize(allMetadata);
@@ -3666,6 +3664,7 @@ private String getSeparatorString() {
             if (lsm.isSelectionEmpty()) {
                 logger.debug("no index selected");
             } else {
+                int previousRow = SelectedRow;
                 // Find out which indexes are selected.
                 int minIndex = lsm.getMinSelectionIndex();
                 int maxIndex = lsm.getMaxSelectionIndex();
@@ -3685,6 +3684,8 @@ private String getSeparatorString() {
                     lblFileNamePath.setText(" ");
                 } else {
                     lblFileNamePath.setText(files[selectedRow].getPath());
+                    // Browsing with the arrow keys: read the next rows while the user looks at this one
+                    Prefetcher.prefetchImageInfo(params, selectedRow, selectedRow - previousRow);
                 }
 
                 selectedIndices = tmpselectedIndices.stream().mapToInt(Integer::intValue).toArray();
@@ -3857,6 +3858,9 @@ private String getSeparatorString() {
                 StandardFileIO.deleteDirectory(new File (MyVariables.gettmpWorkFolder()) );
                 GuiConfig.SaveGuiConfig(frame, rootPanel, splitPanel);
                 CompareImages.CleanUp();
+                JobScheduler.shutdown();
+                SQLiteJDBC.close();
+                ExifToolPool.shutdown();
                 System.exit(0);
             }
         });
@@ -4,8 +4,9 @@ import ch.qos.logback.classic.Logger;
 import org.hvdw.jexiftoolgui.MyVariables;
 import org.hvdw.jexiftoolgui.ProgramTexts;
 import org.hvdw.jexiftoolgui.controllers.CommandRunner;
+import org.hvdw.jexiftoolgui.controllers.JobScheduler;
 import org.hvdw.jexiftoolgui.Utils;
-import org.hvdw.jexiftoolgui.controllers.SQLiteJDBC;
+import org.hvdw.jexiftoolgui.model.SQLiteModel;
 import org.hvdw.jexiftoolgui.facades.IPreferencesFacade;
 import org.hvdw.jexiftoolgui.view.SimpleWebView;
 import org.slf4j.LoggerFactory;
@@ -15,9 +16,11 @@ import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.*;
-import java.util.concurrent.Executor;
-import java.util.concurrent.Executors;
 
 import static org.hvdw.jexiftoolgui.facades.IPreferencesFacade.PreferenceKey.PRESERVE_MODIFY_DATE;
 
@@ -33,7 +36,6 @@ public class ExportMetadata {
     } */
     public static void writeExport(JPanel rootPanel, JRadioButton[] GeneralExportRadiobuttons, JCheckBox[] GeneralExportCheckButtons, JComboBox exportUserCombicomboBox, JProgressBar progressBar, String ExpImgFoldertextField, boolean includeSubFolders) {
         boolean atLeastOneSelected = false;
-        final BufferedWriter[] writer = new BufferedWriter[1];
         List<String> params = new ArrayList<String>();
         List<String> cmdparams = new ArrayList<String>(); // We need this for the csv option
         String filepath = ""; // Again: we need this for the csv option
@@ -114,8 +116,7 @@ public class ExportMetadata {
             atLeastOneSelected = true; // if we use the drop-down always one item is selected
             String SelectedCombi = exportUserCombicomboBox.getSelectedItem().toString();
             logger.debug("selected metadata set for export {}", SelectedCombi);
-            String sql = "select tag from custommetadatasetLines where customset_name='" + SelectedCombi + "' order by rowcount";
-            String queryResult = SQLiteJDBC.singleFieldQuery(sql, "tag");
+            String queryResult = SQLiteModel.getCustomSetTags(SelectedCombi);
             if (queryResult.length() > 0) {
                 String[] customTags = queryResult.split("\\r?\\n");
                 logger.debug("queryResult {}", queryResult);
@@ -167,6 +168,8 @@ public class ExportMetadata {
                     params.add("xmpexport"); */
                 } else if (csvRadioButton.isSelected()) {
                     params.add("-csv");
+                    // exiftool reports every processed file as "[n/total]", which we use for a determinate progress bar
+                    params.add("-progress");
                 }
 
                 // Use files from previews or a folder
@@ -178,11 +181,7 @@ public class ExportMetadata {
                         params.add("-r");
                     }
                     if (isWindows) {
-                        if (csvRadioButton.isSelected()) {
-                            params.add("\"" + ExpImgFoldertextField.replace("\\", "/") + "\"");
-                        } else {
-                            params.add(ExpImgFoldertextField.replace("\\", "/"));
-                        }
+                        params.add(ExpImgFoldertextField.replace("\\", "/"));
                     } else {
                         params.add(ExpImgFoldertextField);
                     }
@@ -190,10 +189,9 @@ public class ExportMetadata {
                     for (int index : selectedIndices) {
                         //logger.info("index: {}  image path: {}", index, files[index].getPath());
                         if (isWindows) {
-                            if (csvRadioButton.isSelected()) {
-                                params.add("\"" + files[index].getPath().replace("\\", "/") + "\"");
-                            } else {
-                                params.add(files[index].getPath().replace("\\", "/"));
+                            // No extra quotes for csv: the arguments are passed as separate parameters, not via a shell
+                            params.add(files[index].getPath().replace("\\", "/"));
+                            if (!csvRadioButton.isSelected()) {
                                 //createdExportFiles += files[index].getParent() + File.separator + files[index].getName() + "<br>";
                                 createdExportFiles += files[index].getParent() + File.separator + Utils.getFileNameWithoutExtension(files[index].getName()) + createdExportFileExtension + "<br>";
                             }
@@ -214,7 +212,7 @@ public class ExportMetadata {
 
                 // Originally for csv we needed the > character to redirect output to a csv file, which we need to treat specially and differently on unixes and windows.
                 // We also really needed the shell for it otherwise the > is seen as a file
-                // We now read the output into a string and write that string to file with a bufferedwriter
+                // We now stream the output line by line into the csv file with a bufferedwriter (see writeCsvExport)
                 if (csvRadioButton.isSelected()) {
                     if (isWindows) {
                         cmdparams.add(params.toString().substring(1, params.toString().length() - 1).replaceAll(", ", " "));
@@ -230,10 +228,9 @@ public class ExportMetadata {
                 // Export metadata
                 if (!csvRadioButton.isSelected()) {
                     //CommandRunner.runCommandWithProgressBar(params, progressBar);
-                    Executor executor = Executors.newSingleThreadExecutor();
                     String finalCreatedExportFiles = createdExportFiles;
                     int finalCounter = counter;
-                    executor.execute(new Runnable() {
+                    JobScheduler.submit(ResourceBundle.getBundle("translations/program_strings").getString("jobs.exportmetadata"), JobScheduler.Priority.BULK, new Runnable() {
                         @Override
                         public void run() {
                             try {
@@ -264,46 +261,30 @@ public class ExportMetadata {
                     });
                 } else {
                     logger.debug("CSV export requested");
-                    final String[] outcsv = new String[1];
+                    final String outcsv;
+                    if (!("".equals(ExpImgFoldertextField))) { // folder takes precedence over preview files
+                        outcsv = ExpImgFoldertextField + File.separator + "out.csv";
+                    } else {
+                        outcsv = filepath + File.separator + "out.csv";
+                    }
 
-                    Executor executor = Executors.newSingleThreadExecutor();
-                    String finalCreatedExportFiles = createdExportFiles;
-                    int finalCounter = counter;
-                    String finalFilepath = filepath;
-                    executor.execute(new Runnable() {
+                    JobScheduler.submit(ResourceBundle.getBundle("translations/program_strings").getString("jobs.exportcsv"), JobScheduler.Priority.BULK, new Runnable() {
                         @Override
                         public void run() {
                             try {
                                 try {
-                                    String result = CommandRunner.runCommand(params);
-                                    progressBar.setVisible(false);
-                                    logger.trace("\n\n\nresult {}", result);
-                                    if (!("".equals(ExpImgFoldertextField))) { // folder takes precedence over preview files
-                                        // do something
-                                        if (isWindows) {
-                                            writer[0] = new BufferedWriter(new FileWriter(ExpImgFoldertextField.replace("\\", "/") + File.separator + "out.csv"));
-                                            outcsv[0] = ExpImgFoldertextField.replace("\\", "/") + File.separator + "out.csv";
-                                        } else {
-                                            writer[0] = new BufferedWriter(new FileWriter(ExpImgFoldertextField + File.separator + "out.csv"));
-                                            outcsv[0] = ExpImgFoldertextField + File.separator + "out.csv";
-                                        }
-                                        writer[0].write(result);
-                                        writer[0].close();
-                                    } else {
-                                        if (isWindows) {
-                                            writer[0] = new BufferedWriter(new FileWriter(finalFilepath.replace("\\", "/") + File.separator + "out.csv"));
-                                            outcsv[0] = finalFilepath.replace("\\", "/") + File.separator + "out.csv";
-                                        } else {
-                                            writer[0] = new BufferedWriter(new FileWriter(finalFilepath + File.separator + "out.csv"));
-                                            outcsv[0] = finalFilepath + File.separator + "out.csv";
-                                        }
-                                        writer[0].write(result);
-                                        writer[0].close();
-                                    }
-                                    JOptionPane.showMessageDialog(rootPanel, String.format(ProgramTexts.HTML, 400, (ResourceBundle.getBundle("translations/program_strings").getString("emd.expfiles") + ":<br><br>" + outcsv[0]), ResourceBundle.getBundle("translations/program_strings").getString("emd.expfiles"), JOptionPane.INFORMATION_MESSAGE));
+                                    // The csv lines go straight from exiftool to disk: memory use does not depend on the number of files
+                                    writeCsvExport(params, Paths.get(outcsv), progressBar);
+                                    JOptionPane.showMessageDialog(rootPanel, String.format(ProgramTexts.HTML, 400, (ResourceBundle.getBundle("translations/program_strings").getString("emd.expfiles") + ":<br><br>" + outcsv), ResourceBundle.getBundle("translations/program_strings").getString("emd.expfiles"), JOptionPane.INFORMATION_MESSAGE));
                                 } catch (InterruptedException | IOException e) {
                                     e.printStackTrace();
                                     logger.error("metadata export failed with error {}", e);
+                                } finally {
+                                    SwingUtilities.invokeLater(() -> {
+                                        progressBar.setVisible(false);
+                                        progressBar.setIndeterminate(true);
+                                        progressBar.setStringPainted(false);
+                                    });
                                 }
                             } catch (Exception ex) {
                                 logger.debug("Error executing command");
@@ -324,6 +305,22 @@ public class ExportMetadata {
         }
     }
 
+    /**
+     * Runs the csv export and writes the exiftool output line by line into the csv file while exiftool is running.
+     * The "[n/total]" progress lines of exiftool (-progress) are not written but shown in the progress bar.
+     * @param params
+     * @param outcsv
+     * @param progressBar
+     */
+    static void writeCsvExport(List<String> params, Path outcsv, JProgressBar progressBar) throws IOException, InterruptedException {
+        try (BufferedWriter writer = Files.newBufferedWriter(outcsv, StandardCharsets.UTF_8)) {
+            CommandRunner.runCommand(params, line -> {
+                writer.write(line);
+                writer.newLine();
+            }, CommandRunner.progressBarListener(progressBar));
+        }
+    }
+
     /**
      * This method is indirectly called from the "Compare images" screen. That screens opens a popup request the format to export to
      * @param allMetadata
@@ -2,6 +2,7 @@ package org.hvdw.jexiftoolgui.metadata;
 
 import org.hvdw.jexiftoolgui.*;
 import org.hvdw.jexiftoolgui.controllers.CommandRunner;
+import org.hvdw.jexiftoolgui.controllers.JobScheduler;
 import org.hvdw.jexiftoolgui.facades.IPreferencesFacade;
 import org.hvdw.jexiftoolgui.facades.SystemPropertyFacade;
 import org.slf4j.Logger;
@@ -13,6 +14,12 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.ResourceBundle;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import static org.hvdw.jexiftoolgui.facades.IPreferencesFacade.PreferenceKey.PRESERVE_MODIFY_DATE;
 import static org.hvdw.jexiftoolgui.facades.SystemPropertyFacade.SystemPropertyKey.USER_HOME;
@@ -214,7 +221,6 @@ public class MetaData {
     }
 
     public void copyInsideMetaData(JPanel rootpanel, JRadioButton[] InsideCopyMetaDataRadiobuttons, JRadioButton[] InsideSubCopyMetaDataRadiobuttons, JCheckBox[] InsideCopyMetaDataCheckBoxes, JLabel OutputLabel) {
-        StringBuilder TotalOutput = new StringBuilder();
         int selectedIndices[] = MyVariables.getSelectedFilenamesIndices();
         File[] files = MyVariables.getLoadedFiles();
         String strjexiftoolguiARGSfolder = SystemPropertyFacade.getPropertyByKey(USER_HOME) + File.separator + MyConstants.MY_DATA_FOLDER + File.separator + "args";
@@ -330,44 +336,155 @@ public class MetaData {
                 int choice = JOptionPane.showOptionDialog(null, Message, ResourceBundle.getBundle("translations/program_strings").getString("copyd.dlgtitle"),
                         JOptionPane.DEFAULT_OPTION, JOptionPane.QUESTION_MESSAGE, null, options, options[0]);
                 if (choice == 1) { //Yes
-                    OutputLabel.setText(ResourceBundle.getBundle("translations/program_strings").getString("pt.inscopytagtotag"));
-                    // Copy metadata
-                    String[] etparams = params.toArray(new String[0]);
-                    for (int index : selectedIndices) {
-                        List<String> cmdparams = new ArrayList<String>();
-                        boolean isWindows = Utils.isOsFromMicrosoft();
-                        cmdparams.add(Utils.platformExiftool());
-                        cmdparams.add("-Tagsfromfile");
+                    // Copy metadata: one "-Tagsfromfile" command per image, on several (warm) exiftool processes in parallel
+                    copyInsideMetaDataInParallel(rootpanel, files, selectedIndices, params, OutputLabel);
+                }
+            } else {
+                JOptionPane.showMessageDialog(rootpanel, ProgramTexts.NoOptionSelected, "No copy option selected", JOptionPane.WARNING_MESSAGE);
+            }
+        }
+    }
 
-                        //logger.info("index: {}  image path: {}", index, files[index].getPath());
-                        if (isWindows) {
-                            cmdparams.add(files[index].getPath().replace("\\", "/"));
-                            cmdparams.addAll(params);
-                            cmdparams.add(files[index].getPath().replace("\\", "/"));
+
+
+
+
+    /*
+     * Runs the tag-to-tag copy for all selected images as one background job, on a pool of workers, with a cancellable progress monitor.
+     * Afterwards a summary (updated/unchanged/failed/skipped files and the errors and warnings) is shown instead of the complete output.
+     * Cancelling the job (or the monitor) skips the copies that did not start yet.
+     */
+    private static void copyInsideMetaDataInParallel(JPanel rootpanel, File[] files, int[] selectedIndices, List<String> params, JLabel OutputLabel) {
+        ProgressMonitor monitor = new ProgressMonitor(rootpanel, ResourceBundle.getBundle("translations/program_strings").getString("copyd.progress"), "", 0, selectedIndices.length);
+        AtomicInteger started = new AtomicInteger(0);
+        AtomicInteger processed = new AtomicInteger(0);
+        AtomicBoolean cancelled = new AtomicBoolean(false);
+        CopySummary summary = new CopySummary();
+        boolean isWindows = Utils.isOsFromMicrosoft();
+
+        // The copies are the work of the job itself: a job cancelled while still queued has not copied anything
+        JobScheduler.submit(ResourceBundle.getBundle("translations/program_strings").getString("jobs.copyinside"), JobScheduler.Priority.BULK, () -> {
+            SwingUtilities.invokeLater(() -> OutputLabel.setText(ResourceBundle.getBundle("translations/program_strings").getString("pt.inscopytagtotag")));
+            ExecutorService workers = JobScheduler.newTaskGroup();
+            for (int index : selectedIndices) {
+                workers.execute(() -> {
+                    started.incrementAndGet();
+                    if (cancelled.get() || JobScheduler.isCancelled()) {
+                        summary.skipped(1);
+                        return;
+                    }
+                    List<String> cmdparams = new ArrayList<String>();
+                    String fpath = isWindows ? files[index].getPath().replace("\\", "/") : files[index].getPath();
+                    cmdparams.add(Utils.platformExiftool());
+                    cmdparams.add("-Tagsfromfile");
+                    cmdparams.add(fpath);
+                    cmdparams.addAll(params);
+                    cmdparams.add(fpath);
+                    logger.debug("insidecopy command {}", cmdparams.toString());
+                    try {
+                        String res = CommandRunner.runCommand(cmdparams);
+                        logger.debug("res is\n{}", res);
+                        summary.add(files[index].getName(), res);
+                    } catch (IOException | InterruptedException ex) {
+                        if (cancelled.get() || JobScheduler.isCancelled()) {
+                            summary.skipped(1);
                         } else {
-                            cmdparams.add(files[index].getPath());
-                            cmdparams.addAll(params);
-                            cmdparams.add(files[index].getPath().replace("\\", "/"));
-                        }
-                        logger.debug("insidecopy command {}", cmdparams.toString());
-                        try {
-                            String res = CommandRunner.runCommand(cmdparams);
-                            logger.debug("res is\n{}", res);
-                            TotalOutput.append(res);
-                        } catch (IOException | InterruptedException ex) {
                             logger.debug("Error executing command");
+                            summary.add(files[index].getName(), "Error: " + ex.getMessage());
                         }
                     }
+                    int done = processed.incrementAndGet();
+                    SwingUtilities.invokeLater(() -> {
+                        if (monitor.isCanceled()) {
+                            cancelled.set(true);
+                        }
+                        monitor.setProgress(done);
+                        monitor.setNote(ResourceBundle.getBundle("translations/program_strings").getString("copyd.progressfiles") + " " + done + " / " + selectedIndices.length);
+                    });
+                });
+            }
+            workers.shutdown();
+            try {
+                workers.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+            } catch (InterruptedException e) {
+                logger.info("tag copy cancelled as background job");
+                cancelled.set(true);
+                // Cancelling the job already dropped the copies that did not start yet (see JobScheduler.Job.cancel)
+                workers.shutdownNow();
+                // Let the running copies add their result, so the summary is complete
+                try {
+                    workers.awaitTermination(1, TimeUnit.MINUTES);
+                } catch (InterruptedException ie) {
+                    logger.debug("not waiting for the running copies");
                 }
-                CommandRunner.outputAfterCommand(TotalOutput.toString());
-            } else {
-                JOptionPane.showMessageDialog(rootpanel, ProgramTexts.NoOptionSelected, "No copy option selected", JOptionPane.WARNING_MESSAGE);
             }
-        }
+            // The copies that never started
+            summary.skipped(selectedIndices.length - started.get());
+            SwingUtilities.invokeLater(() -> {
+                monitor.close();
+                OutputLabel.setText("");
+                CommandRunner.outputAfterCommand(summary.toString());
+            });
+        });
     }
 
+    /*
+     * Collects the results of the exiftool copy commands
+     */
+    private static class CopySummary {
+        private static final int MAX_MESSAGES = 50;
+        private static final Pattern UPDATED = Pattern.compile("^\\s*(\\d+) image files updated");
+        private static final Pattern UNCHANGED = Pattern.compile("^\\s*(\\d+) image files unchanged");
+        private static final Pattern FAILED = Pattern.compile("^\\s*(\\d+) files weren't updated due to errors");
 
+        private int updated = 0;
+        private int unchanged = 0;
+        private int failed = 0;
+        private int skipped = 0;
+        private int messageCount = 0;
+        private final StringBuilder messages = new StringBuilder();
 
+        synchronized void add(String filename, String output) {
+            for (String line : output.split("\\r?\\n")) {
+                Matcher matcher;
+                if ((matcher = UPDATED.matcher(line)).find()) {
+                    updated += Integer.parseInt(matcher.group(1));
+                } else if ((matcher = UNCHANGED.matcher(line)).find()) {
+                    unchanged += Integer.parseInt(matcher.group(1));
+                } else if ((matcher = FAILED.matcher(line)).find()) {
+                    failed += Integer.parseInt(matcher.group(1));
+                } else if (line.startsWith("Error") || line.startsWith("Warning")) {
+                    messageCount++;
+                    if (messageCount <= MAX_MESSAGES) {
+                        messages.append(filename).append(": ").append(line).append(System.lineSeparator());
+                    }
+                }
+            }
+        }
 
+        synchronized void skipped(int count) {
+            skipped += count;
+        }
+
+        @Override
+        public synchronized String toString() {
+            ResourceBundle strings = ResourceBundle.getBundle("translations/program_strings");
+            StringBuilder summary = new StringBuilder();
+            summary.append(strings.getString("copyd.sumupdated")).append(" ").append(updated).append(System.lineSeparator());
+            summary.append(strings.getString("copyd.sumunchanged")).append(" ").append(unchanged).append(System.lineSeparator());
+            summary.append(strings.getString("copyd.sumerrors")).append(" ").append(failed).append(System.lineSeparator());
+            if (skipped > 0) {
+                summary.append(strings.getString("copyd.sumcancelled")).append(" ").append(skipped).append(System.lineSeparator());
+            }
+            if (messageCount > 0) {
+                summary.append(System.lineSeparator()).append(strings.getString("copyd.summessages")).append(System.lineSeparator());
+                summary.append(messages);
+                if (messageCount > MAX_MESSAGES) {
+                    summary.append("... (").append(messageCount - MAX_MESSAGES).append(" more)").append(System.lineSeparator());
+                }
+            }
+            return summary.toString();
+        }
+    }
 
 }
@@ -0,0 +1,256 @@
+package org.hvdw.jexiftoolgui.metadata;
+
+import java.util.*;
+
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * Inverted trigram index on the tags and values in MyVariables.imagesData, used by SearchMetaData.
+ * Every distinct (lower case) tag name or value is a "term". The index maps each 3-character
+ * gram to the terms containing it, and each term to the "cells" (image + tag) where it occurs as tag or as value.
+ * A search only has to check the terms that contain all grams of the search phrase, instead of every tag of every image.
+ * The index is updated from ImageFunctions whenever image data is (re)read into imagesData.
+ */
+public class MetadataSearchIndex {
+    private final static ch.qos.logback.classic.Logger logger = (ch.qos.logback.classic.Logger) getLogger(MetadataSearchIndex.class);
+
+    private static final int GRAM = 3;
+
+    // Terms: lower case text -> term id
+    private static final HashMap<String, Integer> termIds = new HashMap<>();
+    private static final List<String> terms = new ArrayList<>();
+    // gram -> ids of the terms containing the gram. Term ids are handed out in increasing order, so these lists are sorted
+    private static final HashMap<String, IntList> gramTerms = new HashMap<>();
+    // term id -> cells where the term is the tag name, respectively the value
+    private static final List<IntList> keyCells = new ArrayList<>();
+    private static final List<IntList> valueCells = new ArrayList<>();
+
+    // Cells: cell id -> image, tag name and value
+    private static final List<String> cellImage = new ArrayList<>();
+    private static final List<String> cellKey = new ArrayList<>();
+    private static final List<String> cellValue = new ArrayList<>();
+    // Cells of images that were updated or removed
+    private static final BitSet deadCells = new BitSet();
+    private static int deadCount = 0;
+    // image -> its (live) cells
+    private static final HashMap<String, IntList> imageCells = new HashMap<>();
+
+    private MetadataSearchIndex() {}
+
+    /*
+     * Called when a new set of images is loaded
+     */
+    public static synchronized void clear() {
+        termIds.clear();
+        terms.clear();
+        gramTerms.clear();
+        keyCells.clear();
+        valueCells.clear();
+        cellImage.clear();
+        cellKey.clear();
+        cellValue.clear();
+        deadCells.clear();
+        deadCount = 0;
+        imageCells.clear();
+    }
+
+    public static synchronized int indexedImages() {
+        return imageCells.size();
+    }
+
+    /*
+     * (Re)indexes the tags and values of one image. The previous data of this image is dropped.
+     */
+    public static synchronized void put(String image, Map<String, String> tagsValues) {
+        remove(image);
+        IntList cells = new IntList();
+        for (Map.Entry<String, String> entry : tagsValues.entrySet()) {
+            String key = entry.getKey();
+            String value = (entry.getValue() == null) ? "" : entry.getValue();
+            int cell = cellImage.size();
+            cellImage.add(image);
+            cellKey.add(key);
+            cellValue.add(value);
+            cells.add(cell);
+            keyCells.get(termId(key.toLowerCase())).add(cell);
+            valueCells.get(termId(value.toLowerCase())).add(cell);
+        }
+        imageCells.put(image, cells);
+    }
+
+    public static synchronized void remove(String image) {
+        IntList cells = imageCells.remove(image);
+        if (cells == null) {
+            return;
+        }
+        for (int i = 0; i < cells.size; i++) {
+            deadCells.set(cells.values[i]);
+        }
+        deadCount += cells.size;
+        // Don't let edits grow the index forever
+        if ((deadCount > 10000) && (deadCount > cellImage.size() / 2)) {
+            compact();
+        }
+    }
+
+    /*
+     * Returns the matching lines in the format SearchMetaData always used:
+     * "image\tkey-value\tkey\tvalue" when the tag name matches, "image\tvalue-key\tvalue\tkey" when the value matches.
+     * Ranked: exact matches first, then the ones starting with the search phrase, then the ones containing it.
+     * Within a rank the lines are sorted alphabetically.
+     */
+    public static synchronized List<String> search(String searchPhrase) {
+        long start = System.nanoTime();
+        String phrase = searchPhrase.toLowerCase();
+        List<Hit> hits = new ArrayList<>();
+        if (phrase.isEmpty()) {
+            return new ArrayList<>();
+        }
+        IntList candidates = candidateTerms(phrase);
+        for (int c = 0; c < candidates.size; c++) {
+            int term = candidates.values[c];
+            String text = terms.get(term);
+            int pos = text.indexOf(phrase);
+            if (pos < 0) {
+                continue;
+            }
+            int rank = (text.length() == phrase.length()) ? 0 : ((pos == 0) ? 1 : 2);
+            IntList cells = keyCells.get(term);
+            for (int i = 0; i < cells.size; i++) {
+                int cell = cells.values[i];
+                if (!deadCells.get(cell)) {
+                    hits.add(new Hit(rank, cellImage.get(cell) + "\tkey-value\t" + cellKey.get(cell) + "\t" + cellValue.get(cell)));
+                }
+            }
+            cells = valueCells.get(term);
+            for (int i = 0; i < cells.size; i++) {
+                int cell = cells.values[i];
+                if (!deadCells.get(cell)) {
+                    hits.add(new Hit(rank, cellImage.get(cell) + "\tvalue-key\t" + cellValue.get(cell) + "\t" + cellKey.get(cell)));
+                }
+            }
+        }
+        hits.sort(Comparator.comparingInt((Hit hit) -> hit.rank).thenComparing(hit -> hit.line));
+        List<String> result = new ArrayList<>(hits.size());
+        for (Hit hit : hits) {
+            result.add(hit.line);
+        }
+        logger.debug("searched {} terms of {} images for \"{}\": {} hits in {} us", terms.size(), imageCells.size(), searchPhrase, result.size(), (System.nanoTime() - start) / 1000);
+        return result;
+    }
+
+    /*
+     * The terms that may contain the phrase: the intersection of the term lists of all grams of the phrase.
+     * Phrases shorter than a gram are checked against all (distinct) terms.
+     */
+    private static IntList candidateTerms(String phrase) {
+        if (phrase.length() < GRAM) {
+            IntList all = new IntList();
+            for (int term = 0; term < terms.size(); term++) {
+                all.add(term);
+            }
+            return all;
+        }
+        List<IntList> lists = new ArrayList<>();
+        for (String gram : grams(phrase)) {
+            IntList list = gramTerms.get(gram);
+            if (list == null) {
+                return new IntList();
+            }
+            lists.add(list);
+        }
+        // Start with the shortest list, so the intersection is as cheap as possible
+        lists.sort(Comparator.comparingInt(list -> list.size));
+        IntList result = lists.get(0);
+        for (int i = 1; i < lists.size() && result.size > 0; i++) {
+            result = result.intersect(lists.get(i));
+        }
+        return result;
+    }
+
+    private static int termId(String text) {
+        Integer id = termIds.get(text);
+        if (id != null) {
+            return id;
+        }
+        int newId = terms.size();
+        termIds.put(text, newId);
+        terms.add(text);
+        keyCells.add(new IntList());
+        valueCells.add(new IntList());
+        for (String gram : grams(text)) {
+            gramTerms.computeIfAbsent(gram, g -> new IntList()).add(newId);
+        }
+        return newId;
+    }
+
+    private static Set<String> grams(String text) {
+        Set<String> grams = new HashSet<>();
+        for (int i = 0; i + GRAM <= text.length(); i++) {
+            grams.add(text.substring(i, i + GRAM));
+        }
+        return grams;
+    }
+
+    // Rebuilds the index from the live cells only
+    private static void compact() {
+        logger.debug("compacting search index: {} of {} cells are no longer used", deadCount, cellImage.size());
+        LinkedHashMap<String, Map<String, String>> live = new LinkedHashMap<>();
+        for (Map.Entry<String, IntList> entry : imageCells.entrySet()) {
+            Map<String, String> tagsValues = new LinkedHashMap<>();
+            IntList cells = entry.getValue();
+            for (int i = 0; i < cells.size; i++) {
+                tagsValues.put(cellKey.get(cells.values[i]), cellValue.get(cells.values[i]));
+            }
+            live.put(entry.getKey(), tagsValues);
+        }
+        clear();
+        for (Map.Entry<String, Map<String, String>> entry : live.entrySet()) {
+            put(entry.getKey(), entry.getValue());
+        }
+    }
+
+    private static class Hit {
+        final int rank;
+        final String line;
+
+        Hit(int rank, String line) {
+            this.rank = rank;
+            this.line = line;
+        }
+    }
+
+    /*
+     * Growable int array. Much smaller than a List<Integer> for the millions of cells of a big folder
+     */
+    private static class IntList {
+        int[] values = new int[4];
+        int size = 0;
+
+        void add(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        // Both lists are sorted
+        IntList intersect(IntList other) {
+            IntList result = new IntList();
+            int i = 0;
+            int j = 0;
+            while (i < size && j < other.size) {
+                if (values[i] < other.values[j]) {
+                    i++;
+                } else if (values[i] > other.values[j]) {
+                    j++;
+                } else {
+                    result.add(values[i]);
+                    i++;
+                    j++;
+                }
+            }
+            return result;
+        }
+    }
+}
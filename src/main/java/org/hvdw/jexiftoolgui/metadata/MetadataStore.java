@@ -0,0 +1,259 @@
+package org.hvdw.jexiftoolgui.metadata;
+
+import java.io.File;
+import java.util.*;
+import java.util.function.BiConsumer;
+
+/**
+ * Compact in-memory store for the (basic) metadata of all loaded images: MyVariables.getimagesData().
+ * It replaces the HashMap per image, in which every image had its own copy of all tag names and its own map overhead.
+ * - Every image gets a row id, every distinct tag name is stored once and gets a column
+ * - A column stores the values of one tag for all rows:
+ *   as int[] as long as all values are whole numbers (ImageWidth, Orientation, ...),
+ *   dictionary encoded (one copy of every distinct value) when values repeat (Make, Model, ...),
+ *   or as plain String[] when nearly all values are different (dates, file names)
+ * Images are added or replaced while loading. A removed image (file deleted) leaves an empty row; clear() starts over.
+ * Images are identified by keyOf(file), their path: with subfolders loaded, the same file name in several folders is normal.
+ */
+public class MetadataStore {
+
+    private final HashMap<String, Integer> rowIds = new HashMap<>();
+    private final List<String> rowImages = new ArrayList<>();
+    private final HashMap<String, Integer> columnIds = new HashMap<>();
+    private final List<String> tagNames = new ArrayList<>();
+    private final List<Column> columns = new ArrayList<>();
+
+    /*
+     * The key of a file in the store and in the MetadataSearchIndex
+     */
+    public static String keyOf(File file) {
+        return file.getPath().replace("\\", "/");
+    }
+
+    public synchronized void clear() {
+        rowIds.clear();
+        rowImages.clear();
+        columnIds.clear();
+        tagNames.clear();
+        columns.clear();
+    }
+
+    public synchronized int size() {
+        return rowIds.size();
+    }
+
+    public synchronized boolean containsKey(String image) {
+        return rowIds.containsKey(image);
+    }
+
+    /*
+     * Adds the tags and values of an image, or replaces them when the image is already in the store
+     */
+    public synchronized void put(String image, Map<String, String> tagsValues) {
+        Integer row = rowIds.get(image);
+        if (row == null) {
+            row = rowImages.size();
+            rowIds.put(image, row);
+            rowImages.add(image);
+        } else {
+            for (Column column : columns) {
+                column.clear(row);
+            }
+        }
+        for (Map.Entry<String, String> entry : tagsValues.entrySet()) {
+            column(entry.getKey()).set(row, (entry.getValue() == null) ? "" : entry.getValue());
+        }
+    }
+
+    /*
+     * Removes the image. Its row id is not reused
+     */
+    public synchronized void remove(String image) {
+        Integer row = rowIds.remove(image);
+        if (row != null) {
+            rowImages.set(row, null);
+            for (Column column : columns) {
+                column.clear(row);
+            }
+        }
+    }
+
+    /*
+     * The tags and values of the image as a new map (null when the image is not in the store).
+     * The tag names and dictionary values in it are the shared copies of the store.
+     */
+    public synchronized HashMap<String, String> get(String image) {
+        Integer row = rowIds.get(image);
+        if (row == null) {
+            return null;
+        }
+        HashMap<String, String> tagsValues = new HashMap<>();
+        for (int columnId = 0; columnId < columns.size(); columnId++) {
+            String value = columns.get(columnId).get(row);
+            if (value != null) {
+                tagsValues.put(tagNames.get(columnId), value);
+            }
+        }
+        return tagsValues;
+    }
+
+    /*
+     * One value, without building the map of the whole image
+     */
+    public synchronized String getValue(String image, String tag) {
+        Integer row = rowIds.get(image);
+        Integer columnId = columnIds.get(tag);
+        if ((row == null) || (columnId == null)) {
+            return null;
+        }
+        return columns.get(columnId).get(row);
+    }
+
+    public synchronized List<String> images() {
+        List<String> images = new ArrayList<>(rowImages);
+        images.removeIf(Objects::isNull);
+        return images;
+    }
+
+    /*
+     * Calls the action for every image with its tags and values, in load order
+     */
+    public synchronized void forEach(BiConsumer<String, HashMap<String, String>> action) {
+        for (String image : rowImages) {
+            if (image != null) {
+                action.accept(image, get(image));
+            }
+        }
+    }
+
+    private Column column(String tag) {
+        Integer columnId = columnIds.get(tag);
+        if (columnId == null) {
+            columnId = columns.size();
+            columnIds.put(tag, columnId);
+            tagNames.add(tag);
+            columns.add(new Column());
+        }
+        return columns.get(columnId);
+    }
+
+    /*
+     * The values of one tag. Starts as int column and changes to dictionary and then to string column when needed.
+     */
+    static class Column {
+        private static final int INTEGERS = 0;
+        private static final int DICTIONARY = 1;
+        private static final int STRINGS = 2;
+        // A column changes to strings when more than 3/4 of its (at least this many) values are distinct
+        private static final int MIN_ROWS_FOR_STRINGS = 64;
+
+        private int mode = INTEGERS;
+        private final BitSet present = new BitSet();
+        private int presentCount = 0;
+        // INTEGERS: the values, DICTIONARY: the codes of the values
+        private int[] values = new int[16];
+        private HashMap<String, Integer> codes;
+        private List<String> dictionary;
+        private String[] strings;
+
+        void set(int row, String value) {
+            if ((mode == INTEGERS) && !isPlainInteger(value)) {
+                toDictionary();
+            }
+            if ((mode == DICTIONARY) && (presentCount >= MIN_ROWS_FOR_STRINGS) && (dictionary.size() > presentCount * 3 / 4)) {
+                toStrings();
+            }
+            if (!present.get(row)) {
+                present.set(row);
+                presentCount++;
+            }
+            switch (mode) {
+                case INTEGERS:
+                    ensureCapacity(row);
+                    values[row] = Integer.parseInt(value);
+                    break;
+                case DICTIONARY:
+                    ensureCapacity(row);
+                    values[row] = encode(value);
+                    break;
+                default:
+                    if (row >= strings.length) {
+                        strings = Arrays.copyOf(strings, Math.max(row + 1, strings.length * 2));
+                    }
+                    strings[row] = value;
+            }
+        }
+
+        String get(int row) {
+            if (!present.get(row)) {
+                return null;
+            }
+            switch (mode) {
+                case INTEGERS:
+                    return String.valueOf(values[row]);
+                case DICTIONARY:
+                    return dictionary.get(values[row]);
+                default:
+                    return strings[row];
+            }
+        }
+
+        void clear(int row) {
+            if (present.get(row)) {
+                present.clear(row);
+                presentCount--;
+                if (mode == STRINGS) {
+                    strings[row] = null;
+                }
+            }
+        }
+
+        // Only values that give exactly the same string back, so "007" or "+1" stay strings
+        static boolean isPlainInteger(String value) {
+            if (value.isEmpty() || (value.length() > 10)) {
+                return false;
+            }
+            try {
+                return String.valueOf(Integer.parseInt(value)).equals(value);
+            } catch (NumberFormatException e) {
+                return false;
+            }
+        }
+
+        private int encode(String value) {
+            Integer code = codes.get(value);
+            if (code == null) {
+                code = dictionary.size();
+                codes.put(value, code);
+                dictionary.add(value);
+            }
+            return code;
+        }
+
+        private void ensureCapacity(int row) {
+            if (row >= values.length) {
+                values = Arrays.copyOf(values, Math.max(row + 1, values.length * 2));
+            }
+        }
+
+        private void toDictionary() {
+            mode = DICTIONARY;
+            codes = new HashMap<>();
+            dictionary = new ArrayList<>();
+            for (int row = present.nextSetBit(0); (row >= 0) && (row < values.length); row = present.nextSetBit(row + 1)) {
+                values[row] = encode(String.valueOf(values[row]));
+            }
+        }
+
+        private void toStrings() {
+            mode = STRINGS;
+            strings = new String[values.length];
+            for (int row = present.nextSetBit(0); (row >= 0) && (row < values.length); row = present.nextSetBit(row + 1)) {
+                strings[row] = dictionary.get(values[row]);
+            }
+            values = null;
+            codes = null;
+            dictionary = null;
+        }
+    }
+}
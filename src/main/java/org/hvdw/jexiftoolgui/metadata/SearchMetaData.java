@@ -8,7 +8,6 @@ import javax.swing.*;
 import java.awt.*;
 import java.util.*;
 import java.util.List;
-import java.util.stream.Collectors;
 
 import static org.slf4j.LoggerFactory.getLogger;
 
@@ -18,36 +17,19 @@ import static org.slf4j.LoggerFactory.getLogger;
 public class SearchMetaData {
     private final static ch.qos.logback.classic.Logger logger = (ch.qos.logback.classic.Logger) getLogger(SearchMetaData.class);
 
-    HashMap<String, HashMap<String, String>> imagesData = MyVariables.getimagesData();
-
     public static List<String> searchMetaData(JPanel rootPanel, String searchPhrase) {
-        List<String> result = new ArrayList<>();
-        HashMap <String, HashMap<String, String> > imagesData = MyVariables.getimagesData();
-
-        for (Map.Entry<String, HashMap<String, String>> outerEntry: imagesData.entrySet()) {
-            String imageName = outerEntry.getKey();
-            HashMap<String, String> singleImageMetaData = outerEntry.getValue();
-
-            //now loop through the single image hashmap with the tag & value
-            Set<Map.Entry<String, String>> entrySet = singleImageMetaData.entrySet();
-            searchPhrase = searchPhrase.toLowerCase();
-            for (Map.Entry<String, String> entry: entrySet) {
-                //logger.info("imageName {}", imageName);
-                if (entry.getKey().toLowerCase().contains(searchPhrase)) {
-                    result.add(imageName + "\tkey-value\t" + entry.getKey() + "\t" + entry.getValue());
-                    logger.debug("imageName {}: found key {} with value {}", imageName, entry.getKey(), entry.getValue());
-                }
-                if (entry.getValue().toLowerCase().contains(searchPhrase)) {
-                    result.add(imageName + "\tvalue-key\t" + entry.getValue() + "\t" + entry.getKey());
-                    logger.debug("imageName {}: found value {} with corresponding key {}", imageName, entry.getValue(), entry.getKey());
-                }
-            }
-            // Now sort the list of results, if not empty
-            if (!(result.isEmpty()) && !(result == null)) {
-                result = result.stream().sorted().collect(Collectors.toList());
+        MetadataStore imagesData = MyVariables.getimagesData();
+
+        // The index is kept up to date while the images are loaded. Only (re)build it when it is out of sync
+        synchronized (imagesData) {
+            if (MetadataSearchIndex.indexedImages() != imagesData.size()) {
+                logger.debug("(re)building metadata search index for {} images", imagesData.size());
+                MetadataSearchIndex.clear();
+                imagesData.forEach(MetadataSearchIndex::put);
             }
         }
 
-        return result;
+        // Results are ranked (exact, starts with, contains) and sorted once
+        return MetadataSearchIndex.search(searchPhrase);
     }
 }
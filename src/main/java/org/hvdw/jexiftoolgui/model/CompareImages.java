@@ -2,6 +2,8 @@ package org.hvdw.jexiftoolgui.model;
 
 import org.hvdw.jexiftoolgui.MyVariables;
 import org.hvdw.jexiftoolgui.Utils;
+import org.hvdw.jexiftoolgui.controllers.CommandRunner;
+import org.hvdw.jexiftoolgui.controllers.JobScheduler;
 import org.hvdw.jexiftoolgui.controllers.SQLiteJDBC;
 import org.hvdw.jexiftoolgui.facades.SystemPropertyFacade;
 import org.hvdw.jexiftoolgui.view.CompareImagesWindow;
@@ -10,8 +12,6 @@ import javax.swing.*;
 
 import java.io.File;
 import java.util.*;
-import java.util.concurrent.Executor;
-import java.util.concurrent.Executors;
 
 import static org.hvdw.jexiftoolgui.facades.SystemPropertyFacade.SystemPropertyKey.LINE_SEPARATOR;
 import static org.slf4j.LoggerFactory.getLogger;
@@ -117,39 +117,56 @@ public class CompareImages {
     }
 
     /**
-     * Method that stores all infodata in multiple Lists
+     * Method that converts one group/tag/value row of the exiftool info into the row we store in our List
      * @param index
-     * @param exiftoolInfo
+     * @param cells
      */
-    private static List<String[]> AddToInfoRows(Integer index, String exiftoolInfo) {
-        //String sql;
-        ArrayListHolder arrayListData = new ArrayListHolder();
-        List<String[]> tmpMetadata = new ArrayList<String[]>();
-        ArrayList<String> Cat_Tag_List = new ArrayList<String>();
-        //String[] oneRow;
-        // getter Cat_Tag_List  => Cat_Tag_List = MyVariables.getCat_Tag_List
-        Cat_Tag_List = MyVariables.getcategory_tag();
-        if (exiftoolInfo.length() > 0) {
-            if (exiftoolInfo.trim().startsWith("Warning")) {
-                String[] oneRow = { "ExifTool Warning||Invalid Metadata data", String.valueOf(index), "ExifTool Warning", "Invalid Metadata data", "Error" };
-                tmpMetadata.add(oneRow);
-            } else if (exiftoolInfo.trim().startsWith("Error")) {
-                String[] oneRow = { "ExifTool Error||Invalid Metadata data", String.valueOf(index), "ExifTool Error", "Invalid Metadata data", "Error" };
-                tmpMetadata.add(oneRow);
-            } else {
-                String[] lines = exiftoolInfo.split(SystemPropertyFacade.getPropertyByKey(LINE_SEPARATOR));
-                for (String line : lines) {
-                    String[] imgInfoRow = line.split("\\t", 3);
-                    String[] oneRow = { imgInfoRow[0].trim() + "||" + imgInfoRow[1].trim(), String.valueOf(index), imgInfoRow[0].trim(), imgInfoRow[1].trim(), imgInfoRow[2].trim()};
-                    tmpMetadata.add(oneRow);
-                    String tmp = imgInfoRow[0].trim() + "||" + imgInfoRow[1].trim();
-                    //Cat_Tag_List.add( tmp );
-                }
+    private static String[] InfoRow(Integer index, String[] cells) {
+        String category = cells[0].trim();
+        String tagname = cells[1].trim();
+        return new String[]{ category + "||" + tagname, String.valueOf(index), category, tagname, cells[2].trim()};
+    }
+
+    /*
+     * Parses the exiftool info of the image with this index into our rows. A Warning or Error at the start gives the
+     * compare row {"ExifTool Warning||Invalid Metadata data", index, "ExifTool Warning", "Invalid Metadata data", "Error"}
+     */
+    static CommandRunner.LineConsumer InfoRowParser(Integer index, List<String[]> allMetadata) {
+        return Utils.infoRowParser(cells -> allMetadata.add(InfoRow(index, cells)),
+                kind -> new String[]{"ExifTool " + kind, "Invalid Metadata data", "Error"});
+    }
+
+    /**
+     * Creates the compare table from the rows of all images: one row per category||tagname sorted on category and tagname,
+     * with the category, the tagname and the value per selected image (in the order of selectedIndices, "" if the image
+     * doesn't have that tag). For a tag that exiftool returns more than once for an image, the last value is used.
+     * @param allMetadata
+     * @param selectedIndices
+     * @return
+     */
+    static List<String[]> pivotInfoRows(List<String[]> allMetadata, List<Integer> selectedIndices) {
+        int width = selectedIndices.size() + 2;
+        Map<String, Integer> columns = new HashMap<>();
+        for (int i = 0; i < selectedIndices.size(); i++) {
+            columns.put(String.valueOf(selectedIndices.get(i)), i + 2);
+        }
+        TreeMap<String, String[]> tableRows = new TreeMap<>();
+        for (String[] metadata : allMetadata) {
+            Integer column = columns.get(metadata[1]);
+            if (column == null) {
+                continue;
             }
+            String[] values = tableRows.get(metadata[0]);
+            if (values == null) {
+                values = new String[width];
+                Arrays.fill(values, "");
+                tableRows.put(metadata[0], values);
+            }
+            values[0] = metadata[2];
+            values[1] = metadata[3];
+            values[column] = metadata[4];
         }
-        //MyVariables.setcategory_tag(Cat_Tag_List);
-        //setCat_Tag_List(Cat_Tag_List);
-        return tmpMetadata;
+        return new ArrayList<>(tableRows.values());
     }
 
     //public static List<String[]> CompareImages(List<Integer> selectedIndices, String[] params, JProgressBar progressBar, JLabel outputLabel) {
@@ -157,7 +174,6 @@ public class CompareImages {
 
         List<String> cmdparams = new ArrayList<String>();
         File[] files = MyVariables.getLoadedFiles();
-        List<String> category_tagname = new ArrayList<String>();
         List<String[]> allMetadata = new ArrayList<String[]>();
         List<String[]> tableMetadata = new ArrayList<String[]>();
         String sql;
@@ -169,8 +185,7 @@ public class CompareImages {
         logger.debug("params for exiftool {}", String.join(",", params));
 
         // Use background thread to prepare everything
-        Executor executor = Executors.newSingleThreadExecutor();
-        executor.execute(new Runnable() {
+        JobScheduler.submit(ResourceBundle.getBundle("translations/program_strings").getString("jobs.compare"), JobScheduler.Priority.INTERACTIVE, new Runnable() {
             @Override
             public void run() {
                 try {
@@ -181,34 +196,17 @@ public class CompareImages {
                     cmdparams.addAll(Arrays.asList(params));
                     long start = System.currentTimeMillis();
                     for (int index : selectedIndices) {
-                        List<String[]> tmpMetadata = new ArrayList<String[]>();
                         long astart = System.currentTimeMillis();
-                        String res = Utils.getImageInfoFromSelectedFile(params, index);
+                        // The rows are added while exiftool is still writing its output
+                        Utils.getImageInfoFromSelectedFile(params, index, InfoRowParser(index, allMetadata));
                         long aend  = System.currentTimeMillis();
-                        long bstart  = System.currentTimeMillis();
-                        //AddToImageInfoRows(index, filename, res);
-                        tmpMetadata = AddToInfoRows(index, res);
-                        allMetadata.addAll(tmpMetadata);
-                        long bend  = System.currentTimeMillis();
-                        logger.debug("exiftool {} ms; addtoListArray {} ms", (astart - aend), (bstart - bend));
+                        logger.debug("exiftool + addtoListArray {} ms", (aend - astart));
                         logger.debug("allMetadata {}", allMetadata.size());
                     }
                     long end = System.currentTimeMillis();
                     logger.debug("Reading exiftool info and adding to List {} ms", (end - start));
 
                     logger.debug("final allMetadata {}", allMetadata.size());
-                    start = System.currentTimeMillis();
-                    for (String[] oneRow : allMetadata) {
-                        //logger.info(Arrays.toString(oneRow));
-                        category_tagname.add(oneRow[0]);
-                    }
-                    Set<String> unique_cat_tag_set = new HashSet<String>(category_tagname);
-                    List<String> unique_cat_tag = new ArrayList<>(unique_cat_tag_set);
-                    Collections.sort(unique_cat_tag);
-                    end = System.currentTimeMillis();
-                    logger.debug("Creating category_tagname list + hashset {} ms", (end - start));
-
-
                     // Create the category_tagname hashmap based on DB
                    /* start = System.currentTimeMillis();
                     String sql = "select distinct category,tagname from imageinforows order by category,tagname";
@@ -254,40 +252,12 @@ public class CompareImages {
                         logger.info("metadata {}", Arrays.toString(metadata));
                     }*/
 
+                    // Pivot in one pass over allMetadata: one row per category||tagname, one column per image.
+                    // (Before this was a loop over all unique tags x all rows x all images with max. 25 images)
                     start = System.currentTimeMillis();
-                    for (String cat_tag : unique_cat_tag) {
-                        String[] values = new String[selectedIndices.size() + 2];
-                        // Create list with 27 values: more than we will ever process on files: 2 for category and tgname, 25 for images
-                        List<String> listvalues = new ArrayList<String>();
-                        for (int i = 0; i < 27; i++) {
-                            listvalues.add("9999");
-                        }
-                        for (String[] metadata : allMetadata) {
-                            //logger.info("cat_tag {} metadata {}", cat_tag, metadata);
-                            int counter = 2;
-                            for (int index : selectedIndices) {
-                                if ((cat_tag.equals(metadata[0])) && (Integer.valueOf(metadata[1]) == index)) {
-                                    listvalues.set(0, metadata[2]);
-                                    listvalues.set(1, metadata[3]);
-                                    //listvalues.set((Integer.valueOf(index) + 2), metadata[4]);
-                                    listvalues.set(counter, metadata[4]);
-                                }
-                                counter++;
-                            }
-                        }
-                        //logger.info("list values {}", listvalues);
-                        for (int i = 0; i < (selectedIndices.size() + 2); i++) {
-                            if ((listvalues.get(i)).equals("9999")) {
-                                values[i] = "";
-                            } else {
-                                values[i] = listvalues.get(i);
-                            }
-                        }
-                        //logger.info("values {}", Arrays.toString(values));
-                        tableMetadata.add(values);
-                    }
+                    tableMetadata.addAll(pivotInfoRows(allMetadata, selectedIndices));
                     end = System.currentTimeMillis();
-                    logger.debug("raw data to table data {}", (end - start));
+                    logger.debug("raw data to table data {} ms; {} rows", (end - start), tableMetadata.size());
 
                     //Now display our data
                     CompareImagesWindow.Initialize(tableMetadata, allMetadata);
@@ -1,56 +1,186 @@
 package org.hvdw.jexiftoolgui.model;
 
+import org.hvdw.jexiftoolgui.controllers.JobScheduler;
+import org.slf4j.LoggerFactory;
+
+import javax.swing.*;
+import javax.swing.event.TreeModelEvent;
 import javax.swing.event.TreeModelListener;
 import javax.swing.tree.TreeModel;
 import javax.swing.tree.TreePath;
 import java.io.File;
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
  * The methods in this class allow the JTree component to traverse
  * the file system tree, and display the files and directories.
- * Copied from http://www.java2s.com/Code/Java/Swing-JFC/implementsTreeModeltodisplayFileinaTree.htm
+ * Based on http://www.java2s.com/Code/Java/Swing-JFC/implementsTreeModeltodisplayFileinaTree.htm
+ * The JTree calls getChildCount, getChild and getIndexOfChild very often, so a folder is listed only once:
+ * - on a background job, the first time the JTree asks for its children (until then it has no children)
+ * - the children are kept sorted (folders first, then on name), together with whether they are a folder
+ * - when the listing is done, the listeners get a treeNodesInserted for the folder
+ * reload() and reload(folder) list folders again after they were changed.
+ * All methods except the listing itself run on the EDT.
  **/
 public class FileTreeModel implements TreeModel {
+    private final static ch.qos.logback.classic.Logger logger = (ch.qos.logback.classic.Logger) LoggerFactory.getLogger(FileTreeModel.class);
+
+    private static final Comparator<File> BY_NAME = Comparator.comparing(File::getName, String.CASE_INSENSITIVE_ORDER);
+
     // We specify the root directory when we create the model.
     protected File root;
-    public FileTreeModel(File root) { this.root = root; }
+
+    private final Map<File, List<File>> children = new HashMap<>();
+    private final Set<File> folders = new HashSet<>();
+    private final Set<File> listing = new HashSet<>();
+    private final List<TreeModelListener> listeners = new CopyOnWriteArrayList<>();
+
+    public FileTreeModel(File root) {
+        this.root = root;
+        if (root.isDirectory()) {
+            folders.add(root);
+        }
+    }
 
     // The model knows how to return the root object of the tree
     public Object getRoot() { return root; }
 
     // Tell JTree whether an object in the tree is a leaf or not
-    public boolean isLeaf(Object node) {  return ((File)node).isFile(); }
+    public boolean isLeaf(Object node) { return !folders.contains(node); }
 
     // Tell JTree how many children a node has
     public int getChildCount(Object parent) {
-        String[] children = ((File)parent).list();
-        if (children == null) return 0;
-        return children.length;
+        return listedChildren((File) parent).size();
     }
 
     // Fetch any numbered child of a node for the JTree.
     // Our model returns File objects for all nodes in the tree.  The
     // JTree displays these by calling the File.toString() method.
     public Object getChild(Object parent, int index) {
-        String[] children = ((File)parent).list();
-        /*for (String child : children) {
-            System.out.println(child);
-        }*/
-        //System.out.println(("parent: " + (File)parent).toString() + " + children " + children.toString());
-        if ((children == null) || (index >= children.length)) return null;
-
-        return new File((File) parent, children[index]);
+        List<File> parentChildren = listedChildren((File) parent);
+        if ((index < 0) || (index >= parentChildren.size())) return null;
+        return parentChildren.get(index);
     }
 
     // Figure out a child's position in its parent node.
     public int getIndexOfChild(Object parent, Object child) {
-        String[] children = ((File)parent).list();
-        if (children == null) return -1;
-        String childname = ((File)child).getName();
-        for(int i = 0; i < children.length; i++) {
-            if (childname.equals(children[i])) return i;
+        List<File> parentChildren = children.get(parent);
+        if ((parentChildren == null) || !(child instanceof File)) return -1;
+        File childFile = (File) child;
+        int index = Collections.binarySearch(parentChildren, childFile, childOrder());
+        return ((index >= 0) && parentChildren.get(index).equals(childFile)) ? index : parentChildren.indexOf(childFile);
+    }
+
+    /*
+     * Forgets all listings; the folders are listed again when the JTree asks for them
+     */
+    public void reload() {
+        children.clear();
+        fireTreeStructureChanged(new TreePath(root));
+    }
+
+    /*
+     * Lists this folder again, for instance after files were added or deleted
+     */
+    public void reload(File folder) {
+        if (!children.containsKey(folder)) {
+            return;
+        }
+        removeListings(folder);
+        startListing(folder, true);
+    }
+
+    // The cached children, or no children while the folder is listed in the background
+    private List<File> listedChildren(File parent) {
+        List<File> parentChildren = children.get(parent);
+        if (parentChildren != null) {
+            return parentChildren;
+        }
+        if (folders.contains(parent)) {
+            startListing(parent, false);
+        }
+        return Collections.emptyList();
+    }
+
+    private void startListing(File folder, boolean reload) {
+        if (!listing.add(folder)) {
+            return;
+        }
+        JobScheduler.submit(ResourceBundle.getBundle("translations/program_strings").getString("jobs.listfolder") + " " + folder.getName(), JobScheduler.Priority.INTERACTIVE, () -> {
+            List<File> listed = new ArrayList<>();
+            Set<File> listedFolders = new HashSet<>();
+            File[] files = folder.listFiles();
+            if (files == null) {
+                logger.debug("can not list {}", folder);
+            } else {
+                for (File file : files) {
+                    listed.add(file);
+                    if (file.isDirectory()) {
+                        listedFolders.add(file);
+                    }
+                }
+            }
+            listed.sort(Comparator.comparing((File file) -> !listedFolders.contains(file)).thenComparing(BY_NAME));
+            SwingUtilities.invokeLater(() -> listingDone(folder, listed, listedFolders, reload));
+        });
+    }
+
+    private void listingDone(File folder, List<File> listed, Set<File> listedFolders, boolean reload) {
+        listing.remove(folder);
+        folders.addAll(listedFolders);
+        children.put(folder, listed);
+        TreePath path = pathTo(folder);
+        if (path == null) {
+            return;
+        }
+        if (reload) {
+            fireTreeStructureChanged(path);
+        } else if (!listed.isEmpty()) {
+            int[] indices = new int[listed.size()];
+            for (int i = 0; i < indices.length; i++) {
+                indices[i] = i;
+            }
+            TreeModelEvent event = new TreeModelEvent(this, path, indices, listed.toArray());
+            for (TreeModelListener listener : listeners) {
+                listener.treeNodesInserted(event);
+            }
+        }
+    }
+
+    // Removes the listings of the folder and the folders below it
+    private void removeListings(File folder) {
+        List<File> removed = children.remove(folder);
+        if (removed != null) {
+            for (File child : removed) {
+                if (folders.contains(child)) {
+                    removeListings(child);
+                }
+            }
+        }
+    }
+
+    private Comparator<File> childOrder() {
+        return Comparator.comparing((File file) -> !folders.contains(file)).thenComparing(BY_NAME);
+    }
+
+    // The path from the root to the folder, or null when the folder is not (or no longer) below the root
+    private TreePath pathTo(File folder) {
+        Deque<File> nodes = new ArrayDeque<>();
+        for (File node = folder; node != null; node = node.getParentFile()) {
+            nodes.push(node);
+            if (node.equals(root)) {
+                return new TreePath(nodes.toArray());
+            }
+        }
+        return null;
+    }
+
+    private void fireTreeStructureChanged(TreePath path) {
+        TreeModelEvent event = new TreeModelEvent(this, path);
+        for (TreeModelListener listener : listeners) {
+            listener.treeStructureChanged(event);
         }
-        return -1;
     }
 
     // This method is only invoked by the JTree for editable trees.
@@ -58,8 +188,6 @@ public class FileTreeModel implements TreeModel {
     // this method.  The JTree editable property is false by default.
     public void valueForPathChanged(TreePath path, Object newvalue) {}
 
-    // Since this is not an editable tree model, we never fire any events,
-    // so we don't actually have to keep track of interested listeners.
-    public void addTreeModelListener(TreeModelListener l) {}
-    public void removeTreeModelListener(TreeModelListener l) {}
+    public void addTreeModelListener(TreeModelListener l) { listeners.add(l); }
+    public void removeTreeModelListener(TreeModelListener l) { listeners.remove(l); }
 }
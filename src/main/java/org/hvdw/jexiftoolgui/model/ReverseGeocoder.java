@@ -0,0 +1,352 @@
+package org.hvdw.jexiftoolgui.model;
+
+import org.hvdw.jexiftoolgui.controllers.JobScheduler;
+import org.hvdw.jexiftoolgui.facades.IPreferencesFacade;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+import static org.hvdw.jexiftoolgui.facades.IPreferencesFacade.PreferenceKey.GEONAMES_FILE;
+
+/**
+ * Offline reverse geocoding: finds the nearest populated place for a latitude/longitude without asking Nominatim.
+ * The places come from a GeoNames file chosen by the user (preference GEONAMES_FILE, Tools menu), like cities1000.txt,
+ * cities500.txt or a country file from https://download.geonames.org/export/dump/. Only the populated places (feature class P) are used.
+ * When admin1CodesASCII.txt from the same site is in the same folder, the state/province names are taken from it.
+ * - The places are read once into a k-d tree on their position on the unit sphere, so a lookup takes microseconds
+ * - The result has the same keys as Nominatim.parseReverseLocationJson, so it can be used wherever that one is used
+ * - A point farther than MAX_DISTANCE_KM from any place (at sea, in the wilderness) gives no result, so the caller asks Nominatim
+ * The file is read again when the preference or the file itself changes.
+ */
+public class ReverseGeocoder {
+    private final static ch.qos.logback.classic.Logger logger = (ch.qos.logback.classic.Logger) LoggerFactory.getLogger(ReverseGeocoder.class);
+    private static IPreferencesFacade prefs = IPreferencesFacade.defaultInstance;
+
+    private static final String ADMIN1_FILE = "admin1CodesASCII.txt";
+    static final double MAX_DISTANCE_KM = 25;
+    private static final double EARTH_RADIUS_KM = 6371;
+
+    // Volatile: reverseSearch reads them on the EDT without waiting for the (synchronized) reading of the file
+    private static volatile PlaceIndex index = null;
+    private static volatile File indexFile = null;
+    private static volatile long indexModified = 0;
+    private static volatile boolean loading = false;
+
+    private ReverseGeocoder() {}
+
+    /*
+     * Whether the user has chosen a places file that (still) exists
+     */
+    public static boolean isAvailable() {
+        File placesFile = getPlacesFile();
+        return (placesFile != null) && placesFile.isFile();
+    }
+
+    public static File getPlacesFile() {
+        String path = prefs.getByKey(GEONAMES_FILE, "");
+        return path.isEmpty() ? null : new File(path);
+    }
+
+    public static void setPlacesFile(File placesFile) {
+        prefs.storeByKey(GEONAMES_FILE, placesFile.getAbsolutePath());
+        preload();
+    }
+
+    /*
+     * Reads the places file in the background, so the first lookup doesn't have to wait for it
+     */
+    public static void preload() {
+        if (isAvailable() && !loading) {
+            loading = true;
+            JobScheduler.submit(ResourceBundle.getBundle("translations/program_strings").getString("jobs.loadplaces"), JobScheduler.Priority.PREFETCH, () -> {
+                try {
+                    index();
+                } finally {
+                    loading = false;
+                }
+            });
+        }
+    }
+
+    /*
+     * The nearest place, with the keys of Nominatim.parseReverseLocationJson, or null when there is no (readable) places file,
+     * when the file is not read yet or when the nearest place is too far away. Never waits for the file: when it is not read
+     * (or changed), it is read in the background for the next time.
+     */
+    public static Map<String, String> reverseSearch(double latitude, double longitude) {
+        PlaceIndex placeIndex = loadedIndex();
+        if (placeIndex == null) {
+            preload();
+            return null;
+        }
+        if (placeIndex.size() == 0) {
+            return null;
+        }
+        Place place = placeIndex.nearest(latitude, longitude);
+        double distance = distanceKm(latitude, longitude, place);
+        if (distance > MAX_DISTANCE_KM) {
+            logger.debug("nearest place {} is {} km away: no offline result", place.name, Math.round(distance));
+            return null;
+        }
+        return place.toLocationMap(latitude, longitude);
+    }
+
+    /*
+     * The index when it is read from the current places file, else null
+     */
+    private static PlaceIndex loadedIndex() {
+        PlaceIndex placeIndex = index;
+        File placesFile = getPlacesFile();
+        if ((placeIndex == null) || (placesFile == null) || !placesFile.equals(indexFile) || (placesFile.lastModified() != indexModified)) {
+            return null;
+        }
+        return placeIndex;
+    }
+
+    // Must be synchronized: reading the file once is enough, also when the preload is asked for more than once
+    private static synchronized PlaceIndex index() {
+        File placesFile = getPlacesFile();
+        if ((placesFile == null) || !placesFile.isFile()) {
+            index = null;
+            indexFile = null;
+            return null;
+        }
+        if ((index != null) && placesFile.equals(indexFile) && (placesFile.lastModified() == indexModified)) {
+            return index;
+        }
+        long start = System.currentTimeMillis();
+        try {
+            Map<String, String> admin1Names = readAdmin1Names(new File(placesFile.getParentFile(), ADMIN1_FILE));
+            PlaceIndex placeIndex;
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(placesFile), StandardCharsets.UTF_8))) {
+                placeIndex = PlaceIndex.read(reader, admin1Names);
+            }
+            // The index last, so loadedIndex never combines a new file with the old index
+            indexFile = placesFile;
+            indexModified = placesFile.lastModified();
+            index = placeIndex;
+            logger.info("read {} places from {} in {} ms", placeIndex.size(), placesFile, System.currentTimeMillis() - start);
+        } catch (IOException e) {
+            logger.error("Can not read the places file {}: {}", placesFile, e.toString());
+            index = null;
+            indexFile = null;
+        }
+        return index;
+    }
+
+    /*
+     * The admin1 codes file has lines like "NL.07<tab>North Holland<tab>North Holland<tab>2749879"
+     */
+    private static Map<String, String> readAdmin1Names(File admin1File) throws IOException {
+        Map<String, String> admin1Names = new HashMap<>();
+        if (!admin1File.isFile()) {
+            return admin1Names;
+        }
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(admin1File), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] fields = line.split("\t");
+                if (fields.length >= 2) {
+                    admin1Names.put(fields[0], fields[1]);
+                }
+            }
+        }
+        return admin1Names;
+    }
+
+    /*
+     * One populated place of the GeoNames file
+     */
+    static class Place {
+        final String name;
+        final double latitude;
+        final double longitude;
+        final String countryCode;
+        final String state;
+        final String featureCode;
+        final long population;
+        // Position on the unit sphere: the straight distance between two of these grows with the distance over the earth
+        final double[] xyz;
+
+        Place(String name, double latitude, double longitude, String countryCode, String state, String featureCode, long population) {
+            this.name = name;
+            this.latitude = latitude;
+            this.longitude = longitude;
+            this.countryCode = countryCode;
+            this.state = state;
+            this.featureCode = featureCode;
+            this.population = population;
+            this.xyz = toXyz(latitude, longitude);
+        }
+
+        /*
+         * The place as Nominatim.parseReverseLocationJson returns it: display_Name, geoLatitude, geoLongitude, the bounding box
+         * (bbX1/bbX2 the latitudes, bbY1/bbY2 the longitudes) and the address parts city/town/village, state, country and country_code.
+         * The bounding box also holds the looked up point, so zooming to it keeps that point on the map.
+         */
+        Map<String, String> toLocationMap(double pointLatitude, double pointLongitude) {
+            Map<String, String> location = new HashMap<>();
+            String country = countryCode.isEmpty() ? "" : new Locale("", countryCode).getDisplayCountry(Locale.ENGLISH);
+            StringJoiner displayName = new StringJoiner(", ");
+            for (String part : new String[]{name, state, country}) {
+                if (!part.isEmpty()) {
+                    displayName.add(part);
+                }
+            }
+            location.put("display_Name", displayName.toString());
+            location.put("geoLatitude", String.valueOf(latitude));
+            location.put("geoLongitude", String.valueOf(longitude));
+            // We only know a point, so the box is a guess based on the size of the place
+            double halfSize = (placeType().equals("city")) ? 0.1 : (placeType().equals("town") ? 0.05 : 0.02);
+            location.put("bbX1", String.valueOf(Math.max(-90, Math.min(latitude - halfSize, pointLatitude))));
+            location.put("bbX2", String.valueOf(Math.min(90, Math.max(latitude + halfSize, pointLatitude))));
+            location.put("bbY1", String.valueOf(Math.max(-180, Math.min(longitude - halfSize, pointLongitude))));
+            location.put("bbY2", String.valueOf(Math.min(180, Math.max(longitude + halfSize, pointLongitude))));
+            location.put(placeType(), name);
+            if (!state.isEmpty()) {
+                location.put("state", state);
+            }
+            if (!country.isEmpty()) {
+                location.put("country", country);
+                location.put("country_code", countryCode.toLowerCase());
+            }
+            return location;
+        }
+
+        // The Nominatim address key for this place
+        String placeType() {
+            if (featureCode.equals("PPLC") || featureCode.equals("PPLA") || featureCode.equals("PPLA2") || (population >= 100000)) {
+                return "city";
+            } else if (population >= 10000) {
+                return "town";
+            } else {
+                return "village";
+            }
+        }
+    }
+
+    /*
+     * The distance over the earth from the point to the place, from the straight distance of their positions on the unit sphere
+     */
+    static double distanceKm(double latitude, double longitude, Place place) {
+        double[] xyz = toXyz(latitude, longitude);
+        double chord = Math.sqrt(Math.pow(xyz[0] - place.xyz[0], 2) + Math.pow(xyz[1] - place.xyz[1], 2) + Math.pow(xyz[2] - place.xyz[2], 2));
+        return 2 * Math.asin(Math.min(1, chord / 2)) * EARTH_RADIUS_KM;
+    }
+
+    static double[] toXyz(double latitude, double longitude) {
+        double lat = Math.toRadians(latitude);
+        double lon = Math.toRadians(longitude);
+        return new double[]{Math.cos(lat) * Math.cos(lon), Math.cos(lat) * Math.sin(lon), Math.sin(lat)};
+    }
+
+    /*
+     * Balanced k-d tree in an array: the place in the middle of a range splits the range on axis (depth % 3)
+     */
+    static class PlaceIndex {
+        private final Place[] places;
+
+        PlaceIndex(List<Place> placeList) {
+            places = placeList.toArray(new Place[0]);
+            build(0, places.length, 0);
+        }
+
+        /*
+         * Reads the tab separated GeoNames "geoname" table: 0 geonameid, 1 name, 2 asciiname, 3 alternatenames, 4 latitude,
+         * 5 longitude, 6 feature class, 7 feature code, 8 country code, 9 cc2, 10 admin1 code, ... 14 population
+         */
+        static PlaceIndex read(BufferedReader reader, Map<String, String> admin1Names) throws IOException {
+            List<Place> placeList = new ArrayList<>();
+            String line;
+            int skipped = 0;
+            while ((line = reader.readLine()) != null) {
+                String[] fields = line.split("\t");
+                if ((fields.length < 15) || !fields[6].equals("P")) {
+                    skipped++;
+                    continue;
+                }
+                try {
+                    double latitude = Double.parseDouble(fields[4]);
+                    double longitude = Double.parseDouble(fields[5]);
+                    long population = fields[14].isEmpty() ? 0 : Long.parseLong(fields[14]);
+                    String state = admin1Names.getOrDefault(fields[8] + "." + fields[10], "");
+                    placeList.add(new Place(fields[1], latitude, longitude, fields[8], state, fields[7], population));
+                } catch (NumberFormatException e) {
+                    skipped++;
+                }
+            }
+            if (skipped > 0) {
+                logger.debug("skipped {} lines that are not a populated place", skipped);
+            }
+            return new PlaceIndex(placeList);
+        }
+
+        int size() {
+            return places.length;
+        }
+
+        private void build(int from, int to, int depth) {
+            if (to - from <= 1) {
+                return;
+            }
+            int axis = depth % 3;
+            Arrays.sort(places, from, to, Comparator.comparingDouble(place -> place.xyz[axis]));
+            int middle = (from + to) >>> 1;
+            build(from, middle, depth + 1);
+            build(middle + 1, to, depth + 1);
+        }
+
+        Place nearest(double latitude, double longitude) {
+            Nearest nearest = new Nearest(toXyz(latitude, longitude));
+            search(0, places.length, 0, nearest);
+            return nearest.place;
+        }
+
+        private void search(int from, int to, int depth, Nearest nearest) {
+            if (from >= to) {
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            Place place = places[middle];
+            nearest.offer(place);
+            int axis = depth % 3;
+            double difference = nearest.xyz[axis] - place.xyz[axis];
+            // First the half the point is in; the other half only when the splitting plane is closer than the best place so far
+            if (difference < 0) {
+                search(from, middle, depth + 1, nearest);
+                if (difference * difference < nearest.distance) {
+                    search(middle + 1, to, depth + 1, nearest);
+                }
+            } else {
+                search(middle + 1, to, depth + 1, nearest);
+                if (difference * difference < nearest.distance) {
+                    search(from, middle, depth + 1, nearest);
+                }
+            }
+        }
+    }
+
+    private static class Nearest {
+        final double[] xyz;
+        Place place = null;
+        // Squared straight distance to place
+        double distance = Double.MAX_VALUE;
+
+        Nearest(double[] xyz) {
+            this.xyz = xyz;
+        }
+
+        void offer(Place candidate) {
+            double dx = xyz[0] - candidate.xyz[0];
+            double dy = xyz[1] - candidate.xyz[1];
+            double dz = xyz[2] - candidate.xyz[2];
+            double candidateDistance = dx * dx + dy * dy + dz * dz;
+            if (candidateDistance < distance) {
+                distance = candidateDistance;
+                place = candidate;
+            }
+        }
+    }
+}
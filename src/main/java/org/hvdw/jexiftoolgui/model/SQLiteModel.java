@@ -2,6 +2,8 @@ package org.hvdw.jexiftoolgui.model;
 
 import org.slf4j.LoggerFactory;
 
+import java.sql.SQLException;
+
 import static org.hvdw.jexiftoolgui.controllers.SQLiteJDBC.*;
 
 public class SQLiteModel {
@@ -27,6 +29,36 @@ public class SQLiteModel {
         return singleFieldQuery(sql, "customset_name");
     }
 
+    /*
+     * The tags of a custom metadata set, one per line, in the order of the set
+     */
+    static public String getCustomSetTags(String setName) {
+        try {
+            StringBuilder tags = new StringBuilder();
+            for (String tag : queryColumn("select tag from custommetadatasetLines where customset_name=? order by rowcount", "disk", setName)) {
+                tags.append(tag).append("\n");
+            }
+            return tags.toString();
+        } catch (SQLException e) {
+            logger.error(e.getMessage());
+            return "";
+        }
+    }
+
+    /*
+     * The custom config file of a custom metadata set, or an empty string when it has none
+     */
+    static public String getCustomSetConfigFile(String setName) {
+        try {
+            for (String configFile : queryColumn("select custom_config from custommetadataset where customset_name=?", "disk", setName)) {
+                return (configFile == null) ? "" : configFile.trim();
+            }
+        } catch (SQLException e) {
+            logger.error(e.getMessage());
+        }
+        return "";
+    }
+
     static public String deleteCustomSetRows( String setName) {
         String sql = "delete from CustomMetadatasetLines where customset_name='" + setName + "'";
         return insertUpdateQuery(sql, "disk");
@@ -35,18 +67,26 @@ public class SQLiteModel {
     static public String queryByTagname(String searchString, boolean likequery) {
         String sqlresult = "";
         String sql = "";
+        String parameter = "";
         logger.debug("search string is: " + searchString);
         if (likequery) {
-            sql = "select taggroup,tagname,tagtype,writable from Groups,Tags,tagsingroups where tagsingroups.groupid=Groups.id and tagsingroups.tagid=tags.id and tagname like '%" + searchString + "%' order by taggroup";
+            sql = "select taggroup,tagname,tagtype,writable from Groups,Tags,tagsingroups where tagsingroups.groupid=Groups.id and tagsingroups.tagid=tags.id and tagname like ? order by taggroup";
+            parameter = "%" + searchString + "%";
             // use our view
             //sql = "select taggroup,tagname,tagtype,writable from v_tags_groups where tagname like '%" + searchString + "%'";
         } else {
-            sql = "select taggroup,tagname,tagtype,writable from Groups,Tags,tagsingroups where tagsingroups.groupid=Groups.id and tagsingroups.tagid=tags.id and taggroup='" + searchString + "'";
+            sql = "select taggroup,tagname,tagtype,writable from Groups,Tags,tagsingroups where tagsingroups.groupid=Groups.id and tagsingroups.tagid=tags.id and taggroup=?";
+            parameter = searchString;
             // use our view
             //sql = "select taggroup,tagname,tagtype,writable from v_tags_groups where taggroup='" + searchString + "'";
         }
 
-        sqlresult = generalQuery(sql, "disk");
+        try {
+            sqlresult = rowsAsText(queryRows(sql, "disk", parameter));
+        } catch (SQLException e) {
+            logger.error("sql error: " + e.getMessage());
+            sqlresult = e.getMessage();
+        }
         return sqlresult;
     }
 
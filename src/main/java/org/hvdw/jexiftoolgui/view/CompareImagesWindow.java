@@ -6,6 +6,7 @@ import org.hvdw.jexiftoolgui.MyVariables;
 import org.hvdw.jexiftoolgui.ProgramTexts;
 import org.hvdw.jexiftoolgui.Utils;
 import org.hvdw.jexiftoolgui.controllers.ImageFunctions;
+import org.hvdw.jexiftoolgui.controllers.JobScheduler;
 import org.hvdw.jexiftoolgui.metadata.ExportMetadata;
 
 import javax.swing.*;
@@ -20,8 +21,6 @@ import java.io.File;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.ResourceBundle;
-import java.util.concurrent.Executor;
-import java.util.concurrent.Executors;
 
 import static org.slf4j.LoggerFactory.getLogger;
 
@@ -66,8 +65,7 @@ public class CompareImagesWindow {
         ciwExportToPDFbutton.addActionListener(new ActionListener() {
             @Override
             public void actionPerformed(ActionEvent actionEvent) {
-                Executor executor = Executors.newSingleThreadExecutor();
-                executor.execute(new Runnable() {
+                JobScheduler.submit(ResourceBundle.getBundle("translations/program_strings").getString("jobs.exportpdf"), JobScheduler.Priority.BULK, new Runnable() {
                     @Override
                     public void run() {
                         ExportToPDF.WriteToPDF(allMetadata);
@@ -1,5 +1,6 @@
 package org.hvdw.jexiftoolgui.view;
 
+import org.hvdw.jexiftoolgui.controllers.FolderWatcher;
 import org.hvdw.jexiftoolgui.controllers.MenuActionListener;
 import javax.swing.*;
 import java.awt.event.KeyEvent;
@@ -113,6 +114,18 @@ public class CreateMenu {
         //myMenu.setMnemonic(KeyEvent.VK_R);
         menuItem.addActionListener(mal);
         myMenu.add(menuItem);
+        menuItem = new JMenuItem(ResourceBundle.getBundle("translations/program_strings").getString("tmenu.backgroundjobs"));
+        menuItem.setActionCommand("BackgroundJobs");
+        menuItem.addActionListener(mal);
+        myMenu.add(menuItem);
+        menuItem = new JCheckBoxMenuItem(ResourceBundle.getBundle("translations/program_strings").getString("tmenu.watchfolders"), FolderWatcher.isEnabled());
+        menuItem.setActionCommand("WatchFolders");
+        menuItem.addActionListener(mal);
+        myMenu.add(menuItem);
+        menuItem = new JMenuItem(ResourceBundle.getBundle("translations/program_strings").getString("tmenu.placesfile"));
+        menuItem.setActionCommand("PlacesFile");
+        menuItem.addActionListener(mal);
+        myMenu.add(menuItem);
 
 
         // exiftool database
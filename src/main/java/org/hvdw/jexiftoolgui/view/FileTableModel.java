@@ -0,0 +1,136 @@
+package org.hvdw.jexiftoolgui.view;
+
+import javax.swing.*;
+import javax.swing.table.AbstractTableModel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Table model for the left file table.
+ * The rows are created on the worker threads of Utils.displayFiles. Instead of adding every row directly to the table
+ * (one table event and repaint per file, and not from the EDT), the workers put their rows in a queue.
+ * A Swing timer moves the queued rows to the table in batches, with one fireTableRowsInserted per batch.
+ * Every reset starts a new "load": rows of an earlier load that arrive late are dropped.
+ */
+public class FileTableModel extends AbstractTableModel {
+    private static final long serialVersionUID = 1L;
+
+    // Time between the batches of rows on the EDT
+    private static final int FLUSH_DELAY_MS = 40;
+
+    // Only used on the EDT
+    private String[] columnNames = new String[0];
+    private final List<Object[]> rows = new ArrayList<>();
+
+    private final ConcurrentLinkedQueue<PendingRow> pendingRows = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger load = new AtomicInteger(0);
+    private final AtomicBoolean flushScheduled = new AtomicBoolean(false);
+    private final Timer flushTimer;
+
+    public FileTableModel() {
+        flushTimer = new Timer(FLUSH_DELAY_MS, e -> flush());
+        flushTimer.setRepeats(false);
+    }
+
+    /*
+     * Empties the table and sets the columns. Must be called on the EDT.
+     * Returns the number of the new load, which must be passed with the rows of this load.
+     */
+    public int reset(String... columns) {
+        int newLoad = load.incrementAndGet();
+        pendingRows.clear();
+        columnNames = columns;
+        rows.clear();
+        fireTableStructureChanged();
+        return newLoad;
+    }
+
+    /*
+     * Can be called from any thread. The row is shown with the next batch
+     */
+    public void addRowLater(int forLoad, Object[] row) {
+        pendingRows.add(new PendingRow(forLoad, row));
+        if (flushScheduled.compareAndSet(false, true)) {
+            SwingUtilities.invokeLater(flushTimer::restart);
+        }
+    }
+
+    public int currentLoad() {
+        return load.get();
+    }
+
+    /*
+     * The methods below change single rows of the current load directly (FolderWatcher). Must be called on the EDT
+     */
+    public void addRow(Object[] row) {
+        flush();
+        rows.add(row);
+        fireTableRowsInserted(rows.size() - 1, rows.size() - 1);
+    }
+
+    public void updateRow(int rowIndex, Object[] row) {
+        rows.set(rowIndex, row);
+        fireTableRowsUpdated(rowIndex, rowIndex);
+    }
+
+    public void removeRow(int rowIndex) {
+        rows.remove(rowIndex);
+        fireTableRowsDeleted(rowIndex, rowIndex);
+    }
+
+    // On the EDT: moves all queued rows of the current load to the table
+    private void flush() {
+        flushScheduled.set(false);
+        int currentLoad = load.get();
+        int firstRow = rows.size();
+        PendingRow pending;
+        while ((pending = pendingRows.poll()) != null) {
+            if (pending.load == currentLoad) {
+                rows.add(pending.row);
+            }
+        }
+        if (rows.size() > firstRow) {
+            fireTableRowsInserted(firstRow, rows.size() - 1);
+        }
+        // Rows added while we were flushing are either in this batch or have scheduled the next one
+    }
+
+    @Override
+    public int getRowCount() {
+        return rows.size();
+    }
+
+    @Override
+    public int getColumnCount() {
+        return columnNames.length;
+    }
+
+    @Override
+    public String getColumnName(int column) {
+        return columnNames[column];
+    }
+
+    @Override
+    public Object getValueAt(int rowIndex, int columnIndex) {
+        Object[] row = rows.get(rowIndex);
+        return (columnIndex < row.length) ? row[columnIndex] : null;
+    }
+
+    @Override
+    public boolean isCellEditable(int rowIndex, int columnIndex) {
+        return false;
+    }
+
+    private static class PendingRow {
+        final int load;
+        final Object[] row;
+
+        PendingRow(int load, Object[] row) {
+            this.load = load;
+            this.row = row;
+        }
+    }
+}
@@ -5,6 +5,8 @@ import org.hvdw.jexiftoolgui.Application;
 import org.hvdw.jexiftoolgui.MyVariables;
 import org.hvdw.jexiftoolgui.Utils;
 import org.hvdw.jexiftoolgui.controllers.ImageFunctions;
+import org.hvdw.jexiftoolgui.controllers.Prefetcher;
+import org.hvdw.jexiftoolgui.metadata.MetadataStore;
 import org.slf4j.LoggerFactory;
 
 import javax.imageio.ImageIO;
@@ -14,6 +16,9 @@ import java.awt.event.*;
 import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 import static org.hvdw.jexiftoolgui.Utils.getCurrentOsName;
 
@@ -28,23 +33,59 @@ public class JavaImageViewer {
     public int panelWidth = 0;
     public int panelHeight = 0;
 
+    // The screen sized images of the shown image and the images before and after it (see Prefetcher)
+    private static final int MAX_SCREEN_IMAGES = 5;
+    private static final LinkedHashMap<String, BufferedImage> screenImages = new LinkedHashMap<String, BufferedImage>(8, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, BufferedImage> eldest) {
+            return size() > MAX_SCREEN_IMAGES;
+        }
+    };
+
 
     private BufferedImage ResizeImage(File image, int orientation) {
+        BufferedImage screenImage = getScreenImage(image, orientation);
+        if (screenImage != null) {
+            resizedImg = screenImage;
+        }
+        return resizedImg;
+    }
 
+    /*
+     * The image rotated and scaled to the screen. Read from disk only when it is not in the small cache yet.
+     * Returns null when the image can't be read.
+     */
+    public static BufferedImage getScreenImage(File image, int orientation) {
         int scrwidth = MyVariables.getScreenWidth();
         int scrheight = MyVariables.getScreenHeight();
+        String key = image.getPath() + "|" + image.lastModified() + "|" + orientation + "|" + scrwidth + "x" + scrheight;
+        synchronized (screenImages) {
+            BufferedImage cached = screenImages.get(key);
+            if (cached != null) {
+                return cached;
+            }
+        }
+        BufferedImage screenImage = null;
         try {
             BufferedImage img = ImageIO.read(new File(image.getPath().replace("\\", "/")));
+            if (img == null) {
+                logger.debug("no image reader for {}", image.getName());
+                return null;
+            }
             if (orientation > 1) {
-                resizedImg = ImageFunctions.rotate(img, orientation);
-                resizedImg = ImageFunctions.scaleImageToContainer(resizedImg, scrwidth, scrheight);
+                screenImage = ImageFunctions.rotate(img, orientation);
+                screenImage = ImageFunctions.scaleImageToContainer(screenImage, scrwidth, scrheight);
             } else { // No rotation necessary
-                resizedImg = ImageFunctions.scaleImageToContainer(img, scrwidth, scrheight);
+                screenImage = ImageFunctions.scaleImageToContainer(img, scrwidth, scrheight);
             }
         } catch (IOException iex) {
             logger.error("error in resizing the image {}", iex);
+            return null;
         }
-        return resizedImg;
+        synchronized (screenImages) {
+            screenImages.put(key, screenImage);
+        }
+        return screenImage;
     }
 
 
@@ -71,7 +112,14 @@ public class JavaImageViewer {
         image = files[newindex];
         MyVariables.setCurrentFileInViewer(image);
         try {
-            basicdata = ImageFunctions.getbasicImageData(image);
+            // Loaded images have their data in the metadata store: no exiftool call needed
+            HashMap<String, String> storedData = (MyVariables.getimagesData() == null) ? null : MyVariables.getimagesData().get(MetadataStore.keyOf(image));
+            if (storedData != null) {
+                MyVariables.setimgBasicData(storedData);
+                basicdata = ImageFunctions.getCachedBasicImageData(image);
+            } else {
+                basicdata = ImageFunctions.getbasicImageData(image);
+            }
         } catch (NullPointerException npe) {
             npe.printStackTrace();
             bde = true;
@@ -87,6 +135,8 @@ public class JavaImageViewer {
         BufferedImage resizedImg = ResizeImage(image, basicdata[2]);
         ImageIcon icon = new ImageIcon(resizedImg);
         ImgLabel.setIcon(icon);
+        // Read the next images in the background while the user looks at this one
+        Prefetcher.prefetchScreenImages(newindex, "previous".equals(whichaction) ? -1 : 1);
     }
 
 
@@ -298,6 +348,7 @@ public class JavaImageViewer {
         //}
         frame.pack();
         frame.setVisible(true);
+        Prefetcher.prefetchScreenImages(ArrayUtils.indexOf(MyVariables.getLoadedFiles(), MyVariables.getCurrentFileInViewer()), 1);
 
     }
 }
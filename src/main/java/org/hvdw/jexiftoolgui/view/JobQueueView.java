@@ -0,0 +1,88 @@
+package org.hvdw.jexiftoolgui.view;
+
+import ch.qos.logback.classic.Logger;
+import org.hvdw.jexiftoolgui.Utils;
+import org.hvdw.jexiftoolgui.controllers.JobScheduler;
+
+import javax.swing.*;
+import javax.swing.table.DefaultTableModel;
+import java.awt.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.ResourceBundle;
+
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * Shows the queued and running background jobs of the JobScheduler and lets the user cancel them.
+ * The list is refreshed every half second while the window is open.
+ */
+public class JobQueueView {
+    private final static Logger logger = (Logger) getLogger(JobQueueView.class);
+
+    public static void showJobQueue(JPanel rootPanel) {
+        JFrame frame = new JFrame();
+        frame.setTitle(ResourceBundle.getBundle("translations/program_strings").getString("jobs.title"));
+        frame.setIconImage(Utils.getFrameIcon());
+        frame.setDefaultCloseOperation(JFrame.DISPOSE_ON_CLOSE);
+
+        DefaultTableModel model = new DefaultTableModel(new String[]{
+                ResourceBundle.getBundle("translations/program_strings").getString("jobs.job"),
+                ResourceBundle.getBundle("translations/program_strings").getString("jobs.priority"),
+                ResourceBundle.getBundle("translations/program_strings").getString("jobs.state")}, 0) {
+            @Override
+            public boolean isCellEditable(int row, int column) {
+                return false;
+            }
+        };
+        JTable jobTable = new JTable(model);
+        jobTable.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+        jobTable.getColumnModel().getColumn(0).setPreferredWidth(300);
+        // The jobs in the same order as the rows of the table
+        List<JobScheduler.Job> shownJobs = new ArrayList<>();
+
+        Timer refresh = new Timer(500, e -> {
+            JobScheduler.Job selectedJob = (jobTable.getSelectedRow() >= 0) && (jobTable.getSelectedRow() < shownJobs.size()) ? shownJobs.get(jobTable.getSelectedRow()) : null;
+            shownJobs.clear();
+            shownJobs.addAll(JobScheduler.getJobs());
+            model.setRowCount(0);
+            for (JobScheduler.Job job : shownJobs) {
+                model.addRow(new Object[]{job.getName(), job.getPriority(), job.getState()});
+            }
+            int selectedRow = shownJobs.indexOf(selectedJob);
+            if (selectedRow >= 0) {
+                jobTable.setRowSelectionInterval(selectedRow, selectedRow);
+            }
+        });
+        refresh.setInitialDelay(0);
+
+        JPanel buttonPanel = new JPanel(new FlowLayout(FlowLayout.CENTER, 5, 5));
+        JButton cancelButton = new JButton(ResourceBundle.getBundle("translations/program_strings").getString("jobs.canceljob"));
+        cancelButton.addActionListener(e -> {
+            int row = jobTable.getSelectedRow();
+            if ((row >= 0) && (row < shownJobs.size())) {
+                logger.info("user cancels job \"{}\"", shownJobs.get(row).getName());
+                shownJobs.get(row).cancel();
+            }
+        });
+        JButton closeButton = new JButton(ResourceBundle.getBundle("translations/program_strings").getString("dlg.close"));
+        closeButton.addActionListener(e -> frame.dispose());
+        buttonPanel.add(cancelButton);
+        buttonPanel.add(closeButton);
+
+        JPanel jobsRootPanel = new JPanel(new BorderLayout());
+        jobsRootPanel.add(new JScrollPane(jobTable), BorderLayout.CENTER);
+        jobsRootPanel.add(buttonPanel, BorderLayout.PAGE_END);
+        frame.add(jobsRootPanel);
+        frame.addWindowListener(new java.awt.event.WindowAdapter() {
+            @Override
+            public void windowClosed(java.awt.event.WindowEvent e) {
+                refresh.stop();
+            }
+        });
+        frame.setSize(550, 300);
+        frame.setLocationRelativeTo(rootPanel);
+        frame.setVisible(true);
+        refresh.start();
+    }
+}
@@ -8,6 +8,7 @@ import org.hvdw.jexiftoolgui.MyVariables;
 import org.hvdw.jexiftoolgui.Utils;
 import org.hvdw.jexiftoolgui.facades.IPreferencesFacade;
 import org.hvdw.jexiftoolgui.model.Nominatim;
+import org.hvdw.jexiftoolgui.model.ReverseGeocoder;
 import org.jxmapviewer.JXMapKit;
 import org.jxmapviewer.JXMapViewer;
 import org.jxmapviewer.OSMTileFactoryInfo;
@@ -276,8 +277,12 @@ public class JxMapViewer extends JDialog {
         jXMapKit.setCenterPosition(newXPos);
 
         try {
-            String getResult = Nominatim.ReverseSearch(latitude, longitude);
-            selectedPlace = Nominatim.parseReverseLocationJson(getResult);
+            // The offline places file, when the user has one, saves a request to Nominatim
+            selectedPlace = ReverseGeocoder.reverseSearch(latitude, longitude);
+            if (selectedPlace == null) {
+                String getResult = Nominatim.ReverseSearch(latitude, longitude);
+                selectedPlace = Nominatim.parseReverseLocationJson(getResult);
+            }
             lblDisplay_Name.setText(selectedPlace.get("display_Name"));
             GeoPosition topleft = new GeoPosition(Double.parseDouble(selectedPlace.get("bbX1")), Double.parseDouble(selectedPlace.get("bbY1")));
             GeoPosition topright = new GeoPosition(Double.parseDouble(selectedPlace.get("bbX2")), Double.parseDouble(selectedPlace.get("bbY1")));
@@ -475,6 +480,7 @@ public class JxMapViewer extends JDialog {
 
         // Create the mapviewer panel
         mapUsageHints = ResourceBundle.getBundle("translations/program_strings").getString("mpv.hints");
+        ReverseGeocoder.preload();
         buildMapviewer();
         //buildXMapkitviewer();
         setVisible(true);
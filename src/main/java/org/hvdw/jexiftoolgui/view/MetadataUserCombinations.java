@@ -985,7 +985,7 @@ public class MetadataUserCombinations extends JDialog implements TableModelListe
                 }
             }
             lblCurDispUsercombi.setText(ResourceBundle.getBundle("translations/program_strings").getString("mduc.curdispcombi") + " " + setName);
-            String configFile = SQLiteJDBC.singleFieldQuery("select custom_config from custommetadataset where customset_name='" + setName.trim() + "'", "custom_config");
+            String configFile = SQLiteModel.getCustomSetConfigFile(setName.trim());
             if (!configFile.equals("")) {
                 lblConfigFile.setText(ResourceBundle.getBundle("translations/program_strings").getString("mduc.lblconffile") + " " + configFile);
             } else {
@@ -4,6 +4,9 @@ import org.junit.Rule;
 import org.junit.Test;
 import org.junit.contrib.java.lang.system.RestoreSystemProperties;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import static org.junit.Assert.*;
 
 public class UtilsTest {
@@ -36,4 +39,25 @@ public class UtilsTest {
         assertEquals("Linux should be Linux", Application.OS_NAMES.LINUX, Utils.getCurrentOsName());
     }
 
+    @Test
+    public void testInfoRowParser() throws Exception {
+        List<String[]> rows = new ArrayList<>();
+        org.hvdw.jexiftoolgui.controllers.CommandRunner.LineConsumer parser = Utils.infoRowParser(rows::add);
+        parser.accept("EXIF\tModel\tCanon EOS");
+        parser.accept("");
+        parser.accept("XMP\tDescription\ta\tvalue with a tab");
+        parser.accept("Composite\tEmpty");
+        assertEquals("blank lines should be skipped", 3, rows.size());
+        assertArrayEquals(new String[]{"EXIF", "Model", "Canon EOS"}, rows.get(0));
+        assertArrayEquals("only split on the first 2 tabs", new String[]{"XMP", "Description", "a\tvalue with a tab"}, rows.get(1));
+        assertArrayEquals("missing cells should be empty", new String[]{"Composite", "Empty", ""}, rows.get(2));
+
+        rows.clear();
+        parser = Utils.infoRowParser(rows::add);
+        parser.accept("Warning: Invalid TIFF structure");
+        parser.accept("EXIF\tModel\tCanon EOS");
+        assertEquals("a warning gives only one row", 1, rows.size());
+        assertArrayEquals(new String[]{"ExifTool", "Warning", "Invalid Metadata data"}, rows.get(0));
+    }
+
 }
@@ -0,0 +1,56 @@
+package org.hvdw.jexiftoolgui.controllers;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class CommandBatcherTest {
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testTrailingFileCount() throws Exception {
+        String outDir = folder.newFolder("out").getPath();
+        String a = folder.newFile("a.jpg").getPath();
+        String b = folder.newFile("b.jpg").getPath();
+
+        assertEquals(2, CommandBatcher.trailingFileCount(Arrays.asList("exiftool", "-Make=Canon", a, b)));
+        assertEquals("the value of -o is no file to process", 2, CommandBatcher.trailingFileCount(Arrays.asList("exiftool", "-o", outDir, a, b)));
+        assertEquals("-X takes no value", 2, CommandBatcher.trailingFileCount(Arrays.asList("exiftool", "-X", a, b)));
+        assertEquals("-x takes a value", 1, CommandBatcher.trailingFileCount(Arrays.asList("exiftool", "-x", a, b)));
+        assertEquals("stop at files that don't exist", 1, CommandBatcher.trailingFileCount(Arrays.asList("exiftool", a, "missing.jpg", b)));
+        String config = folder.newFile("custom.config").getPath();
+        assertEquals("the config file is no file to process", 2, CommandBatcher.trailingFileCount(Arrays.asList("exiftool", "-config", config, a, b)));
+    }
+
+    @Test
+    public void testFirstOptionIndex() {
+        assertEquals(1, ExifToolPool.firstOptionIndex(Arrays.asList("exiftool", "-Make=Canon", "a.jpg")));
+        assertEquals("-config must stay the first argument", 3, ExifToolPool.firstOptionIndex(Arrays.asList("exiftool", "-config", "custom.config", "a.jpg")));
+    }
+
+    @Test
+    public void testCommandLineParts() {
+        assertTrue(ExifToolPool.isCommandLinePart("\"-all>xmp:all\""));
+        assertTrue(ExifToolPool.isCommandLinePart("-xmp:RegionName=\"Face\""));
+        assertTrue(ExifToolPool.isCommandLinePart("\"-FileName<${DateTimeOriginal}%-.2nc.%le\" -d %Y%m%d \"-fileorder datetimeoriginal#\""));
+        assertTrue(ExifToolPool.isCommandLinePart("-FileName<${DateTimeOriginal}.%le -d %Y%m%d"));
+        assertTrue(ExifToolPool.isCommandLinePart("C:/photos/img\\(1\\).jpg"));
+        assertFalse(ExifToolPool.isCommandLinePart("-Comment=Holiday - day 2"));
+        assertFalse(ExifToolPool.isCommandLinePart("C:/photos - 2020/img (1).jpg"));
+    }
+
+    @Test
+    public void testCommandKinds() {
+        assertTrue(CommandBatcher.isSingleDocument(Arrays.asList("exiftool", "-csv", "-G")));
+        assertTrue(CommandBatcher.isSingleDocument(Arrays.asList("exiftool", "-X")));
+        assertFalse(CommandBatcher.isSingleDocument(Arrays.asList("exiftool", "-x", "Make", "-JFIF:all=")));
+        assertFalse("renaming may not run in parallel", CommandBatcher.mayRunInParallel(Arrays.asList("exiftool", "-FileName<DateTimeOriginal")));
+        assertTrue(CommandBatcher.mayRunInParallel(Arrays.asList("exiftool", "-overwrite_original", "-AllDates+=1")));
+    }
+}
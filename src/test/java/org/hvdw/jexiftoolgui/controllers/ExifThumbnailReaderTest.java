@@ -0,0 +1,87 @@
+package org.hvdw.jexiftoolgui.controllers;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+
+import static org.junit.Assert.*;
+
+public class ExifThumbnailReaderTest {
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private static final byte[] THUMBNAIL = {(byte) 0xFF, (byte) 0xD8, 1, 2, 3, 4, (byte) 0xFF, (byte) 0xD9};
+
+    /*
+     * Tiff structure: header, IFD0 with orientation, IFD1 with thumbnail offset/length, thumbnail
+     */
+    private static byte[] tiff(ByteOrder order, int orientation) {
+        ByteBuffer tiff = ByteBuffer.allocate(8 + 18 + 30 + THUMBNAIL.length).order(order);
+        tiff.put(order == ByteOrder.LITTLE_ENDIAN ? (byte) 'I' : (byte) 'M');
+        tiff.put(order == ByteOrder.LITTLE_ENDIAN ? (byte) 'I' : (byte) 'M');
+        tiff.putShort((short) 42).putInt(8);
+        // IFD0 at 8: 1 entry, next IFD at 26
+        tiff.putShort((short) 1);
+        tiff.putShort((short) 0x0112).putShort((short) 3).putInt(1).putShort((short) orientation).putShort((short) 0);
+        tiff.putInt(26);
+        // IFD1 at 26: 2 entries, no next IFD. Thumbnail at 56
+        tiff.putShort((short) 2);
+        tiff.putShort((short) 0x0201).putShort((short) 4).putInt(1).putInt(56);
+        tiff.putShort((short) 0x0202).putShort((short) 4).putInt(1).putInt(THUMBNAIL.length);
+        tiff.putInt(0);
+        tiff.put(THUMBNAIL);
+        return tiff.array();
+    }
+
+    private static byte[] jpeg(byte[] tiff) {
+        ByteArrayOutputStream jpeg = new ByteArrayOutputStream();
+        jpeg.write(0xFF); jpeg.write(0xD8);
+        // APP0 JFIF segment before the exif segment
+        jpeg.write(0xFF); jpeg.write(0xE0); jpeg.write(0); jpeg.write(4); jpeg.write(0); jpeg.write(0);
+        int length = 2 + 6 + tiff.length;
+        jpeg.write(0xFF); jpeg.write(0xE1); jpeg.write(length >> 8); jpeg.write(length & 0xFF);
+        jpeg.writeBytes("Exif".getBytes()); jpeg.write(0); jpeg.write(0);
+        jpeg.writeBytes(tiff);
+        jpeg.write(0xFF); jpeg.write(0xDA);
+        return jpeg.toByteArray();
+    }
+
+    @Test
+    public void testThumbnailFromJpeg() throws Exception {
+        File file = folder.newFile("test.jpg");
+        Files.write(file.toPath(), jpeg(tiff(ByteOrder.BIG_ENDIAN, 6)));
+        ExifThumbnailReader.EmbeddedThumbnail thumbnail = ExifThumbnailReader.readThumbnail(file);
+        assertNotNull("jpg with exif thumbnail should give a thumbnail", thumbnail);
+        assertArrayEquals(THUMBNAIL, thumbnail.data);
+        assertEquals(6, thumbnail.orientation);
+    }
+
+    @Test
+    public void testThumbnailFromLittleEndianTiff() throws Exception {
+        File file = folder.newFile("test.tif");
+        Files.write(file.toPath(), tiff(ByteOrder.LITTLE_ENDIAN, 8));
+        ExifThumbnailReader.EmbeddedThumbnail thumbnail = ExifThumbnailReader.readThumbnail(file);
+        assertNotNull("tif with IFD1 thumbnail should give a thumbnail", thumbnail);
+        assertArrayEquals(THUMBNAIL, thumbnail.data);
+        assertEquals(8, thumbnail.orientation);
+    }
+
+    @Test
+    public void testNoThumbnail() throws Exception {
+        File noExif = folder.newFile("noexif.jpg");
+        Files.write(noExif.toPath(), new byte[]{(byte) 0xFF, (byte) 0xD8, (byte) 0xFF, (byte) 0xDA, 0, 2});
+        assertNull("jpg without exif has no thumbnail", ExifThumbnailReader.readThumbnail(noExif));
+
+        File truncated = folder.newFile("truncated.jpg");
+        byte[] jpeg = jpeg(tiff(ByteOrder.BIG_ENDIAN, 1));
+        Files.write(truncated.toPath(), java.util.Arrays.copyOf(jpeg, 40));
+        assertNull("truncated file has no thumbnail", ExifThumbnailReader.readThumbnail(truncated));
+    }
+}
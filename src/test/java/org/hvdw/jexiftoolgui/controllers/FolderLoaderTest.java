@@ -0,0 +1,59 @@
+package org.hvdw.jexiftoolgui.controllers;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class FolderLoaderTest {
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testFindFiles() throws Exception {
+        folder.newFile("b.JPG");
+        folder.newFile("a.cr2");
+        folder.newFile("a.xmp");
+        folder.newFile("b.JPG.xmp");
+        folder.newFile("lonely.xmp");
+        folder.newFile(".DS_Store");
+        folder.newFile("notes.unknownext");
+        folder.newFolder("sub");
+        folder.newFile("sub/c.jpg");
+        folder.newFolder(".hidden");
+        folder.newFile(".hidden/d.jpg");
+        folder.newFolder("sub", "deeper");
+        folder.newFile("sub/deeper/e.jpg");
+        folder.newFolder("Asub");
+        folder.newFile("Asub/f.jpg");
+
+        assertEquals("[a.cr2, b.JPG, lonely.xmp]", names(FolderLoader.findFiles(folder.getRoot(), false, null)));
+        assertEquals("a folder before its subfolders, subfolders on name",
+                "[a.cr2, b.JPG, lonely.xmp, f.jpg, c.jpg, e.jpg]", names(FolderLoader.findFiles(folder.getRoot(), true, null)));
+    }
+
+    @Test
+    public void testIsSidecar() throws Exception {
+        folder.newFile("b.JPG");
+        folder.newFile("notes.unknownext");
+        assertTrue(FolderLoader.isSidecar(folder.newFile("b.xmp")));
+        assertTrue(FolderLoader.isSidecar(folder.newFile("b.jpg.xmp")));
+        assertFalse(FolderLoader.isSidecar(folder.newFile("lonely.xmp")));
+        assertFalse("only supported files have sidecars", FolderLoader.isSidecar(folder.newFile("notes.xmp")));
+        assertFalse(FolderLoader.isSidecar(new File(folder.getRoot(), "b.JPG")));
+    }
+
+    private static String names(File[] files) {
+        List<String> names = new ArrayList<>();
+        for (File file : files) {
+            names.add(file.getName());
+        }
+        return names.toString();
+    }
+}
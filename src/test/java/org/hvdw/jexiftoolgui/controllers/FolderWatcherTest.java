@@ -0,0 +1,43 @@
+package org.hvdw.jexiftoolgui.controllers;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class FolderWatcherTest {
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testClassify() throws Exception {
+        File loaded = folder.newFile("a.jpg");
+        File gone = new File(folder.getRoot(), "b.jpg");
+        File created = folder.newFile("c.jpg");
+        File sidecar = folder.newFile("a.xmp");
+        File[] loadedFiles = {loaded, gone};
+        List<Path> changedPaths = Arrays.asList(loaded.toPath(), gone.toPath(), created.toPath(), sidecar.toPath());
+
+        FolderWatcher.Changes changes = FolderWatcher.classify(changedPaths, loadedFiles, true);
+        assertEquals(Collections.singletonList(loaded), changes.modified);
+        assertEquals(Collections.singletonList(gone), changes.deleted);
+        assertEquals("a new sidecar is no row of its own", Collections.singletonList(created), changes.created);
+
+        changes = FolderWatcher.classify(changedPaths, loadedFiles, false);
+        assertEquals(Collections.singletonList(loaded), changes.modified);
+        assertEquals(Collections.singletonList(gone), changes.deleted);
+        assertTrue("loaded files only follow those files", changes.created.isEmpty());
+
+        changes = FolderWatcher.classify(Collections.singletonList(folder.getRoot().toPath()), loadedFiles, true);
+        assertEquals("a folder stands for the loaded files in it", Collections.singletonList(loaded), changes.modified);
+        assertEquals(Collections.singletonList(gone), changes.deleted);
+    }
+}
@@ -0,0 +1,65 @@
+package org.hvdw.jexiftoolgui.controllers;
+
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class JobSchedulerTest {
+
+    @Test
+    public void testTaskGroup() throws Exception {
+        ExecutorService group = JobScheduler.newTaskGroup(JobScheduler.Priority.NORMAL);
+        AtomicInteger done = new AtomicInteger(0);
+        Future<Integer> result = group.submit(() -> 6 * 7);
+        for (int i = 0; i < 20; i++) {
+            group.execute(done::incrementAndGet);
+        }
+        assertEquals(Integer.valueOf(42), result.get(10, TimeUnit.SECONDS));
+        group.shutdown();
+        assertTrue(group.awaitTermination(10, TimeUnit.SECONDS));
+        assertEquals(20, done.get());
+        assertTrue(group.isTerminated());
+        try {
+            group.execute(done::incrementAndGet);
+            fail("a shut down group takes no new tasks");
+        } catch (RejectedExecutionException expected) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testShutdownNow() throws Exception {
+        ExecutorService group = JobScheduler.newTaskGroup(JobScheduler.Priority.BULK);
+        CountDownLatch blocking = new CountDownLatch(1);
+        int threads = org.hvdw.jexiftoolgui.Utils.getWorkerThreadCount();
+        CountDownLatch started = new CountDownLatch(threads);
+        CountDownLatch interrupted = new CountDownLatch(threads);
+        // Keep all pool threads busy until they are interrupted
+        for (int i = 0; i < threads; i++) {
+            group.execute(() -> {
+                started.countDown();
+                try {
+                    blocking.await();
+                } catch (InterruptedException e) {
+                    interrupted.countDown();
+                }
+            });
+        }
+        AtomicInteger ran = new AtomicInteger(0);
+        for (int i = 0; i < 4; i++) {
+            group.execute(ran::incrementAndGet);
+        }
+        Future<?> submitted = group.submit(ran::incrementAndGet);
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+        List<Runnable> notStarted = group.shutdownNow();
+        assertTrue(interrupted.await(10, TimeUnit.SECONDS));
+        assertTrue(group.awaitTermination(10, TimeUnit.SECONDS));
+        assertEquals("the tasks that did not start are returned", 5, notStarted.size());
+        assertEquals(0, ran.get());
+        assertTrue("a dropped future doesn't keep get() waiting", submitted.isCancelled());
+    }
+}
@@ -0,0 +1,57 @@
+package org.hvdw.jexiftoolgui.metadata;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class MetadataSearchIndexTest {
+
+    private static Map<String, String> tags(String... keysValues) {
+        Map<String, String> tags = new LinkedHashMap<>();
+        for (int i = 0; i < keysValues.length; i += 2) {
+            tags.put(keysValues[i], keysValues[i + 1]);
+        }
+        return tags;
+    }
+
+    @Before
+    public void setUp() {
+        MetadataSearchIndex.clear();
+        MetadataSearchIndex.put("b.jpg", tags("Make", "Canon", "Model", "Canon EOS 5D"));
+        MetadataSearchIndex.put("a.jpg", tags("Make", "Nikon", "Model", "D750 by Nikon"));
+    }
+
+    @Test
+    public void testRankedSubstringSearch() {
+        List<String> result = MetadataSearchIndex.search("NIKON");
+        assertEquals("exact match before contains match", Arrays.asList(
+                "a.jpg\tvalue-key\tNikon\tMake",
+                "a.jpg\tvalue-key\tD750 by Nikon\tModel"), result);
+
+        result = MetadataSearchIndex.search("can");
+        assertEquals("starts with matches, sorted", Arrays.asList(
+                "b.jpg\tvalue-key\tCanon\tMake",
+                "b.jpg\tvalue-key\tCanon EOS 5D\tModel"), result);
+
+        assertEquals("tag names are searched too", 2, MetadataSearchIndex.search("model").size());
+        assertEquals("short phrases are searched too", 1, MetadataSearchIndex.search("5d").size());
+        assertTrue("grams in other order are no match", MetadataSearchIndex.search("nonik").isEmpty());
+    }
+
+    @Test
+    public void testUpdateAndRemove() {
+        MetadataSearchIndex.put("a.jpg", tags("Make", "Sony"));
+        assertTrue("old values are gone after an update", MetadataSearchIndex.search("nikon").isEmpty());
+        assertEquals(Arrays.asList("a.jpg\tvalue-key\tSony\tMake"), MetadataSearchIndex.search("sony"));
+
+        MetadataSearchIndex.remove("a.jpg");
+        assertTrue(MetadataSearchIndex.search("sony").isEmpty());
+        assertEquals(1, MetadataSearchIndex.indexedImages());
+    }
+}
@@ -0,0 +1,86 @@
+package org.hvdw.jexiftoolgui.metadata;
+
+import org.junit.Test;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class MetadataStoreTest {
+
+    private static Map<String, String> tags(String... keysValues) {
+        Map<String, String> tags = new LinkedHashMap<>();
+        for (int i = 0; i < keysValues.length; i += 2) {
+            tags.put(keysValues[i], keysValues[i + 1]);
+        }
+        return tags;
+    }
+
+    @Test
+    public void testPutGetReplace() {
+        MetadataStore store = new MetadataStore();
+        store.put("a.jpg", tags("Make", "Canon", "Orientation", "1", "ImageWidth", "6000"));
+        store.put("b.jpg", tags("Make", "Nikon", "Model", "D750"));
+
+        assertEquals(tags("Make", "Canon", "Orientation", "1", "ImageWidth", "6000"), store.get("a.jpg"));
+        assertEquals("tags of other images are not added", tags("Make", "Nikon", "Model", "D750"), store.get("b.jpg"));
+        assertEquals("Nikon", store.getValue("b.jpg", "Make"));
+        assertNull(store.getValue("b.jpg", "Orientation"));
+        assertNull(store.get("c.jpg"));
+
+        // Replacing drops the tags that are no longer there
+        store.put("a.jpg", tags("Make", "Canon", "Orientation", "6"));
+        assertEquals(tags("Make", "Canon", "Orientation", "6"), store.get("a.jpg"));
+        assertEquals(2, store.size());
+        assertEquals(Arrays.asList("a.jpg", "b.jpg"), store.images());
+    }
+
+    @Test
+    public void testColumnPromotion() {
+        MetadataStore.Column column = new MetadataStore.Column();
+        column.set(0, "1");
+        column.set(1, "6");
+        // "007" is no plain integer: the column becomes a dictionary and keeps the earlier values
+        column.set(2, "007");
+        assertEquals("1", column.get(0));
+        assertEquals("6", column.get(1));
+        assertEquals("007", column.get(2));
+
+        // Many distinct values: the column becomes a string column, again without losing values
+        for (int row = 3; row < 200; row++) {
+            column.set(row, "2020:01:01 12:00:" + row);
+        }
+        assertEquals("1", column.get(0));
+        assertEquals("007", column.get(2));
+        assertEquals("2020:01:01 12:00:199", column.get(199));
+        assertNull(column.get(200));
+
+        column.clear(1);
+        assertNull(column.get(1));
+        assertFalse(MetadataStore.Column.isPlainInteger("+1"));
+        assertFalse(MetadataStore.Column.isPlainInteger("12345678901"));
+        assertTrue(MetadataStore.Column.isPlainInteger("-42"));
+    }
+
+    @Test
+    public void testRemove() {
+        MetadataStore store = new MetadataStore();
+        store.put("a.jpg", tags("Make", "Canon"));
+        store.put("b.jpg", tags("Make", "Nikon"));
+        store.put("c.jpg", tags("Make", "Sony"));
+
+        store.remove("b.jpg");
+        assertFalse(store.containsKey("b.jpg"));
+        assertNull(store.get("b.jpg"));
+        assertEquals(2, store.size());
+        assertEquals(Arrays.asList("a.jpg", "c.jpg"), store.images());
+        List<String> visited = new ArrayList<>();
+        store.forEach((image, tagsValues) -> visited.add(image + "=" + tagsValues.get("Make")));
+        assertEquals(Arrays.asList("a.jpg=Canon", "c.jpg=Sony"), visited);
+
+        // A removed image can come back, with a new row
+        store.put("b.jpg", tags("Make", "Pentax"));
+        assertEquals("Pentax", store.getValue("b.jpg", "Make"));
+        assertEquals(Arrays.asList("a.jpg", "c.jpg", "b.jpg"), store.images());
+    }
+}
@@ -0,0 +1,63 @@
+package org.hvdw.jexiftoolgui.model;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class CompareImagesTest {
+
+    private static String[] infoRow(int index, String category, String tagname, String value) {
+        return new String[]{category + "||" + tagname, String.valueOf(index), category, tagname, value};
+    }
+
+    @Test
+    public void testPivotInfoRows() {
+        List<String[]> allMetadata = new ArrayList<>();
+        allMetadata.add(infoRow(7, "EXIF", "Model", "EOS 5D"));
+        allMetadata.add(infoRow(7, "EXIF", "Make", "Canon"));
+        allMetadata.add(infoRow(3, "EXIF", "Make", "Nikon"));
+        allMetadata.add(infoRow(3, "XMP", "Rating", "5"));
+        allMetadata.add(infoRow(3, "XMP", "Rating", "4"));
+
+        List<String[]> table = CompareImages.pivotInfoRows(allMetadata, Arrays.asList(7, 3));
+        assertEquals(3, table.size());
+        assertArrayEquals("sorted on category||tagname, columns in selection order", new String[]{"EXIF", "Make", "Canon", "Nikon"}, table.get(0));
+        assertArrayEquals("missing values are empty", new String[]{"EXIF", "Model", "EOS 5D", ""}, table.get(1));
+        assertArrayEquals("last duplicate value wins", new String[]{"XMP", "Rating", "", "4"}, table.get(2));
+    }
+
+    @Test
+    public void testPivotMoreThan25Images() {
+        List<String[]> allMetadata = new ArrayList<>();
+        List<Integer> selectedIndices = new ArrayList<>();
+        for (int index = 0; index < 200; index++) {
+            selectedIndices.add(index);
+            allMetadata.add(infoRow(index, "File", "FileName", "img" + index + ".jpg"));
+        }
+        List<String[]> table = CompareImages.pivotInfoRows(allMetadata, selectedIndices);
+        assertEquals(1, table.size());
+        assertEquals(202, table.get(0).length);
+        assertEquals("img199.jpg", table.get(0)[201]);
+    }
+
+    @Test
+    public void testInfoRowParser() throws Exception {
+        List<String[]> allMetadata = new ArrayList<>();
+        CompareImages.InfoRowParser(4, allMetadata).accept("EXIF\tModel\tCanon EOS");
+        assertArrayEquals(infoRow(4, "EXIF", "Model", "Canon EOS"), allMetadata.get(0));
+
+        allMetadata.clear();
+        CompareImages.InfoRowParser(5, allMetadata).accept("Warning: Invalid TIFF structure");
+        assertEquals(1, allMetadata.size());
+        assertArrayEquals("the compare table keeps its own warning row",
+                infoRow(5, "ExifTool Warning", "Invalid Metadata data", "Error"), allMetadata.get(0));
+
+        allMetadata.clear();
+        CompareImages.InfoRowParser(6, allMetadata).accept("Error: File not found");
+        assertArrayEquals(infoRow(6, "ExifTool Error", "Invalid Metadata data", "Error"), allMetadata.get(0));
+    }
+}
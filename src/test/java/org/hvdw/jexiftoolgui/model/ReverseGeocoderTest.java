@@ -0,0 +1,88 @@
+package org.hvdw.jexiftoolgui.model;
+
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.StringReader;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class ReverseGeocoderTest {
+
+    private static String geonamesLine(String name, double latitude, double longitude, String featureClass, String featureCode, String countryCode, String admin1, long population) {
+        return String.join("\t", "1", name, name, "", String.valueOf(latitude), String.valueOf(longitude), featureClass, featureCode,
+                countryCode, "", admin1, "", "", "", String.valueOf(population), "", "0", "Europe/Amsterdam", "2020-01-01");
+    }
+
+    @Test
+    public void testReadAndLocationMap() throws Exception {
+        String places = String.join("\n",
+                geonamesLine("Amsterdam", 52.37403, 4.88969, "P", "PPLC", "NL", "07", 741636),
+                geonamesLine("Haarlem", 52.38084, 4.63683, "P", "PPLA", "NL", "07", 147590),
+                geonamesLine("Zandvoort", 52.37125, 4.53330, "P", "PPL", "NL", "07", 16250),
+                geonamesLine("Vondelpark", 52.358, 4.868, "L", "PRK", "NL", "07", 0),
+                "not a geonames line");
+        Map<String, String> admin1Names = new HashMap<>();
+        admin1Names.put("NL.07", "North Holland");
+        ReverseGeocoder.PlaceIndex index = ReverseGeocoder.PlaceIndex.read(new BufferedReader(new StringReader(places)), admin1Names);
+
+        // Only the populated places
+        assertEquals(3, index.size());
+
+        Map<String, String> location = index.nearest(52.36, 4.87).toLocationMap(52.36, 4.87);
+        assertEquals("Amsterdam, North Holland, Netherlands", location.get("display_Name"));
+        assertEquals("Amsterdam", location.get("city"));
+        assertEquals("North Holland", location.get("state"));
+        assertEquals("Netherlands", location.get("country"));
+        assertEquals("nl", location.get("country_code"));
+        assertEquals("52.37403", location.get("geoLatitude"));
+        assertTrue(Double.parseDouble(location.get("bbX1")) < 52.37403);
+        assertTrue(Double.parseDouble(location.get("bbY2")) > 4.88969);
+
+        assertEquals("Zandvoort", index.nearest(52.37, 4.50).toLocationMap(52.37, 4.50).get("town"));
+
+        // A point outside the guessed box of the place widens the box
+        location = index.nearest(52.45, 4.30).toLocationMap(52.45, 4.30);
+        assertEquals("Zandvoort", location.get("town"));
+        assertEquals(52.45, Double.parseDouble(location.get("bbX2")), 0);
+        assertEquals(4.30, Double.parseDouble(location.get("bbY1")), 0);
+    }
+
+    @Test
+    public void testDistanceKm() {
+        ReverseGeocoder.Place amsterdam = new ReverseGeocoder.Place("Amsterdam", 52.37403, 4.88969, "NL", "", "PPLC", 741636);
+        // Amsterdam - Haarlem is about 17 km
+        assertEquals(17, ReverseGeocoder.distanceKm(52.38084, 4.63683, amsterdam), 1);
+        assertEquals(0, ReverseGeocoder.distanceKm(52.37403, 4.88969, amsterdam), 1e-6);
+        // Half the earth around
+        assertEquals(Math.PI * 6371, ReverseGeocoder.distanceKm(-52.37403, 4.88969 - 180, amsterdam), 1);
+    }
+
+    @Test
+    public void testNearestEqualsBruteForce() {
+        Random random = new Random(42);
+        List<ReverseGeocoder.Place> placeList = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            placeList.add(new ReverseGeocoder.Place("p" + i, random.nextDouble() * 180 - 90, random.nextDouble() * 360 - 180, "", "", "PPL", 0));
+        }
+        ReverseGeocoder.PlaceIndex index = new ReverseGeocoder.PlaceIndex(placeList);
+
+        for (int i = 0; i < 500; i++) {
+            double latitude = random.nextDouble() * 180 - 90;
+            // Also across the date line
+            double longitude = (i % 10 == 0) ? 179.99 : random.nextDouble() * 360 - 180;
+            double[] xyz = ReverseGeocoder.toXyz(latitude, longitude);
+            ReverseGeocoder.Place expected = null;
+            double best = Double.MAX_VALUE;
+            for (ReverseGeocoder.Place place : placeList) {
+                double distance = Math.pow(xyz[0] - place.xyz[0], 2) + Math.pow(xyz[1] - place.xyz[1], 2) + Math.pow(xyz[2] - place.xyz[2], 2);
+                if (distance < best) {
+                    best = distance;
+                    expected = place;
+                }
+            }
+            assertSame(expected, index.nearest(latitude, longitude));
+        }
+    }
+}